@@ -33,6 +33,7 @@ public class EngineDTO {
         return versions.get(currentVersionNumber).getSpreadsheet();
     }
 
+    // Only the current version carries its spreadsheet, the others are fetched from the engine by version number
     public SpreadsheetDTO getSpreadsheetByVersion(int versionNumber) throws IndexOutOfBoundsException {
 
         if (versionNumber <= 0 || versionNumber > currentVersionNumber) {
@@ -1,5 +1,6 @@
 package dto;
 
+import java.util.Collections;
 import java.util.List;
 
 // This class is for creating the version data transfer object
@@ -9,6 +10,11 @@ public class VersionDTO {
     private final SpreadsheetDTO spreadsheet;
     private final List<RangeDTO> ranges; // Add a field for ranges
 
+    // Metadata of a version, its spreadsheet is fetched on its own by version number
+    public VersionDTO(int versionNumber, int changedCellsCount) {
+        this(versionNumber, changedCellsCount, null, Collections.emptyList());
+    }
+
     public VersionDTO(int versionNumber, int changedCellsCount, SpreadsheetDTO spreadsheet, List<RangeDTO> ranges) {
         this.versionNumber = versionNumber;
         this.changedCellsCount = changedCellsCount;
@@ -24,6 +30,7 @@ public class VersionDTO {
         return changedCellsCount;
     }
 
+    // Null for all the versions but the current one
     public SpreadsheetDTO getSpreadsheet() {
         return spreadsheet;
     }
@@ -0,0 +1,44 @@
+package dto;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+// This class is for creating the data transfer object of the differences between two versions
+public class VersionDiffDTO {
+    private final int fromVersion;
+    private final int toVersion;
+    private final Map<String, CellDTO> cellsBefore; // Changed cells as they are in the first version, missing if they didn't exist
+    private final Map<String, CellDTO> cellsAfter;  // Changed cells as they are in the second version, missing if they don't exist
+
+    public VersionDiffDTO(int fromVersion, int toVersion, Map<String, CellDTO> cellsBefore, Map<String, CellDTO> cellsAfter) {
+        this.fromVersion = fromVersion;
+        this.toVersion = toVersion;
+        this.cellsBefore = cellsBefore;
+        this.cellsAfter = cellsAfter;
+    }
+
+    public int getFromVersion() {
+        return fromVersion;
+    }
+
+    public int getToVersion() {
+        return toVersion;
+    }
+
+    public Map<String, CellDTO> getCellsBefore() {
+        return cellsBefore;
+    }
+
+    public Map<String, CellDTO> getCellsAfter() {
+        return cellsAfter;
+    }
+
+    // Get the IDs of all the changed cells, sorted
+    public Set<String> getChangedCellIds() {
+        Set<String> changedCellIds = new TreeSet<>(cellsBefore.keySet());
+        changedCellIds.addAll(cellsAfter.keySet());
+
+        return changedCellIds;
+    }
+}
@@ -20,9 +20,11 @@ public interface Engine {
     void updateCellValue(String username, String spreadsheetName, String cellId, String newValue, Boolean isDynamicAnalysis) throws InvalidExpressionException, CircularReferenceException, CellUpdateException, SpreadsheetLoadingException, SpreadsheetNotFoundException, UserNotFoundException;
     Cell getCell(String spreadsheetName, String cellId);
     Spreadsheet getCurrentSpreadsheet(String username, String spreadsheetName);
+    Spreadsheet copyCurrentSpreadsheet(String username, String spreadsheetName);
     Spreadsheet getSpreadsheetByVersion(String username, String spreadsheetName, int versionNumber) throws IndexOutOfBoundsException, SpreadsheetNotFoundException,UserNotFoundException;
+    VersionDiffDTO getVersionDiff(String username, String spreadsheetName, int fromVersion, int toVersion) throws IndexOutOfBoundsException, SpreadsheetNotFoundException;
     SpreadsheetDTO convertSpreadsheetToDTO(Spreadsheet spreadsheet);
-    Map<String, CellDTO> convertCellsToDTO(Map<String, Cell> cells);
+    Map<String, CellDTO> convertCellsToDTO(Spreadsheet spreadsheet, Map<String, Cell> cells);
     RangeDTO convertRangeToDTO(Range range);
     int getCurrentVersion(String username, String spreadsheetName);
     void addRange(String username, String spreadsheetName,String rangeName, String firstCell, String lastCell) throws Exception;
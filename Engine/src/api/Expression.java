@@ -3,4 +3,17 @@ package api;
 // The Expression interface is the interface for the expression objects
 public interface Expression {
     Object evaluate(); // The evaluate method returns the result of the expression
+
+    // Whether the result is always a number or an error, so the expression is better evaluated with evaluateDouble
+    default boolean hasNumericResult() {
+        return false;
+    }
+
+    // Evaluate the expression as a primitive double, without boxing the result
+    // Returns Double.NaN when the result isn't a number, evaluate tells what the result is in that case
+    default double evaluateDouble() {
+        Object value = evaluate();
+
+        return value instanceof Number ? ((Number) value).doubleValue() : Double.NaN;
+    }
 }
@@ -8,4 +8,12 @@ public interface Range {
     boolean containsCell(String cell); // Checks if a specific cell is part of the range
     String getStartCell();
     String getEndCell();
+    Cursor cursor(); // Walks the cells of this range by column and then by row, without building their IDs
+
+    // Position of a walk over the cells of a range, rows are numbered from 1 and columns are indexed from 0
+    interface Cursor {
+        boolean next(); // Moves to the next cell, false once there are no more cells
+        int getRow();
+        int getColumn();
+    }
 }
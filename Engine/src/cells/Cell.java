@@ -1,65 +1,81 @@
 package cells;
 
 import api.Expression;
+import enums.CellValueStorage;
 import java.io.Serializable;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 import java.util.Objects;
+import java.util.function.Function;
 
 // Represents a cell in the spreadsheet
-public class Cell implements Serializable {
+// Where the type and the number of the effective value are kept depends on the cell's storage (see CellValueStorage),
+// a heap cell keeps them in its fields and an off-heap cell in native memory, the other fields are kept the same way
+public abstract class Cell implements Serializable {
     private String originalValue;
     private transient Expression expression; // This represents the parsed expression
-    private Object effectiveValue; // The result of evaluating the expression
-    private Map<String, Cell> dependsOnThem; // Cells this cell depends on
-    private Map<String, Cell> dependsOnMe; // Cells that depend on this cell
+    private transient Function<String, Expression> expressionParser; // Parses the original value on first use, for cells restored without their expression
+    private Object effectiveValue; // The effective value when it isn't a number, like a string or a boolean
+    private String[] dependsOnRanges; // Keys of the named ranges this cell depends on, replaced as a whole when changed
     private int lastUpdatedVersion; // The version number when the cell was last updated
     private String lastUpdatedBy;
+    static final byte OBJECT_VALUE = 0;
+    static final byte INTEGER_VALUE = 1;
+    static final byte DOUBLE_VALUE = 2;
+    private static final String[] NO_RANGES = new String[0];
 
-    // Constructor
-    public Cell(String originalValue, Expression expression, int lastUpdatedVersion,String lastUpdatedBy) {
-        this.originalValue = originalValue;
-        this.expression = expression;
-        this.dependsOnThem = new HashMap<>();
-        this.dependsOnMe = new HashMap<>();
-        this.lastUpdatedVersion = lastUpdatedVersion;
-        this.lastUpdatedBy = lastUpdatedBy;
-        setEffectiveValue();
-    }
-
-    // Constructor that accepts all required fields
-    public Cell(String originalValue, Object effectiveValue, Expression expression, int lastUpdatedVersion, String lastUpdatedBy) {
-        this.originalValue = originalValue;
-        this.effectiveValue = effectiveValue;
-        this.expression = expression;
-        this.lastUpdatedVersion = lastUpdatedVersion;
-        this.lastUpdatedBy = lastUpdatedBy;
-        this.dependsOnThem = new HashMap<>();
-        this.dependsOnMe = new HashMap<>();
-    }
-
-    // Deep copy constructor
-    public Cell(Cell original) {
-        this.originalValue = original.originalValue;
-        this.expression = original.expression;
-        this.dependsOnThem = new HashMap<>(original.dependsOnThem);
-        this.dependsOnMe = new HashMap<>(original.dependsOnMe);
-        this.lastUpdatedVersion = original.lastUpdatedVersion;
-        this.lastUpdatedBy = original.lastUpdatedBy;
-        setEffectiveValue();
-    }
-
-    // Empty constructor
-    public Cell() {
+    // Empty cell
+    Cell() {
         this.originalValue = "";  // Initialize with an empty string
         this.expression = null;   // No expression set by default
         this.effectiveValue = ""; // Initialize with an empty string as effective value
-        this.dependsOnThem = new HashMap<>(); // Initialize with empty sets
-        this.dependsOnMe = new HashMap<>();
+        this.dependsOnRanges = NO_RANGES;
         this.lastUpdatedVersion = 0; // Initialize with version 0
         this.lastUpdatedBy = "";
     }
 
+    // Create an empty cell that keeps its value in the given storage
+    public static Cell create(CellValueStorage storage) {
+        return storage == CellValueStorage.OFF_HEAP ? new OffHeapCell() : new HeapCell();
+    }
+
+    // Create a cell with all the required fields
+    public static Cell create(CellValueStorage storage, String originalValue, Object effectiveValue, Expression expression,
+                              int lastUpdatedVersion, String lastUpdatedBy) {
+        Cell cell = create(storage);
+        cell.originalValue = originalValue;
+        cell.setEffectiveValue(effectiveValue);
+        cell.expression = expression;
+        cell.lastUpdatedVersion = lastUpdatedVersion;
+        cell.lastUpdatedBy = lastUpdatedBy;
+
+        return cell;
+    }
+
+    // Deep copy in the given storage, the effective value is copied as is instead of being evaluated again
+    public static Cell copyOf(Cell original, CellValueStorage storage) {
+        Cell cell = create(storage);
+        cell.originalValue = original.originalValue;
+        cell.expression = original.expression;
+        cell.expressionParser = original.expressionParser;
+        cell.storeValue(original.valueType(), original.numericValue());
+        cell.effectiveValue = original.effectiveValue;
+        cell.dependsOnRanges = original.dependsOnRanges;
+        cell.lastUpdatedVersion = original.lastUpdatedVersion;
+        cell.lastUpdatedBy = original.lastUpdatedBy;
+
+        return cell;
+    }
+
+    // Whether the effective value is kept as a primitive number or as an object
+    abstract byte valueType();
+
+    // The effective value when it is an integer or a double
+    abstract double numericValue();
+
+    abstract void storeValue(byte valueType, double numericValue);
+
     public String getOriginalValue() {
         return originalValue;
     }
@@ -70,11 +86,8 @@ public class Cell implements Serializable {
             originalValue = originalValue.toUpperCase();
         }
 
-        // Regular expression to detect cell references (e.g., "A1", "B2", etc.)
-        String cellReferencePattern = "([A-Za-z]+\\d+)";
-
-        // Check if the original value matches the pattern for a cell reference
-        if (originalValue.matches(".*" + cellReferencePattern + ".*")) {
+        // Check if the original value contains a cell reference (e.g., "A1", "B2", etc.)
+        if (containsCellReference(originalValue)) {
             // Convert cell references to uppercase
             originalValue = originalValue.toUpperCase();
         }
@@ -82,74 +95,187 @@ public class Cell implements Serializable {
         this.originalValue = originalValue;
     }
 
+    // Check for a letter followed by a digit, where a cell reference like "a1" or "B2" ends its column part
+    private static boolean containsCellReference(String value) {
+        for (int i = 1; i < value.length(); i++) {
+            char c = value.charAt(i - 1);
+
+            if (((c >= 'A' && c <= 'Z') || (c >= 'a' && c <= 'z')) && value.charAt(i) >= '0' && value.charAt(i) <= '9') {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    // Numbers are boxed only when they are read as an object
     public Object getEffectiveValue() {
+        byte valueType = valueType();
+
+        if (valueType == INTEGER_VALUE) {
+            return (int) numericValue();
+        } else if (valueType == DOUBLE_VALUE) {
+            return numericValue();
+        }
+
         return effectiveValue;
     }
 
+    // Check if the effective value is a number, an integer or a double
+    public boolean isNumeric() {
+        return valueType() != OBJECT_VALUE;
+    }
+
+    public boolean isIntegerValue() {
+        return valueType() == INTEGER_VALUE;
+    }
+
+    // Get the effective value as a primitive number, 0 if it isn't a number
+    public double getNumericValue() {
+        return numericValue();
+    }
+
+    // Check if the effective value equals the given value, like Objects.equals on the boxed value but without boxing
+    public boolean hasEffectiveValue(Object value) {
+        byte valueType = valueType();
+
+        if (valueType == INTEGER_VALUE) {
+            return value instanceof Integer && (Integer) value == (int) numericValue();
+        } else if (valueType == DOUBLE_VALUE) {
+            return value instanceof Double && Double.doubleToLongBits((Double) value) == Double.doubleToLongBits(numericValue());
+        }
+
+        return Objects.equals(effectiveValue, value);
+    }
+
+    // Check if two cells have equal effective values, without boxing numbers
+    public boolean hasSameEffectiveValue(Cell other) {
+        byte valueType = valueType();
+        byte otherValueType = other.valueType();
+
+        if (valueType != OBJECT_VALUE || otherValueType != OBJECT_VALUE) {
+            return valueType == otherValueType && Double.doubleToLongBits(numericValue()) == Double.doubleToLongBits(other.numericValue());
+        }
+
+        return Objects.equals(effectiveValue, other.effectiveValue);
+    }
+
+    // Evaluate the expression and store the result, a numeric result is rounded and stored without boxing
     public void setEffectiveValue() {
-        if (expression == null) {
-            effectiveValue = originalValue;
+        Expression expression = getExpression();
+        double numericResult = evaluateNumericResult(expression);
+
+        if (!Double.isNaN(numericResult)) {
+            setNumericResult(numericResult);
             return;
         }
 
-        try {
-            Object evaluatedValue = expression.evaluate();
+        Object evaluatedValue = expression != null ? expression.evaluate() : originalValue;
+
+        if (evaluatedValue instanceof Number) {
+            setNumericResult(((Number) evaluatedValue).doubleValue());
+        } else {
+            setEffectiveValue(evaluatedValue);
+        }
+    }
+
+    // Evaluate a formula with a numeric result as a primitive double, Double.NaN for the other expressions
+    // or if the result isn't a number
+    private static double evaluateNumericResult(Expression expression) {
+        return expression != null && expression.hasNumericResult() ? expression.evaluateDouble() : Double.NaN;
+    }
+
+    private void setNumericResult(double doubleValue) {
+        if (doubleValue == Math.floor(doubleValue)) {
+            storeValue(INTEGER_VALUE, (int) doubleValue); // Cast to int if it is an integer
+        } else {
+            storeValue(DOUBLE_VALUE, Math.round(doubleValue * 100.0) / 100.0); // Rounds to 2 decimal places
+        }
+        effectiveValue = null;
+    }
+
+    // Set an effective value that was already calculated with calculateEffectiveValue
+    // Integers and doubles are unboxed into the numeric value
+    public void setEffectiveValue(Object effectiveValue) {
+        if (effectiveValue instanceof Integer) {
+            storeValue(INTEGER_VALUE, (Integer) effectiveValue);
+            this.effectiveValue = null;
+        } else if (effectiveValue instanceof Double) {
+            storeValue(DOUBLE_VALUE, (Double) effectiveValue);
+            this.effectiveValue = null;
+        } else {
+            storeValue(OBJECT_VALUE, 0);
+            this.effectiveValue = effectiveValue;
+        }
+    }
 
-            if (evaluatedValue instanceof Number) {
-                double doubleValue = ((Number) evaluatedValue).doubleValue();
+    // Evaluate the cell's expression without changing the cell
+    public Object calculateEffectiveValue() {
+        Expression expression = getExpression();
 
-                // Check if the double value is an integer
-                if (doubleValue == Math.floor(doubleValue)) {
-                    effectiveValue = (int) doubleValue; // Cast to int if it is an integer
-                } else {
-                    doubleValue = ((Number) evaluatedValue).doubleValue();
+        if (expression == null) {
+            return originalValue;
+        }
 
-                    // Format the double value to have a maximum of two decimal places for display purposes
-                    effectiveValue = Math.round(doubleValue * 100.0) / 100.0; // Rounds to 2 decimal places
-                }
-            } else {
-                effectiveValue = evaluatedValue;
+        // A numeric result is boxed only once, after rounding
+        double numericResult = evaluateNumericResult(expression);
+        Object evaluatedValue = Double.isNaN(numericResult) ? expression.evaluate() : null;
+
+        if (!Double.isNaN(numericResult) || evaluatedValue instanceof Number) {
+            double doubleValue = evaluatedValue != null ? ((Number) evaluatedValue).doubleValue() : numericResult;
+
+            // Check if the double value is an integer
+            if (doubleValue == Math.floor(doubleValue)) {
+                return (int) doubleValue; // Cast to int if it is an integer
             }
-        } catch (Exception e) {
-            throw e;
+
+            // Format the double value to have a maximum of two decimal places for display purposes
+            return Math.round(doubleValue * 100.0) / 100.0; // Rounds to 2 decimal places
         }
+
+        return evaluatedValue;
     }
 
     public void setExpression(Expression expression) {
         this.expression = expression;
+        this.expressionParser = null;
         setEffectiveValue();
     }
 
-    public Expression getExpression() {
-        return expression;
+    // Parse the expression from the original value only when it is first needed, the effective value is kept as is
+    public void setExpressionParser(Function<String, Expression> expressionParser) {
+        this.expression = null;
+        this.expressionParser = expressionParser;
     }
 
-    public Map<String, Cell> getDependsOnThem() {
-        return dependsOnThem;
-    }
-
-    public void setDependsOnThem(Map<String, Cell> dependsOnThem) { this.dependsOnThem = new HashMap<>(dependsOnThem); }
+    public Expression getExpression() {
+        if (expressionParser != null) {
+            expression = expressionParser.apply(originalValue);
+            expressionParser = null;
+        }
 
-    public Map<String, Cell> getDependsOnMe() {
-        return dependsOnMe;
+        return expression;
     }
 
-    public void setDependsOnMe(Map<String, Cell> dependsOnMe) { this.dependsOnMe = new HashMap<>(dependsOnMe); }
-
-    public void addDependsOnThem(String cellId, Cell newDependsOnThem) {
-        dependsOnThem.put(cellId, newDependsOnThem);
+    // A range is a single dependency no matter how many cells it covers, the cells of the range don't know about
+    // this cell, the spreadsheet finds the cells that use a range through the range instead
+    public List<String> getDependsOnRanges() {
+        return Collections.unmodifiableList(Arrays.asList(dependsOnRanges));
     }
 
-    public void addDependsOnMe(String cellId, Cell newDependsOnThem) {
-        dependsOnMe.put(cellId, newDependsOnThem);
+    public boolean dependsOnRanges() {
+        return dependsOnRanges.length > 0;
     }
 
-    public void removeDependsOnThem(String cellId) {
-        dependsOnThem.remove(cellId);
+    public void addDependsOnRange(String rangeKey) {
+        if (!Arrays.asList(dependsOnRanges).contains(rangeKey)) {
+            dependsOnRanges = Arrays.copyOf(dependsOnRanges, dependsOnRanges.length + 1);
+            dependsOnRanges[dependsOnRanges.length - 1] = rangeKey;
+        }
     }
 
-    public void removeDependsOnMe(String cellId) {
-        dependsOnMe.remove(cellId);
+    public void clearDependsOnRanges() {
+        dependsOnRanges = NO_RANGES;
     }
 
     public int getLastUpdatedVersion() { return lastUpdatedVersion; }
@@ -163,16 +289,17 @@ public class Cell implements Serializable {
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
-        if (o == null || getClass() != o.getClass()) return false;
+        if (!(o instanceof Cell)) return false; // Cells are equal no matter where they keep their values
         Cell cell = (Cell) o;
         return lastUpdatedVersion == cell.lastUpdatedVersion && Objects.equals(originalValue, cell.originalValue) &&
-                Objects.equals(expression, cell.expression) && Objects.equals(effectiveValue, cell.effectiveValue) &&
-                Objects.equals(dependsOnThem, cell.dependsOnThem) && Objects.equals(dependsOnMe, cell.dependsOnMe) &&
+                Objects.equals(expression, cell.expression) && valueType() == cell.valueType() &&
+                Double.compare(numericValue(), cell.numericValue()) == 0 && Objects.equals(effectiveValue, cell.effectiveValue) &&
+                Arrays.equals(dependsOnRanges, cell.dependsOnRanges) &&
                 Objects.equals(lastUpdatedBy, cell.lastUpdatedBy);
     }
 
     @Override
     public int hashCode() {
-        return Objects.hash(originalValue, expression, effectiveValue, dependsOnThem, dependsOnMe, lastUpdatedVersion, lastUpdatedBy);
+        return Objects.hash(originalValue, expression, getEffectiveValue(), lastUpdatedVersion, lastUpdatedBy);
     }
 }
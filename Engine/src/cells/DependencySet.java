@@ -0,0 +1,141 @@
+package cells;
+
+import spreadsheet.CellCoordinate;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+// Set of cells, like the cells that use a named range, kept as the sorted packed keys of the cells (see CellCoordinate)
+// The keys are stored in a growable long array instead of a map of cell IDs, so an empty set takes no array at all
+// and walking the set reads a single primitive array
+// A copy shares the array with the original set until either of them is changed (copy-on-write)
+public final class DependencySet implements Serializable {
+    private static final long[] NO_KEYS = new long[0];
+    private static final int INITIAL_CAPACITY = 4;
+
+    private long[] keys;
+    private int size;
+    private boolean shared; // Whether the array may be read by another set, so it is copied before a change
+
+    public DependencySet() {
+        this.keys = NO_KEYS;
+        this.size = 0;
+    }
+
+    // Copy constructor, the copy shares the array with the original set
+    public DependencySet(DependencySet original) {
+        this.keys = original.keys;
+        this.size = original.size;
+        this.shared = true;
+
+        original.shared = true;
+    }
+
+    // Add the key of a cell, returns false if it was already in the set
+    public boolean add(long key) {
+        int index = Arrays.binarySearch(keys, 0, size, key);
+        if (index >= 0) {
+            return false;
+        }
+
+        int insertionPoint = -index - 1;
+        long[] target = keys;
+
+        // Grow the array or take a private copy of a shared array
+        if (size == keys.length || shared) {
+            target = new long[size == keys.length ? Math.max(INITIAL_CAPACITY, size * 2) : keys.length];
+            System.arraycopy(keys, 0, target, 0, insertionPoint);
+            shared = false;
+        }
+
+        System.arraycopy(keys, insertionPoint, target, insertionPoint + 1, size - insertionPoint);
+        target[insertionPoint] = key;
+        keys = target;
+        size++;
+
+        return true;
+    }
+
+    // Remove the key of a cell, returns false if it wasn't in the set
+    public boolean remove(long key) {
+        int index = Arrays.binarySearch(keys, 0, size, key);
+        if (index < 0) {
+            return false;
+        }
+
+        if (shared) {
+            keys = Arrays.copyOf(keys, size);
+            shared = false;
+        }
+
+        System.arraycopy(keys, index + 1, keys, index, size - index - 1);
+        size--;
+
+        return true;
+    }
+
+    public boolean contains(long key) {
+        return Arrays.binarySearch(keys, 0, size, key) >= 0;
+    }
+
+    public void clear() {
+        keys = NO_KEYS;
+        size = 0;
+        shared = false;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    // Get the key at the given index, the keys are ordered by row and then by column
+    public long keyAt(int index) {
+        return keys[index];
+    }
+
+    // Get the cell ID of the cell at the given index
+    public String cellIdAt(int index) {
+        return CellCoordinate.toCellId(keys[index]);
+    }
+
+    // Get the cell IDs of the cells in the set, by row and then by column order
+    public List<String> toCellIds() {
+        List<String> cellIds = new ArrayList<>(size);
+
+        for (int index = 0; index < size; index++) {
+            cellIds.add(cellIdAt(index));
+        }
+
+        return cellIds;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        DependencySet that = (DependencySet) o;
+        return Arrays.equals(keys, 0, size, that.keys, 0, that.size);
+    }
+
+    @Override
+    public int hashCode() {
+        int hash = 1;
+
+        for (int index = 0; index < size; index++) {
+            hash = 31 * hash + Long.hashCode(keys[index]);
+        }
+
+        return hash;
+    }
+
+    @Override
+    public String toString() {
+        return toCellIds().toString();
+    }
+}
@@ -0,0 +1,23 @@
+package cells;
+
+// A cell that keeps the type and the number of its effective value in its own fields, on the Java heap
+final class HeapCell extends Cell {
+    private byte valueType; // Whether the effective value is kept as a primitive number or as an object
+    private double numericValue; // The effective value when it is an integer or a double, kept without boxing
+
+    @Override
+    byte valueType() {
+        return valueType;
+    }
+
+    @Override
+    double numericValue() {
+        return numericValue;
+    }
+
+    @Override
+    void storeValue(byte valueType, double numericValue) {
+        this.valueType = valueType;
+        this.numericValue = numericValue;
+    }
+}
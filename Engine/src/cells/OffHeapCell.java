@@ -0,0 +1,58 @@
+package cells;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+
+// A cell that keeps the type and the number of its effective value in native memory (see OffHeapValueBlock), the
+// cell only holds its slot; strings and other object values stay in the cell
+final class OffHeapCell extends Cell {
+    private transient OffHeapValueBlock valueBlock;
+    private transient int valueSlot;
+
+    OffHeapCell() {
+        claimSlot();
+    }
+
+    // A new slot starts as an object value, like the fields of a heap cell
+    private void claimSlot() {
+        OffHeapValueBlock block = OffHeapValueBlock.current();
+        int slot = block.claim();
+
+        while (slot == OffHeapValueBlock.NO_SLOT) {
+            block = OffHeapValueBlock.next(block);
+            slot = block.claim();
+        }
+
+        this.valueBlock = block;
+        this.valueSlot = slot;
+    }
+
+    @Override
+    byte valueType() {
+        return valueBlock.getType(valueSlot);
+    }
+
+    @Override
+    double numericValue() {
+        return valueBlock.getNumber(valueSlot);
+    }
+
+    @Override
+    void storeValue(byte valueType, double numericValue) {
+        valueBlock.set(valueSlot, valueType, numericValue);
+    }
+
+    // The value is written with the cell, a read cell claims a slot of its own
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        out.defaultWriteObject();
+        out.writeByte(valueType());
+        out.writeDouble(numericValue());
+    }
+
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        claimSlot();
+        storeValue(in.readByte(), in.readDouble());
+    }
+}
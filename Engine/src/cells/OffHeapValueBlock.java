@@ -0,0 +1,55 @@
+package cells;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// A block of native memory outside the Java heap that holds the effective values of off-heap cells (see OffHeapCell)
+// The block is one direct buffer with two columns of SLOTS entries: the value type tags first, a byte each, and then
+// the numbers, a double each, so a cell only keeps the block and its slot in it
+// Cells claim their slots from the current block until it is full, then a new block becomes the current one
+// A slot is never given back: a block is freed with its buffer once no cell refers to it anymore
+final class OffHeapValueBlock {
+    static final int SLOTS = 4096;
+    static final int NO_SLOT = -1;
+    private static final int NUMBER_COLUMN = SLOTS;
+
+    private static volatile OffHeapValueBlock current = new OffHeapValueBlock();
+
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(SLOTS + SLOTS * Double.BYTES).order(ByteOrder.nativeOrder());
+    private final AtomicInteger claimed = new AtomicInteger();
+
+    // Get the block new cells claim their slots from
+    static OffHeapValueBlock current() {
+        return current;
+    }
+
+    // Replace the full block with a new one, unless another thread already did
+    static synchronized OffHeapValueBlock next(OffHeapValueBlock full) {
+        if (current == full) {
+            current = new OffHeapValueBlock();
+        }
+
+        return current;
+    }
+
+    // Claim a free slot, NO_SLOT if the block is full
+    int claim() {
+        int slot = claimed.getAndIncrement();
+
+        return slot < SLOTS ? slot : NO_SLOT;
+    }
+
+    byte getType(int slot) {
+        return buffer.get(slot);
+    }
+
+    double getNumber(int slot) {
+        return buffer.getDouble(NUMBER_COLUMN + slot * Double.BYTES);
+    }
+
+    void set(int slot, byte type, double number) {
+        buffer.putDouble(NUMBER_COLUMN + slot * Double.BYTES, number);
+        buffer.put(slot, type);
+    }
+}
@@ -4,14 +4,30 @@ import api.Expression;
 import api.Range;
 import dto.*;
 import dto.VersionDTO;
+import enums.CellValueStorage;
+import enums.ErrorValue;
 import enums.PermissionStatus;
 import enums.PermissionType;
+import enums.VersionSpillTarget;
 import exceptions.*;
 import cells.Cell;
+import persistence.CommandLog;
+import persistence.EngineSnapshot;
+import persistence.LogRecord;
+import persistence.LogRecordType;
+import spreadsheet.CellCoordinate;
+import spreadsheet.CellGrid;
 import spreadsheet.Spreadsheet;
 import user.UserManager;
 import versions.Version;
-
+import versions.VersionDiff;
+import versions.VersionView;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.*;
 import java.util.stream.Collectors;
 import java.util.Map;
@@ -23,11 +39,159 @@ import versions.permissions.PermissionsManager;
 public class EngineImpl implements Engine {
     private final Map<String, VersionsManager> spreadsheetsMap; // Map of spreadsheet name to it's version manager
     private final UserManager userManager;                      // User manager to manage users
+    private long globalVersionMemoryBudget;                     // Memory budget for the versions of all spreadsheets
+    private static final long DEFAULT_GLOBAL_VERSION_MEMORY_BUDGET = 512L * 1024 * 1024;
+    private VersionSpillTarget versionSpillTarget = VersionSpillTarget.DISK; // Where the versions over the budget are spilled
+    private CellValueStorage cellValueStorage = CellValueStorage.HEAP;       // Where the cells of the current versions keep their values
+    private static final long CHECKPOINT_LOG_SIZE = 64L * 1024 * 1024; // Command log size that triggers a new snapshot
+    private static final long NO_CHECKPOINT = 0;
+    private CommandLog commandLog;                              // Log of the mutations, null if the engine isn't persistent
+    private Path snapshotFile;                                  // Snapshot of the spreadsheets that the command log continues
+    private long checkpointId = NO_CHECKPOINT;                  // ID of the last snapshot
+    private boolean replaying;                                  // True while the command log is replayed, so it isn't logged again
+    private boolean skippingReplayedRecords;                    // True until the replay reaches the checkpoint of the snapshot
 
     // Constructor
     public EngineImpl() {
         this.spreadsheetsMap = new HashMap<>();
         this.userManager = new UserManager();
+        this.globalVersionMemoryBudget = DEFAULT_GLOBAL_VERSION_MEMORY_BUDGET;
+    }
+
+    // Constructor of a persistent engine, the spreadsheets are read from the last snapshot and the mutations made
+    // since are replayed from the command log
+    // Users aren't logged, the sessions don't survive a restart so every user logs in again
+    public EngineImpl(Path commandLogFile) throws IOException {
+        this();
+        this.commandLog = new CommandLog(commandLogFile);
+        this.snapshotFile = commandLogFile.resolveSibling(commandLogFile.getFileName() + ".snapshot");
+
+        if (Files.exists(snapshotFile)) {
+            EngineSnapshot snapshot = EngineSnapshot.read(snapshotFile);
+
+            for (VersionsManager versionsManager : snapshot.getSpreadsheets()) {
+                versionsManager.setVersionSpillTarget(versionSpillTarget);
+                versionsManager.setCellValueStorage(cellValueStorage);
+                spreadsheetsMap.put(versionsManager.getSpreadsheetName(), versionsManager);
+            }
+            checkpointId = snapshot.getCheckpointId();
+            enforceGlobalVersionMemoryBudget();
+        }
+
+        replaying = true;
+        skippingReplayedRecords = checkpointId != NO_CHECKPOINT;
+        try {
+            commandLog.replay(this::applyLogRecord);
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        } finally {
+            replaying = false;
+        }
+
+        // The engine stopped after writing the snapshot and before starting a new log, the whole log is in the snapshot
+        if (skippingReplayedRecords) {
+            skippingReplayedRecords = false;
+            startCommandLogAfterCheckpoint();
+        }
+    }
+
+    // Write all the spreadsheets to a new snapshot and start a new command log after it
+    public synchronized void checkpoint() throws IOException {
+        if (commandLog == null) {
+            return;
+        }
+
+        List<VersionsManager> spreadsheets;
+        synchronized (spreadsheetsMap) {
+            spreadsheets = new ArrayList<>(spreadsheetsMap.values());
+        }
+
+        EngineSnapshot.write(snapshotFile, checkpointId + 1, spreadsheets);
+        checkpointId++;
+        startCommandLogAfterCheckpoint();
+    }
+
+    private void startCommandLogAfterCheckpoint() throws IOException {
+        commandLog.reset();
+        commandLog.append(new LogRecord(LogRecordType.CHECKPOINT, String.valueOf(checkpointId)));
+        commandLog.sync();
+    }
+
+    // Apply a mutation read from the command log
+    // The records before the checkpoint of the snapshot are already part of the snapshot, so they are skipped
+    private synchronized void applyLogRecord(LogRecord record) {
+        try {
+            LogRecordType type = record.getType();
+
+            if (type == LogRecordType.CHECKPOINT) {
+                if (Long.parseLong(record.getArgument(0)) == checkpointId) {
+                    skippingReplayedRecords = false;
+                }
+            } else if (skippingReplayedRecords) {
+                return;
+            } else if (type == LogRecordType.LOAD_SPREADSHEET) {
+                Path file = Files.createTempFile("shticell-replay-", ".xml");
+                try {
+                    Files.write(file, record.getData());
+                    loadSpreadsheet(record.getArgument(0), file.toString());
+                } finally {
+                    Files.deleteIfExists(file);
+                }
+            } else if (type == LogRecordType.UPDATE_CELL_VALUE) {
+                updateCellValue(record.getArgument(0), record.getArgument(1), record.getArgument(2),
+                        record.getArgument(3), Boolean.parseBoolean(record.getArgument(4)));
+            } else if (type == LogRecordType.ADD_RANGE) {
+                addRange(record.getArgument(0), record.getArgument(1), record.getArgument(2),
+                        record.getArgument(3), record.getArgument(4));
+            } else if (type == LogRecordType.REMOVE_RANGE) {
+                removeRange(record.getArgument(0), record.getArgument(1), record.getArgument(2));
+            } else if (type == LogRecordType.ASK_FOR_PERMISSION) {
+                askForPermission(record.getArgument(0), record.getArgument(1), PermissionType.valueOf(record.getArgument(2)));
+            } else if (type == LogRecordType.HANDLE_PERMISSION) {
+                handlePermissionRequest(record.getArgument(0), record.getArgument(1), record.getArgument(2),
+                        Integer.parseInt(record.getArgument(3)), PermissionStatus.valueOf(record.getArgument(4)),
+                        PermissionType.valueOf(record.getArgument(5)));
+            } else if (type == LogRecordType.REMOVE_USER) {
+                removeUser(record.getArgument(0));
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to replay a " + record.getType() + " record of the command log", e);
+        } catch (RuntimeException e) {
+            // Anything but a rejection of the engine means the log doesn't match the engine, so the replay stops
+            throw e;
+        } catch (Exception e) {
+            // A rejected mutation isn't applied, so a record rejected again is skipped like it was rejected the first time
+            System.err.println("Skipped a rejected " + record.getType() + " record of the command log: " + e.getMessage());
+        }
+    }
+
+    // Append a successful mutation to the command log
+    private void log(LogRecord record) {
+        if (commandLog == null || replaying) {
+            return;
+        }
+
+        try {
+            commandLog.append(record);
+
+            if (commandLog.size() > CHECKPOINT_LOG_SIZE) {
+                checkpoint();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to write to the command log", e);
+        }
+    }
+
+    // Write a final snapshot, so the next start doesn't replay the log, and close the command log
+    public synchronized void close() throws IOException {
+        if (commandLog != null) {
+            try {
+                checkpoint();
+            } finally {
+                commandLog.close();
+                commandLog = null;
+            }
+        }
     }
 
     // Method to add a user
@@ -47,6 +211,9 @@ public class EngineImpl implements Engine {
     public synchronized String loadSpreadsheet(String username, String filePath) throws InvalidExpressionException, SpreadsheetLoadingException, CellUpdateException, CircularReferenceException, RangeProcessException{
         // Load spreadsheet to get the spreadsheet name
         VersionsManager versionsManager = new VersionsManager(username);
+        versionsManager.setVersionSpillTarget(versionSpillTarget);
+        versionsManager.setCellValueStorage(cellValueStorage);
+        byte[] fileContent = readFileForLog(filePath);
         versionsManager.loadSpreadsheet(filePath);
         String spreadsheetName = versionsManager.getCurrentSpreadsheet().getName(); // Get the file name after loading
 
@@ -58,18 +225,91 @@ public class EngineImpl implements Engine {
 
         // If the file does not exist for any user, add it for the current user
         spreadsheetsMap.put(spreadsheetName, versionsManager);
+        enforceGlobalVersionMemoryBudget();
+        log(new LogRecord(LogRecordType.LOAD_SPREADSHEET, fileContent, username));
 
         return spreadsheetName; // Return that the file was newly loaded
     }
 
+    // Read the loaded file for the command log, since the uploaded file may be gone when the log is replayed
+    private byte[] readFileForLog(String filePath) throws SpreadsheetLoadingException {
+        if (commandLog == null || replaying) {
+            return null;
+        }
+
+        try {
+            return Files.readAllBytes(Paths.get(filePath));
+        } catch (IOException e) {
+            throw new SpreadsheetLoadingException("Failed to read the file: " + filePath);
+        }
+    }
+
+    // Spill the oldest versions of the spreadsheets with the most version memory off the heap,
+    // until the versions of all spreadsheets fit in the global memory budget
+    private void enforceGlobalVersionMemoryBudget() {
+        Map<VersionsManager, Long> estimatedMemory = new IdentityHashMap<>(); // VersionsManager.hashCode walks all the versions
+        long totalMemory = 0;
+
+        for (VersionsManager versionsManager : spreadsheetsMap.values()) {
+            long memory = versionsManager.getEstimatedVersionMemory();
+            estimatedMemory.put(versionsManager, memory);
+            totalMemory += memory;
+        }
+
+        while (totalMemory > globalVersionMemoryBudget && !estimatedMemory.isEmpty()) {
+            VersionsManager largest = Collections.max(estimatedMemory.entrySet(), Map.Entry.comparingByValue()).getKey();
+            long freedMemory = largest.spillOldestVersion();
+
+            if (freedMemory == 0) {
+                estimatedMemory.remove(largest); // Nothing left to spill in this spreadsheet
+            } else {
+                estimatedMemory.put(largest, estimatedMemory.get(largest) - freedMemory);
+                totalMemory -= freedMemory;
+            }
+        }
+    }
+
+    public long getGlobalVersionMemoryBudget() {
+        return globalVersionMemoryBudget;
+    }
+
+    public void setGlobalVersionMemoryBudget(long globalVersionMemoryBudget) {
+        this.globalVersionMemoryBudget = globalVersionMemoryBudget;
+    }
+
+    public VersionSpillTarget getVersionSpillTarget() {
+        return versionSpillTarget;
+    }
+
+    // Spill the versions of all spreadsheets, loaded and to be loaded, to the given target
+    public void setVersionSpillTarget(VersionSpillTarget versionSpillTarget) {
+        this.versionSpillTarget = versionSpillTarget;
+
+        for (VersionsManager versionsManager : spreadsheetsMap.values()) {
+            versionsManager.setVersionSpillTarget(versionSpillTarget);
+        }
+    }
+
+    public CellValueStorage getCellValueStorage() {
+        return cellValueStorage;
+    }
+
+    // Keep the values of the cells of all spreadsheets, loaded and to be loaded, in the heap or in native memory
+    // A cell that already exists moves to the new storage when it is next changed
+    public void setCellValueStorage(CellValueStorage cellValueStorage) {
+        this.cellValueStorage = cellValueStorage;
+
+        for (VersionsManager versionsManager : spreadsheetsMap.values()) {
+            versionsManager.setCellValueStorage(cellValueStorage);
+        }
+    }
+
 
     @Override
     // Method to get the engine data using dto
     public EngineDTO getEngineData(String username, String spreadsheetName) {
         if (!userManager.isUserExists(username)) {
-            // If user doesn't exist, remove them from clientFilesVersions
-            removeUser(username);  // Method to clean up invalid users
-
+            // Users aren't persisted, so after a restart a known owner may not be logged in yet and keeps their sheets
             return new EngineDTO(Collections.emptyMap(),  0); // Return empty DTO or handle appropriately
         }
         Map<Integer, VersionDTO> versionDTOMap = new HashMap<>();
@@ -78,28 +318,29 @@ public class EngineImpl implements Engine {
             VersionsManager versionsManager = spreadsheetsMap.get(spreadsheetName);
 
             if (versionsManager != null) {
-                // Get the current version of the spreadsheet
-                Spreadsheet spreadsheet = versionsManager.getCurrentSpreadsheet(); // Assume this method exists
-
-                // Convert the spreadsheet to DTO
-                SpreadsheetDTO spreadsheetDTO = convertSpreadsheetToDTO(spreadsheet);
                 // Get all versions
                 Map<Integer, Version> versions = versionsManager.getVersions(); // Ensure getVersions() exists in VersionsManager
-                // Retrieve ranges from RangesManager
-                Map<String, Range> ranges = versionsManager.getAllRanges();
-                // Convert each version to a VersionDTO and add it to the map
+                // Only the version metadata is sent, rebuilding every version here would thrash the cache of the
+                // delta-encoded versions and read the spilled ones back, a version is fetched by its number instead
                 for (Map.Entry<Integer, Version> entry : versions.entrySet()) {
                     Version version = entry.getValue();
 
+                    versionDTOMap.put(entry.getKey(), new VersionDTO(version.getVersionNumber(),
+                            version.getChangedCellsCount()));
+                }
+
+                // The current version is sent whole with the ranges
+                int currentVersion = versionsManager.getCurrentVersion();
+                if (versionDTOMap.containsKey(currentVersion)) {
                     // Collecting ranges as DTOs
-                    List<RangeDTO> rangeDTOList = ranges.values().stream()
+                    List<RangeDTO> rangeDTOList = versionsManager.getAllRanges().values().stream()
                             .map(this::convertRangeToDTO)
                             .collect(Collectors.toList());
 
-                    versionDTOMap.put(entry.getKey(), new VersionDTO(
-                            version.getVersionNumber(),
-                            version.getChangedCellsCount(),
-                            convertSpreadsheetToDTO(version.getSpreadsheet()), // Ensure version.getSpreadsheet() returns the correct spreadsheet
+                    versionDTOMap.put(currentVersion, new VersionDTO(
+                            currentVersion,
+                            versionDTOMap.get(currentVersion).getChangedCellsCount(),
+                            convertSpreadsheetToDTO(versionsManager.getCurrentSpreadsheet()),
                             rangeDTOList // Add ranges to the VersionDTO
                     ));
                 }
@@ -132,7 +373,12 @@ public class EngineImpl implements Engine {
     }
 
     @Override
-    public void removeUser(String username) {
+    public synchronized void removeUser(String username) {
+        // A user that isn't logged in has nothing to remove, the replayed records were logged for logged in users
+        if (!replaying && !userManager.isUserExists(username)) {
+            return;
+        }
+
         // Remove the user from the user manager
         userManager.removeUser(username);
 
@@ -146,6 +392,8 @@ public class EngineImpl implements Engine {
                 return usersPermission.toString().equals("OWNER");
             });
         }
+
+        log(new LogRecord(LogRecordType.REMOVE_USER, username));
     }
 
     @Override
@@ -162,44 +410,55 @@ public class EngineImpl implements Engine {
                 spreadsheet.getColumnWidth(),
                 spreadsheet.getRowHeight(),
                 spreadsheet.getVersionNumber(),
-                convertCellsToDTO(spreadsheet.getCells())
+                convertCellGridToDTO(spreadsheet)
         );
     }
 
-    @Override
-    // Method to convert cells to DTO
-    public Map<String, CellDTO> convertCellsToDTO(Map<String, Cell> cells) {
-        // Create basic CellDTOs without dependencies
-        Map<String, CellDTO> cellDTOMap = new HashMap<>();
+    // Convert the cells of a spreadsheet to DTOs in a single walk over the grid, by row and then by column order
+    // The dependencies include the cells of the ranges a cell uses and the users of the ranges that contain it
+    private Map<String, CellDTO> convertCellGridToDTO(Spreadsheet spreadsheet) {
+        CellGrid cells = spreadsheet.getCellGrid();
+        Map<String, CellDTO> cellDTOMap = new HashMap<>(cells.size() * 4 / 3 + 1);
 
-        for (Map.Entry<String, Cell> entry : cells.entrySet()) {
-            Cell cell = entry.getValue();
-            CellDTO cellDTO = new CellDTO(
+        cells.forEach((row, column, cell) -> {
+            String cellId = CellCoordinate.toCellId(row, column);
+
+            cellDTOMap.put(cellId, new CellDTO(
                     cell.getOriginalValue(),
-                    cell.getEffectiveValue(),
+                    toDTOValue(cell.getEffectiveValue()),
                     cell.getLastUpdatedVersion(),
-                    cell.getLastUpdatedBy(), // New field for storing the username of the last updater
-                    new ArrayList<>(), // Placeholder for dependsOnThemIds
-                    new ArrayList<>()  // Placeholder for dependsOnMeIds
-            );
-            cellDTOMap.put(entry.getKey(), cellDTO);
-        }
+                    cell.getLastUpdatedBy(),
+                    spreadsheet.getDependencyIds(cellId),
+                    spreadsheet.getDependentIds(cellId)
+            ));
+        });
+
+        return cellDTOMap;
+    }
+
+    // Errors are passed on by their text, the clients show and compare them like before
+    private static Object toDTOValue(Object effectiveValue) {
+        return effectiveValue instanceof ErrorValue ? effectiveValue.toString() : effectiveValue;
+    }
+
+    @Override
+    // Method to convert cells of the given spreadsheet to DTO
+    // The dependencies are read from the spreadsheet, so they include the ranges like the whole spreadsheet DTO
+    public Map<String, CellDTO> convertCellsToDTO(Spreadsheet spreadsheet, Map<String, Cell> cells) {
+        Map<String, CellDTO> cellDTOMap = new HashMap<>();
 
-        // Populate dependencies by adding cell IDs
         for (Map.Entry<String, Cell> entry : cells.entrySet()) {
             String cellId = entry.getKey();
             Cell cell = entry.getValue();
-            CellDTO cellDTO = cellDTOMap.get(cellId);
-
-            // Populate dependsOnThemIds
-            for (String dependsOnId : cell.getDependsOnThem().keySet()) {
-                cellDTO.getDependsOnThemIds().add(dependsOnId);
-            }
 
-            // Populate dependsOnMeIds
-            for (String dependsOnMeId : cell.getDependsOnMe().keySet()) {
-                cellDTO.getDependsOnMeIds().add(dependsOnMeId);
-            }
+            cellDTOMap.put(cellId, new CellDTO(
+                    cell.getOriginalValue(),
+                    toDTOValue(cell.getEffectiveValue()),
+                    cell.getLastUpdatedVersion(),
+                    cell.getLastUpdatedBy(), // New field for storing the username of the last updater
+                    spreadsheet.getDependencyIds(cellId),
+                    spreadsheet.getDependentIds(cellId)
+            ));
         }
 
         return cellDTOMap;
@@ -241,6 +500,19 @@ public class EngineImpl implements Engine {
         return versionsManager.getCurrentSpreadsheet();
     }
 
+    // Copy the current spreadsheet under the engine lock, so the copy is taken between updates
+    // The copy can be changed, like by a sort, without changing the current spreadsheet
+    @Override
+    public synchronized Spreadsheet copyCurrentSpreadsheet(String userName, String spreadsheetName) {
+        VersionsManager versionsManager = spreadsheetsMap.get(spreadsheetName);
+
+        if (versionsManager == null) {
+            throw new IllegalArgumentException("File path not found for user: " + spreadsheetName);
+        }
+
+        return versionsManager.copyCurrentSpreadsheet();
+    }
+
     @Override
     public synchronized void updateCellValue(String username, String spreadsheetName, String cellId, String newValue, Boolean isDynamicAnalysis)
             throws CircularReferenceException, CellUpdateException, SpreadsheetNotFoundException, UserNotFoundException {
@@ -251,6 +523,12 @@ public class EngineImpl implements Engine {
         if (versionsManager != null) {
             // Update the cell value in the VersionsManager
             versionsManager.updateCellValue(cellId, newValue, username, isDynamicAnalysis);
+            enforceGlobalVersionMemoryBudget();
+
+            // A dynamic analysis only previews values on the current version, so it isn't part of the log
+            if (!isDynamicAnalysis) {
+                log(new LogRecord(LogRecordType.UPDATE_CELL_VALUE, username, spreadsheetName, cellId, newValue, String.valueOf(isDynamicAnalysis)));
+            }
         } else {
             throw new SpreadsheetNotFoundException("The specified file does not exist for this user.");
         }
@@ -265,6 +543,7 @@ public class EngineImpl implements Engine {
         if (versionsManager != null) {
             // Call the existing addRange method from VersionsManager
             versionsManager.addRange(rangeName, firstCell, lastCell);
+            log(new LogRecord(LogRecordType.ADD_RANGE, username, spreadsheetName, rangeName, firstCell, lastCell));
         } else {
             throw new SpreadsheetNotFoundException("The specified file does not exist for this user.");
         }
@@ -280,6 +559,7 @@ public class EngineImpl implements Engine {
 
             // Call the existing removeRange method from VersionsManager
             versionsManager.removeRange(rangeName.toUpperCase());
+            log(new LogRecord(LogRecordType.REMOVE_RANGE, username, spreadsheetName, rangeName));
         } else {
             throw new SpreadsheetNotFoundException("The specified file does not exist for this user.");
         }
@@ -386,6 +666,47 @@ public class EngineImpl implements Engine {
         }
     }
 
+    @Override
+    // Method to get only the cells whose original or effective value differ between two versions
+    public synchronized VersionDiffDTO getVersionDiff(String username, String spreadsheetName, int fromVersion, int toVersion)
+            throws IndexOutOfBoundsException, SpreadsheetNotFoundException {
+        // Retrieve the VersionsManager for the specified spreadsheet name
+        VersionsManager versionsManager = spreadsheetsMap.get(spreadsheetName);
+
+        if (versionsManager == null) {
+            throw new SpreadsheetNotFoundException("The specified file does not exist for this user.");
+        }
+
+        // Both versions are read from the change sets in one call, without rebuilding their spreadsheets
+        VersionDiff versionDiff = versionsManager.getVersionDiff(fromVersion, toVersion);
+
+        return new VersionDiffDTO(fromVersion, toVersion,
+                convertCellsToDTO(versionDiff.getFromVersion(), versionDiff.getChangedCellIds()),
+                convertCellsToDTO(versionDiff.getToVersion(), versionDiff.getChangedCellIds()));
+    }
+
+    // Convert the given cells of a version to DTOs, the cells that don't exist in the version are left out
+    private Map<String, CellDTO> convertCellsToDTO(VersionView version, Set<String> cellIds) {
+        Map<String, CellDTO> cellDTOMap = new HashMap<>();
+
+        for (String cellId : cellIds) {
+            Cell cell = version.getCell(cellId);
+
+            if (cell != null) {
+                cellDTOMap.put(cellId, new CellDTO(
+                        cell.getOriginalValue(),
+                        toDTOValue(cell.getEffectiveValue()),
+                        cell.getLastUpdatedVersion(),
+                        cell.getLastUpdatedBy(),
+                        version.getDependencyIds(cellId),
+                        version.getDependentIds(cellId)
+                ));
+            }
+        }
+
+        return cellDTOMap;
+    }
+
     @Override
     public synchronized void askForPermission(String username, String spreadsheetName, PermissionType permissionType) {
         // Retrieve the VersionsManager for the specified spreadsheet name
@@ -394,6 +715,7 @@ public class EngineImpl implements Engine {
         if (versionsManager != null) {
             // Call the getSpreadsheetByVersion method from the VersionsManager
             versionsManager.askForPermission(username, permissionType);
+            log(new LogRecord(LogRecordType.ASK_FOR_PERMISSION, username, spreadsheetName, permissionType.name()));
         }
     }
 
@@ -415,13 +737,15 @@ public class EngineImpl implements Engine {
         return spreadsheetsMap;
     }
 
-    public void handlePermissionRequest(String applicantName, String handlerName, String spreadsheetName, int requestNumber, PermissionStatus permissionStatus, PermissionType permissionType) {
+    public synchronized void handlePermissionRequest(String applicantName, String handlerName, String spreadsheetName, int requestNumber, PermissionStatus permissionStatus, PermissionType permissionType) {
         // Retrieve the VersionsManager for the specified spreadsheet name
         VersionsManager versionsManager = spreadsheetsMap.get(spreadsheetName);
 
         if (versionsManager != null) {
             // Call the getSpreadsheetByVersion method from the VersionsManager
             versionsManager.handlePermissionRequest(applicantName, handlerName, requestNumber, permissionStatus, permissionType);
+            log(new LogRecord(LogRecordType.HANDLE_PERMISSION, applicantName, handlerName, spreadsheetName,
+                    String.valueOf(requestNumber), permissionStatus.name(), permissionType.name()));
         }
     }
 
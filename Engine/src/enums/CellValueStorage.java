@@ -0,0 +1,6 @@
+package enums;
+
+public enum CellValueStorage {
+    HEAP,     // Keep the effective value of every cell in the cell object
+    OFF_HEAP  // Keep the type and the number of every cell's effective value in native memory outside the Java heap
+}
@@ -0,0 +1,32 @@
+package enums;
+
+// The ErrorValue enum is the enum for the effective values of formulas that can't be evaluated
+// Every error is a single shared instance, so checking for an error doesn't compare strings and a user's text
+// like "NaN" isn't mistaken for an error, the text of an error is what is shown in the cell
+public enum ErrorValue {
+    NOT_A_NUMBER("NaN"),       // A math function got an argument that isn't a number, or its result is undefined
+    UNDEFINED("!UNDEFINED!"),  // A reference to a missing cell, or a string function got an invalid argument
+    UNKNOWN("UNKNOWN");        // A logic function got an argument that isn't a boolean or can't be compared
+
+    private final String text;
+
+    ErrorValue(String text) {
+        this.text = text;
+    }
+
+    // Get the error of the given text, null if the text isn't the text of an error
+    public static ErrorValue fromText(String text) {
+        for (ErrorValue errorValue : values()) {
+            if (errorValue.text.equals(text)) {
+                return errorValue;
+            }
+        }
+
+        return null;
+    }
+
+    @Override
+    public String toString() {
+        return text;
+    }
+}
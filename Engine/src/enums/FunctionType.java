@@ -9,34 +9,40 @@ import functionsimpl.functions.systemfunctions.RefFunction;
 
 // The FunctionType enum is the enum for the function types for each functionality
 public enum FunctionType {
-    PLUS(new PlusFunction()),
-    MINUS(new MinusFunction()),
-    TIMES(new TimesFunction()),
-    DIVIDE(new DivideFunction()),
-    MOD(new ModuloFunction()),
-    POW(new PowFunction()),
-    ABS(new AbsFunction()),
-    CONCAT(new ConcatFunction()),
-    SUB(new SubFunction()),
-    REF(new RefFunction()),
-    EQUAL(new EqualFunction()),
-    NOT(new NotFunction()),
-    BIGGER(new BiggerFunction()),
-    LESS(new LessFunction()),
-    OR(new OrFunction()),
-    AND(new AndFunction()),
-    IF(new IfFunction()),
-    SUM(new SumFunction()),
-    AVERAGE(new AverageFunction()),
-    PERCENT(new PercentFunction());
+    PLUS(new PlusFunction(), true),
+    MINUS(new MinusFunction(), true),
+    TIMES(new TimesFunction(), true),
+    DIVIDE(new DivideFunction(), true),
+    MOD(new ModuloFunction(), true),
+    POW(new PowFunction(), true),
+    ABS(new AbsFunction(), true),
+    CONCAT(new ConcatFunction(), true),
+    SUB(new SubFunction(), true),
+    REF(new RefFunction(), false),
+    EQUAL(new EqualFunction(), true),
+    NOT(new NotFunction(), true),
+    BIGGER(new BiggerFunction(), true),
+    LESS(new LessFunction(), true),
+    OR(new OrFunction(), true),
+    AND(new AndFunction(), true),
+    IF(new IfFunction(), true),
+    SUM(new SumFunction(), false),
+    AVERAGE(new AverageFunction(), false),
+    PERCENT(new PercentFunction(), true);
 
     private final Function function;
+    private final boolean pure; // Whether the result depends only on the arguments, not on the cells of the spreadsheet
 
-    FunctionType(Function function) {
+    FunctionType(Function function, boolean pure) {
         this.function = function;
+        this.pure = pure;
     }
 
     public Function getFunction() {
         return function;
     }
+
+    public boolean isPure() {
+        return pure;
+    }
 }
@@ -0,0 +1,7 @@
+package enums;
+
+public enum RecalculationMode {
+    INCREMENTAL, // Recalculate only the edited cell and the dependents whose inputs changed
+    PARALLEL,    // Like INCREMENTAL, but the independent cells of each dependency level are recalculated in parallel
+    FULL         // Recalculate every cell in the spreadsheet, used to verify the incremental results
+}
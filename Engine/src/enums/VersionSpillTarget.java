@@ -0,0 +1,6 @@
+package enums;
+
+public enum VersionSpillTarget {
+    DISK,     // Write every spilled version to its own temporary file
+    OFF_HEAP  // Keep every spilled version in native memory outside the Java heap
+}
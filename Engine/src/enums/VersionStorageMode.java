@@ -0,0 +1,6 @@
+package enums;
+
+public enum VersionStorageMode {
+    FULL,  // Keep the full spreadsheet of every version
+    DELTA  // Keep only the changed cells of each version, with the full spreadsheet of every checkpoint version
+}
@@ -2,7 +2,7 @@ package exceptions;
 
 public class InvalidCellIdFormatException extends Exception {
     public InvalidCellIdFormatException(String cellId) {
-        super("Invalid cell ID format: " + cellId + ". A valid cell ID consists of one uppercase letter " +
+        super("Invalid cell ID format: " + cellId + ". A valid cell ID consists of uppercase column letters " +
                 "followed by a positive number (e.g., A1, B2)");
     }
 
@@ -0,0 +1,53 @@
+package expressionimpls;
+
+import api.Expression;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// Bounded cache of parsed formulas by their text, the least recently used formula is dropped first
+// The parser reads a formula the same way whatever the case of its letters, so the key is the upper-cased text,
+// and it reads a name as a range only if the range exists, so the cache is emptied whenever the ranges change
+// The parsed formulas are never changed (see ExpressionPool), so one is shared by every cell with the same formula
+public final class ExpressionCache {
+    private final int capacity;
+    private final Map<String, Expression> expressions = new LinkedHashMap<>(16, 0.75f, true); // Least recently used first
+    private int rangesGeneration; // Generation of the ranges the cached formulas were parsed with
+
+    public ExpressionCache(int capacity) {
+        this.capacity = capacity;
+    }
+
+    // Check if a value is a formula, the other values are parsed without looking them up
+    public static boolean isFormula(String value) {
+        return value.startsWith("{") && value.endsWith("}");
+    }
+
+    // Get the parsed formula, null if it isn't in the cache or the ranges changed since it was parsed
+    // Formulas of restored cells are parsed on first use, which may be during a parallel recalculation
+    public synchronized Expression get(String formula, int rangesGeneration) {
+        if (rangesGeneration != this.rangesGeneration) {
+            expressions.clear();
+            this.rangesGeneration = rangesGeneration;
+            return null;
+        }
+
+        return expressions.get(formula.toUpperCase());
+    }
+
+    public synchronized void put(String formula, int rangesGeneration, Expression expression) {
+        if (rangesGeneration != this.rangesGeneration) {
+            expressions.clear();
+            this.rangesGeneration = rangesGeneration;
+        }
+
+        expressions.put(formula.toUpperCase(), expression);
+        if (expressions.size() > capacity) {
+            expressions.remove(expressions.keySet().iterator().next());
+        }
+    }
+
+    public synchronized int size() {
+        return expressions.size();
+    }
+}
@@ -6,6 +6,7 @@ import api.Range;
 import functionsimpl.FunctionFactory;
 import exceptions.InvalidExpressionException;
 import ranges.RangesManager;
+import spreadsheet.CellCoordinate;
 import spreadsheet.Spreadsheet;
 
 import java.util.ArrayList;
@@ -13,34 +14,43 @@ import java.util.List;
 import java.util.function.Supplier;
 
 // This class is responsible for parsing a string input into an Expression object.
+// A pure function whose arguments are all literals is evaluated while parsing and replaced by its value
+// (constant folding), and with a pool every subtree is replaced by the shared subtree equal to it (hash-consing)
 public class ExpressionParser {
 
     // Parse the input string into an Expression object
     public static Expression parse(String input, Supplier<Spreadsheet> spreadsheetSupplier, RangesManager rangesManager) throws InvalidExpressionException {
+        return parse(input, spreadsheetSupplier, rangesManager, null);
+    }
+
+    // Parse the input string into an Expression object made of the shared expressions of the pool
+    public static Expression parse(String input, Supplier<Spreadsheet> spreadsheetSupplier, RangesManager rangesManager,
+                                   ExpressionPool pool) throws InvalidExpressionException {
         // Check if input is a boolean
         if (input.equalsIgnoreCase("TRUE") || input.equalsIgnoreCase("FALSE")) {
-            return new LiteralExpression(Boolean.parseBoolean(input));
+            return share(new LiteralExpression(Boolean.parseBoolean(input)), pool);
         }
 
         // Check if it's a function expression
         if (isFunctionExpression(input)) {
-            return parseFunction(input, spreadsheetSupplier, rangesManager);
+            return parseFunction(input, spreadsheetSupplier, rangesManager, pool);
         }
 
         // Check if it's a numeric literal
         try {
             double value = Double.parseDouble(input);
-            return new LiteralExpression(value);
+            return share(new LiteralExpression(value), pool);
         } catch (NumberFormatException e) {
             // Not a number, move on to next check
         }
 
         // If none of the above, treat it as a normal string literal
-        return new LiteralExpression(input);
+        return share(new LiteralExpression(input), pool);
     }
 
     // Parse a function expression like {PLUS,5,6}
-    private static Expression parseFunction(String input, Supplier<Spreadsheet> spreadsheetSupplier, RangesManager rangesManager) throws InvalidExpressionException {
+    private static Expression parseFunction(String input, Supplier<Spreadsheet> spreadsheetSupplier, RangesManager rangesManager,
+                                            ExpressionPool pool) throws InvalidExpressionException {
         // Remove the curly braces
         String innerContent = input.substring(1, input.length() - 1);
 
@@ -55,7 +65,7 @@ public class ExpressionParser {
 
         // Parse the arguments (if any)
         String argsContent = innerContent.substring(firstCommaIndex + 1).toUpperCase();
-        List<Expression> arguments = parseArguments(argsContent, spreadsheetSupplier, rangesManager, functionName);
+        List<Expression> arguments = parseArguments(argsContent, spreadsheetSupplier, rangesManager, functionName, pool);
 
         // Create the appropriate function expression
         Function function = FunctionFactory.getFunction(functionName);
@@ -64,11 +74,34 @@ public class ExpressionParser {
             throw new InvalidExpressionException("Unknown function: " + functionName);
         }
 
-        return new FunctionExpression(functionName, arguments, function);
+        FunctionExpression expression = new FunctionExpression(functionName, arguments, function);
+
+        // A pure function of literals always has the same value, so it is evaluated once, here
+        if (FunctionFactory.isPure(functionName) && arguments.size() == function.getNumberOfArguments() && hasOnlyLiterals(arguments)) {
+            return share(new LiteralExpression(expression.evaluate()), pool);
+        }
+
+        return share(expression, pool);
+    }
+
+    private static boolean hasOnlyLiterals(List<Expression> arguments) {
+        for (Expression argument : arguments) {
+            if (!(argument instanceof LiteralExpression)) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    // Get the shared expression of the pool equal to the given expression, the expression itself without a pool
+    private static <T extends Expression> T share(T expression, ExpressionPool pool) {
+        return pool != null ? pool.intern(expression) : expression;
     }
 
     // Parse arguments for the function, handling nested functions
-    private static List<Expression> parseArguments(String argsContent, Supplier<Spreadsheet> spreadsheetSupplier, RangesManager rangesManager, String functionName) throws InvalidExpressionException {
+    private static List<Expression> parseArguments(String argsContent, Supplier<Spreadsheet> spreadsheetSupplier, RangesManager rangesManager,
+                                                   String functionName, ExpressionPool pool) throws InvalidExpressionException {
         List<Expression> arguments = new ArrayList<>();
         int start = 0;
         int braceDepth = 0;
@@ -83,12 +116,12 @@ public class ExpressionParser {
                 String arg = argsContent.substring(start, i);
                 // If the function is REF, check if the argument is a valid cell reference
                 if (functionName.equals("REF") && isValidCellReference(arg)) {
-                    arguments.add(new ReferenceExpression(arg, spreadsheetSupplier));
+                    arguments.add(share(new ReferenceExpression(arg, spreadsheetSupplier), pool));
                 } else if (rangesManager.getRange(arg) != null) {
                     Range range = rangesManager.getRange(arg);
-                    arguments.add(new RangeExpression(arg, range, spreadsheetSupplier));
+                    arguments.add(share(new RangeExpression(arg, range, spreadsheetSupplier), pool));
                 } else {
-                    arguments.add(parse(arg, spreadsheetSupplier, rangesManager));
+                    arguments.add(parse(arg, spreadsheetSupplier, rangesManager, pool));
                 }
                 start = i + 1;
             }
@@ -97,12 +130,12 @@ public class ExpressionParser {
         // Add the last argument after the loop
         String arg = argsContent.substring(start);
         if (functionName.equals("REF") && isValidCellReference(arg)) {
-            arguments.add(new ReferenceExpression(arg, spreadsheetSupplier));
+            arguments.add(share(new ReferenceExpression(arg, spreadsheetSupplier), pool));
         } else if (rangesManager.getRange(arg) != null) { // Check if it is a range
             Range range = rangesManager.getRange(arg);
-            arguments.add(new RangeExpression(arg, range, spreadsheetSupplier));
+            arguments.add(share(new RangeExpression(arg, range, spreadsheetSupplier), pool));
         } else {
-            arguments.add(parse(arg, spreadsheetSupplier, rangesManager));
+            arguments.add(parse(arg, spreadsheetSupplier, rangesManager, pool));
         }
 
         return arguments;
@@ -128,7 +161,7 @@ public class ExpressionParser {
 
     // Check if the input is a valid cell reference
     private static boolean isValidCellReference(String input) {
-        return input.matches("^[A-Z]+[0-9]+$");
+        return CellCoordinate.parseKey(input) != CellCoordinate.INVALID_KEY;
     }
 
     // Check if the input is a function expression
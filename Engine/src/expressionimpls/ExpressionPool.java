@@ -0,0 +1,34 @@
+package expressionimpls;
+
+import api.Expression;
+
+import java.lang.ref.WeakReference;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+// Pool of the expressions parsed for one versions manager, identical subtrees are kept once and shared by all the
+// cells and versions that use them (hash-consing), so a formula repeated across a sheet takes the memory of one
+// Parsed expressions are never changed (the compiled program of a formula is only a cache), so sharing them is safe
+// The pool holds its expressions weakly, an expression that no cell uses anymore is dropped from it
+public final class ExpressionPool {
+    private final Map<Expression, WeakReference<Expression>> expressions = new WeakHashMap<>();
+
+    // Get the shared expression equal to the given one, the given expression becomes the shared one if there is none
+    // Formulas of restored cells are parsed on first use, which may be during a parallel recalculation
+    @SuppressWarnings("unchecked")
+    public synchronized <T extends Expression> T intern(T expression) {
+        WeakReference<Expression> reference = expressions.get(expression);
+        Expression shared = reference != null ? reference.get() : null;
+
+        if (shared == null) {
+            expressions.put(expression, new WeakReference<>(expression));
+            return expression;
+        }
+
+        return (T) shared;
+    }
+
+    public synchronized int size() {
+        return expressions.size();
+    }
+}
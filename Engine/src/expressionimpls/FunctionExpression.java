@@ -12,6 +12,9 @@ public class FunctionExpression implements Expression, Serializable {
     private final String functionName;
     private final List<Expression> arguments;
     private final Function function;
+    private transient NumericProgram program; // Compiled form of an arithmetic formula, see NumericProgram
+    private transient boolean compiled;       // Whether the formula was already compiled, or found not to compile
+    private transient int hash;               // Cached hash code, the expressions are hashed whenever they are pooled
 
     public FunctionExpression(String functionName, List<Expression> arguments, Function function) {
         this.functionName = functionName;
@@ -26,10 +29,40 @@ public class FunctionExpression implements Expression, Serializable {
             throw new IllegalArgumentException("Function not found: " + functionName);
         }
 
+        // Arithmetic formulas are compiled on their first evaluation and then run as a flat program
+        NumericProgram program = getProgram();
+        if (program != null) {
+            return program.run();
+        }
+
         // Apply the function to its arguments
         return function.apply(arguments);
     }
 
+    @Override
+    // An arithmetic formula results in a number or the NaN error
+    public boolean hasNumericResult() {
+        return function != null && getProgram() != null;
+    }
+
+    @Override
+    // An arithmetic formula is run without boxing any value, the other functions are applied and unboxed
+    public double evaluateDouble() {
+        NumericProgram program = function != null ? getProgram() : null;
+
+        return program != null ? program.runDouble() : Expression.super.evaluateDouble();
+    }
+
+    // Compile the formula on first use, null if it isn't an arithmetic formula
+    private NumericProgram getProgram() {
+        if (!compiled) {
+            program = NumericProgram.compile(this);
+            compiled = true;
+        }
+
+        return program;
+    }
+
     public List<Expression> getArguments() {
         return arguments;
     }
@@ -38,6 +71,10 @@ public class FunctionExpression implements Expression, Serializable {
         return functionName;
     }
 
+    public Function getFunction() {
+        return function;
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
@@ -48,6 +85,10 @@ public class FunctionExpression implements Expression, Serializable {
 
     @Override
     public int hashCode() {
-        return Objects.hash(functionName, arguments, function);
+        if (hash == 0) {
+            hash = Objects.hash(functionName, arguments, function);
+        }
+
+        return hash;
     }
 }
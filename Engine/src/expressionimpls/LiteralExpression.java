@@ -17,6 +17,16 @@ public class LiteralExpression implements Expression, Serializable {
         return value;
     }
 
+    @Override
+    public boolean hasNumericResult() {
+        return value instanceof Number;
+    }
+
+    @Override
+    public double evaluateDouble() {
+        return value instanceof Number ? ((Number) value).doubleValue() : Double.NaN;
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
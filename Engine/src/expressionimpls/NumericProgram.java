@@ -0,0 +1,324 @@
+package expressionimpls;
+
+import api.Expression;
+import cells.Cell;
+import enums.ErrorValue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Flat stack-machine form of an arithmetic formula, evaluated on a stack of primitive doubles instead of walking the
+// expression tree, so the intermediate values are never boxed and no function is called through the interface
+// Every thread keeps one growable stack that the programs share, so running a program allocates nothing
+// A formula is compiled once on its first evaluation, arguments that aren't arithmetic (like an IF) are kept as
+// expressions and evaluated as they are
+// Like the functions, a program evaluates all of its arguments and returns the NaN error if any of them isn't a number,
+// so the result is the same as evaluating the tree
+final class NumericProgram {
+    // Operations that push a value
+    private static final byte CONSTANT = 0;
+    private static final byte REFERENCE = 1;
+    private static final byte SUM = 2;
+    private static final byte AVERAGE = 3;
+    private static final byte EVALUATE = 4;
+    private static final byte FAIL = 5;
+    // Operations on the values at the top of the stack
+    private static final byte PLUS = 6;
+    private static final byte MINUS = 7;
+    private static final byte TIMES = 8;
+    private static final byte DIVIDE = 9;
+    private static final byte MOD = 10;
+    private static final byte POW = 11;
+    private static final byte PERCENT = 12;
+    private static final byte ABS = 13;
+
+    private static final Map<String, Byte> OPERATIONS = new HashMap<>(); // Operation of every arithmetic function
+    private static final ThreadLocal<EvaluationStack> STACKS = ThreadLocal.withInitial(EvaluationStack::new);
+
+    static {
+        OPERATIONS.put("PLUS", PLUS);
+        OPERATIONS.put("MINUS", MINUS);
+        OPERATIONS.put("TIMES", TIMES);
+        OPERATIONS.put("DIVIDE", DIVIDE);
+        OPERATIONS.put("MOD", MOD);
+        OPERATIONS.put("POW", POW);
+        OPERATIONS.put("PERCENT", PERCENT);
+        OPERATIONS.put("ABS", ABS);
+        OPERATIONS.put("SUM", SUM);
+        OPERATIONS.put("AVERAGE", AVERAGE);
+    }
+
+    private final byte[] code;
+    private final int[] operands;         // Index of the constant or the expression of each operation
+    private final double[] constants;
+    private final Expression[] expressions; // References, ranges and arguments that are evaluated as they are
+    private final int maxStackSize;
+
+    private NumericProgram(Builder builder) {
+        this.code = Arrays.copyOf(builder.code, builder.size);
+        this.operands = Arrays.copyOf(builder.operands, builder.size);
+        this.constants = Arrays.copyOf(builder.constants, builder.constantCount);
+        this.expressions = builder.expressions.toArray(new Expression[0]);
+        this.maxStackSize = builder.maxStackSize;
+    }
+
+    // Compile a formula whose root is an arithmetic function, returns null for any other formula
+    static NumericProgram compile(FunctionExpression root) {
+        if (operationOf(root) == null) {
+            return null;
+        }
+
+        Builder builder = new Builder();
+        builder.emitFunction(root);
+
+        return new NumericProgram(builder);
+    }
+
+    // Get the operation of an arithmetic function that has the right number of arguments, null otherwise
+    private static Byte operationOf(FunctionExpression expression) {
+        Byte operation = OPERATIONS.get(expression.getFunctionName());
+
+        if (operation == null || expression.getFunction() == null
+                || expression.getArguments().size() != expression.getFunction().getNumberOfArguments()) {
+            return null;
+        }
+
+        return operation;
+    }
+
+    // Run the program, the result is a boxed double or the NaN error
+    Object run() {
+        EvaluationStack evaluationStack = STACKS.get();
+        double value = execute(evaluationStack);
+
+        return evaluationStack.failed ? ErrorValue.NOT_A_NUMBER : (Object) value;
+    }
+
+    // Run the program without boxing the result, Double.NaN if the result isn't a number
+    double runDouble() {
+        EvaluationStack evaluationStack = STACKS.get();
+        double value = execute(evaluationStack);
+
+        return evaluationStack.failed ? Double.NaN : value;
+    }
+
+    // Run the program on the stack of the thread, above the values of the programs that are still running on it
+    // (an argument evaluated as an expression may run a program of its own), whether it failed is kept in the stack
+    private double execute(EvaluationStack evaluationStack) {
+        int base = evaluationStack.reserve(maxStackSize);
+        double[] stack = evaluationStack.values;
+        int top = base;
+        boolean failed = false;
+
+        try {
+            for (int pc = 0; pc < code.length; pc++) {
+                double right;
+
+                switch (code[pc]) {
+                    case CONSTANT:
+                        stack[top++] = constants[operands[pc]];
+                        break;
+                    case REFERENCE: {
+                        Cell cell = ((ReferenceExpression) expressions[operands[pc]]).getCell();
+
+                        if (cell != null && cell.isNumeric()) {
+                            stack[top++] = cell.getNumericValue();
+                        } else if (cell != null && cell.getEffectiveValue() instanceof Number) {
+                            stack[top++] = ((Number) cell.getEffectiveValue()).doubleValue();
+                        } else {
+                            failed = true;
+                            stack[top++] = 0;
+                        }
+                        break;
+                    }
+                    case SUM: {
+                        RangeExpression.NumericTotal total = ((RangeExpression) expressions[operands[pc]]).sumNumericValues();
+                        stack[top++] = total.getCount() > 0 ? total.getSum() : 0;
+                        break;
+                    }
+                    case AVERAGE: {
+                        RangeExpression rangeExpression = (RangeExpression) expressions[operands[pc]];
+                        RangeExpression.NumericTotal total = rangeExpression.getRange() != null ? rangeExpression.sumNumericValues() : null;
+
+                        if (total == null || total.getCount() == 0) {
+                            failed = true;
+                            stack[top++] = 0;
+                        } else {
+                            stack[top++] = total.getSum() / total.getCount();
+                        }
+                        break;
+                    }
+                    case EVALUATE: {
+                        Expression expression = expressions[operands[pc]];
+                        double value = expression.hasNumericResult() ? expression.evaluateDouble() : Double.NaN;
+
+                        // A result that isn't a number, or a real NaN, is evaluated as an object to tell them apart
+                        if (Double.isNaN(value)) {
+                            Object result = expression.evaluate();
+
+                            failed |= !(result instanceof Number);
+                            value = result instanceof Number ? ((Number) result).doubleValue() : 0;
+                        }
+
+                        stack = evaluationStack.values; // A program run by the expression may have grown the stack
+                        stack[top++] = value;
+                        break;
+                    }
+                    case FAIL:
+                        failed = true;
+                        stack[top++] = 0;
+                        break;
+                    case PLUS:
+                        right = stack[--top];
+                        stack[top - 1] += right;
+                        break;
+                    case MINUS:
+                        right = stack[--top];
+                        stack[top - 1] -= right;
+                        break;
+                    case TIMES:
+                        right = stack[--top];
+                        stack[top - 1] *= right;
+                        break;
+                    case DIVIDE:
+                        right = stack[--top];
+                        failed |= right == 0; // Division by zero results in NaN
+                        stack[top - 1] /= right;
+                        break;
+                    case MOD:
+                        right = stack[--top];
+                        failed |= right == 0; // Modulus by zero is undefined
+                        stack[top - 1] %= right;
+                        break;
+                    case POW:
+                        right = stack[--top];
+                        failed |= stack[top - 1] == 0 && right == 0; // 0 to the power of 0 is undefined
+                        stack[top - 1] = Math.pow(stack[top - 1], right);
+                        break;
+                    case PERCENT:
+                        right = stack[--top];
+                        stack[top - 1] = (stack[top - 1] * right) / 100;
+                        break;
+                    case ABS:
+                        stack[top - 1] = Math.abs(stack[top - 1]);
+                        break;
+                    default:
+                        throw new IllegalStateException("Unknown operation: " + code[pc]);
+                }
+            }
+        } finally {
+            evaluationStack.release(base);
+        }
+
+        evaluationStack.failed = failed;
+        return stack[base];
+    }
+
+    // Stack of the values of the programs running on a thread
+    private static final class EvaluationStack {
+        private double[] values = new double[32];
+        private int top;        // First free slot
+        private boolean failed; // Whether the last program that ran failed
+
+        // Reserve the slots of a program above the slots in use, returns the first of them
+        private int reserve(int size) {
+            int base = top;
+
+            if (base + size > values.length) {
+                values = Arrays.copyOf(values, Math.max(values.length * 2, base + size));
+            }
+            top = base + size;
+
+            return base;
+        }
+
+        private void release(int base) {
+            top = base;
+        }
+    }
+
+    // Collects the operations of a program in evaluation order (post-order) while tracking the stack size
+    private static final class Builder {
+        private byte[] code = new byte[16];
+        private int[] operands = new int[16];
+        private int size;
+        private double[] constants = new double[4];
+        private int constantCount;
+        private final List<Expression> expressions = new ArrayList<>();
+        private int stackSize;
+        private int maxStackSize;
+
+        // Emit an argument of an arithmetic function, it pushes one value
+        private void emitArgument(Expression argument) {
+            if (argument instanceof LiteralExpression) {
+                Object value = argument.evaluate();
+
+                if (value instanceof Number) {
+                    if (constantCount == constants.length) {
+                        constants = Arrays.copyOf(constants, constantCount * 2);
+                    }
+                    constants[constantCount] = ((Number) value).doubleValue();
+                    emit(CONSTANT, constantCount++, 1);
+                } else {
+                    emit(FAIL, 0, 1);
+                }
+            } else if (argument instanceof FunctionExpression && isReference((FunctionExpression) argument)) {
+                emitExpression(REFERENCE, ((FunctionExpression) argument).getArguments().get(0));
+            } else if (argument instanceof FunctionExpression && operationOf((FunctionExpression) argument) != null) {
+                emitFunction((FunctionExpression) argument);
+            } else {
+                emitExpression(EVALUATE, argument);
+            }
+        }
+
+        // Emit an arithmetic function, its arguments come first
+        private void emitFunction(FunctionExpression function) {
+            byte operation = operationOf(function);
+
+            if (operation == SUM || operation == AVERAGE) {
+                Expression argument = function.getArguments().get(0);
+
+                // SUM and AVERAGE of anything but a range are the NaN error, the argument isn't evaluated
+                if (argument instanceof RangeExpression) {
+                    emitExpression(operation, argument);
+                } else {
+                    emit(FAIL, 0, 1);
+                }
+                return;
+            }
+
+            for (Expression argument : function.getArguments()) {
+                emitArgument(argument);
+            }
+            emit(operation, 0, 1 - function.getArguments().size());
+        }
+
+        // A REF of a cell reference pushes the value of the cell
+        private static boolean isReference(FunctionExpression function) {
+            return "REF".equals(function.getFunctionName()) && function.getFunction() != null
+                    && function.getArguments().size() == 1 && function.getArguments().get(0) instanceof ReferenceExpression;
+        }
+
+        private void emitExpression(byte operation, Expression expression) {
+            expressions.add(expression);
+            emit(operation, expressions.size() - 1, 1);
+        }
+
+        private void emit(byte operation, int operand, int stackChange) {
+            if (size == code.length) {
+                code = Arrays.copyOf(code, size * 2);
+                operands = Arrays.copyOf(operands, size * 2);
+            }
+
+            code[size] = operation;
+            operands[size] = operand;
+            size++;
+
+            stackSize += stackChange;
+            maxStackSize = Math.max(maxStackSize, stackSize);
+        }
+    }
+}
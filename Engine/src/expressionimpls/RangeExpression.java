@@ -3,6 +3,7 @@ package expressionimpls;
 import api.Expression;
 import api.Range;
 import cells.Cell;
+import spreadsheet.RangeTotal;
 import spreadsheet.Spreadsheet;
 
 import java.util.ArrayList;
@@ -13,7 +14,7 @@ import java.util.function.Supplier;
 public class RangeExpression implements Expression {
     private final String rangeName; // Name of the range
     private final Range range; // The range object itself
-    private final Supplier<Spreadsheet> spreadsheetSupplier; // Supplier to get the current spreadsheet
+    private final Supplier<Spreadsheet> spreadsheetSupplier; // Supplier of the spreadsheet being evaluated
 
     public RangeExpression(String rangeName, Range range, Supplier<Spreadsheet> spreadsheetSupplier) {
         this.rangeName = rangeName;
@@ -24,15 +25,16 @@ public class RangeExpression implements Expression {
     @Override
     public Object evaluate() {
         List<Object> effectiveValues = new ArrayList<>();
-        Spreadsheet spreadsheet = spreadsheetSupplier.get(); // Get the current spreadsheet
+        Spreadsheet spreadsheet = spreadsheetSupplier.get(); // Get the spreadsheet being evaluated
 
         if (spreadsheet == null || range == null) {
             return effectiveValues; // Return an empty list if the spreadsheet or range is null
         }
 
-        // Iterate over all cell IDs in the range
-        for (String cellId : range.getCells()) {
-            Cell cell = spreadsheet.getCellById(cellId);
+        // Walk the cells of the range by their position, without building their IDs
+        Range.Cursor cursor = range.cursor();
+        while (cursor.next()) {
+            Cell cell = spreadsheet.getCell(cursor.getRow(), cursor.getColumn());
 
             if (cell != null) {
                 effectiveValues.add(cell.getEffectiveValue());
@@ -42,6 +44,36 @@ public class RangeExpression implements Expression {
         return effectiveValues; // Return the list of effective values of the cells
     }
 
+    // Sum the numeric values of the cells in the range, reading them as primitives without boxing
+    // The spreadsheet answers from the sums it keeps for the columns of the range, without reading the cells
+    public NumericTotal sumNumericValues() {
+        NumericTotal total = new NumericTotal();
+        Spreadsheet spreadsheet = spreadsheetSupplier.get();
+
+        if (spreadsheet == null || range == null) {
+            return total;
+        }
+
+        RangeTotal rangeTotal = spreadsheet.getRangeTotal(range);
+        if (rangeTotal != null) {
+            total.sum = rangeTotal.getSum();
+            total.count = rangeTotal.getCount();
+            return total;
+        }
+
+        Range.Cursor cursor = range.cursor();
+        while (cursor.next()) {
+            Cell cell = spreadsheet.getCell(cursor.getRow(), cursor.getColumn());
+
+            if (cell != null && cell.isNumeric()) {
+                total.sum += cell.getNumericValue();
+                total.count++;
+            }
+        }
+
+        return total;
+    }
+
     public String getRangeName() {
         return rangeName;
     }
@@ -50,6 +82,20 @@ public class RangeExpression implements Expression {
         return range;
     }
 
+    // Sum and count of the numeric values in a range
+    public static class NumericTotal {
+        private double sum;
+        private int count;
+
+        public double getSum() {
+            return sum;
+        }
+
+        public int getCount() {
+            return count;
+        }
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
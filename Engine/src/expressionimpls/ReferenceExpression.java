@@ -2,6 +2,8 @@ package expressionimpls;
 
 import api.Expression;
 import cells.Cell;
+import enums.ErrorValue;
+import spreadsheet.CellCoordinate;
 import spreadsheet.Spreadsheet;
 
 import java.io.Serializable;
@@ -11,10 +13,12 @@ import java.util.function.Supplier;
 // Represent a reference to a cell in the spreadsheet
 public class ReferenceExpression implements Expression, Serializable {
     private final String cellId;
+    private final long key; // Packed coordinate of the cell, looked up in the grid without parsing the cell ID
     private transient Supplier<Spreadsheet> spreadsheetSupplier;
 
     public ReferenceExpression(String cellId, Supplier<Spreadsheet> spreadsheetSupplier) {
         this.cellId = cellId.toUpperCase();
+        this.key = CellCoordinate.parseKey(this.cellId);
         this.spreadsheetSupplier = spreadsheetSupplier;
     }
 
@@ -25,20 +29,36 @@ public class ReferenceExpression implements Expression, Serializable {
     @Override
     // Evaluate the reference expression
     public Object evaluate() {
-        // Get the latest Spreadsheet instance from the supplier
-        Spreadsheet spreadsheet = spreadsheetSupplier.get();
-
-        // Retrieve the cell from the spreadsheet
-        Cell cell = spreadsheet.getCellById(cellId);
+        // Retrieve the cell from the spreadsheet being evaluated
+        Cell cell = getCell();
 
         // Return the effective value of the cell or "!UNDEFINED!" if the cell doesn't exist
         if (cell != null) {
             return cell.getEffectiveValue();
         } else {
-            return "!UNDEFINED!";
+            return ErrorValue.UNDEFINED;
         }
     }
 
+    @Override
+    // Read a numeric cell straight from its primitive value
+    public double evaluateDouble() {
+        Cell cell = getCell();
+
+        return cell != null && cell.isNumeric() ? cell.getNumericValue() : Expression.super.evaluateDouble();
+    }
+
+    // Get the referenced cell from the spreadsheet being evaluated, null if it doesn't exist
+    // Every call looks up both: the spreadsheet from the binding of the evaluating thread (see SpreadsheetLink) and the
+    // cell from the tiles of its grid by the packed coordinate
+    // The reference isn't bound to a cell slot, since the pool shares one parsed reference between all the cells and
+    // versions that use it (see ExpressionPool), so a slot would hold for only one of them
+    public Cell getCell() {
+        Spreadsheet spreadsheet = spreadsheetSupplier.get();
+
+        return key != CellCoordinate.INVALID_KEY ? spreadsheet.getCell(CellCoordinate.row(key), CellCoordinate.column(key)) : null;
+    }
+
     public String getCellId() {
         return cellId;
     }
@@ -2,6 +2,7 @@ package filter;
 
 import api.Engine;
 import cells.Cell;
+import spreadsheet.CellCoordinate;
 import spreadsheet.Spreadsheet;
 import versions.VersionsManager;
 
@@ -25,45 +26,27 @@ public class SpreadsheetFilter {
         }
 
         // Parse the table area into start and end cells
-        String[] areaParts = parseTableArea(tableArea);
-        String topLeftCell = areaParts[0];
-        String bottomRightCell = areaParts[1];
+        CellCoordinate[] area = parseTableArea(tableArea);
+        CellCoordinate topLeftCell = area[0];
+        CellCoordinate bottomRightCell = area[1];
 
         // Get the row and column ranges for the specified area
-        int[] rowRange = getRowRange(topLeftCell, bottomRightCell);
-        int[] columnRange = getColumnRange(topLeftCell, bottomRightCell);
+        int[] rowRange = {topLeftCell.getRow(), bottomRightCell.getRow()};
+        int[] columnRange = {topLeftCell.getColumn(), bottomRightCell.getColumn()};
 
         // Filter rows based on selected column values, including cell IDs
         return getFilteredRowsWithCellIds(currentSpreadsheet, rowRange, columnRange, selectedColumnValues);
     }
 
     // Parses the table area string (e.g., "A1..D10") and returns the top-left and bottom-right cells
-    private String[] parseTableArea(String tableArea) {
-        String[] areaParts = tableArea.split("\\.\\.");
+    private CellCoordinate[] parseTableArea(String tableArea) {
+        CellCoordinate[] area = CellCoordinate.parseArea(tableArea);
 
-        if (areaParts.length != 2) {
+        if (area == null) {
             throw new IllegalArgumentException("Invalid table area format. Use <top-left-cell>..<bottom-right-cell> format.");
         }
 
-        return areaParts;
-    }
-
-    // Extracts the row range from the start and end cell references
-    private int[] getRowRange(String topLeftCell, String bottomRightCell) {
-        int startRow = Integer.parseInt(topLeftCell.replaceAll("\\D", ""));
-        int endRow = Integer.parseInt(bottomRightCell.replaceAll("\\D", ""));
-
-        return new int[]{startRow, endRow};
-    }
-
-    // Extracts the column range from the start and end cell references
-    private int[] getColumnRange(String topLeftCell, String bottomRightCell) {
-        String startColumn = topLeftCell.replaceAll("\\d", "");
-        String endColumn = bottomRightCell.replaceAll("\\d", "");
-        int startColumnIndex = versionsManager.getColumnIndex(startColumn);
-        int endColumnIndex = versionsManager.getColumnIndex(endColumn);
-
-        return new int[]{startColumnIndex, endColumnIndex};
+        return area;
     }
 
     // Filters the rows based on the selected columns and their values
@@ -77,12 +60,12 @@ public class SpreadsheetFilter {
 
             // Iterate through each column within the specified range
             for (int col = columnRange[0]; col <= columnRange[1]; col++) {
-                String cellId = getColumnName(col) + row; // Construct cell ID like "A1", "B2", etc.
-                Cell cell = spreadsheet.getCellById(cellId);
+                Cell cell = spreadsheet.getCell(row, col); // Read the cell straight from the grid
                 String cellValue = (cell != null && cell.getEffectiveValue() != null) ? cell.getEffectiveValue().toString() : "";
 
                 // Check if the cell value matches the filter criteria for its column
                 String columnName = getColumnName(col);
+                String cellId = CellCoordinate.toCellId(row, col); // Construct cell ID like "A1", "B2", etc.
                 if (selectedColumnValues.containsKey(columnName) && !selectedColumnValues.get(columnName).contains(cellValue)) {
                     includeRow = false; // If any cell in the row does not match the filter, skip this row
                     break;
@@ -104,7 +87,7 @@ public class SpreadsheetFilter {
     // Determines if a row should be included in the filtered results
     private boolean shouldIncludeRow(Spreadsheet spreadsheet, int row, int[] columnRange, String[] rowData, Map<String, List<String>> selectedColumnValues) {
         for (int colIndex = columnRange[0]; colIndex <= columnRange[1]; colIndex++) {
-            String cellId = versionsManager.getColumnName(colIndex) + row;
+            String cellId = CellCoordinate.toCellId(row, colIndex);
             String cellValue = getCellValue(spreadsheet, cellId);
             rowData[colIndex - columnRange[0]] = cellValue; // Store cell value in row data array
 
@@ -138,12 +121,7 @@ public class SpreadsheetFilter {
 
     // Helper method to convert a zero-based column index to an Excel-style column name (A, B, C, ..., Z, AA, AB, ...)
     public String getColumnName(int index) {
-        StringBuilder columnName = new StringBuilder();
-        while (index >= 0) {
-            columnName.insert(0, (char) ('A' + (index % 26)));
-            index = (index / 26) - 1;
-        }
-        return columnName.toString();
+        return CellCoordinate.columnName(index);
     }
 
     @Override
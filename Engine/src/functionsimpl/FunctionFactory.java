@@ -15,4 +15,13 @@ public class FunctionFactory {
             return null;
         }
     }
+
+    // Check if a function always gives the same result for the same arguments, false for an unknown function
+    public static boolean isPure(String functionName) {
+        try {
+            return FunctionType.valueOf(functionName.toUpperCase()).isPure();
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
 }
@@ -1,7 +1,9 @@
 package functionsimpl;
 
+import enums.ErrorValue;
+
 public class FunctionUtils {
     public static boolean isValidValue(Object arg) {
-        return !("!UNDEFINED!".equals(arg) || "NaN".equals(arg) || "UNKNOWN".equals(arg));
+        return !(arg instanceof ErrorValue);
     }
 }
@@ -2,6 +2,7 @@ package functionsimpl.functions.logicfunctions;
 
 import api.Expression;
 import api.Function;
+import enums.ErrorValue;
 
 import java.util.List;
 
@@ -18,7 +19,7 @@ public class AndFunction implements Function {
         Object exp2 = args.get(1).evaluate();
 
         if (!(exp1 instanceof Boolean) || !(exp2 instanceof Boolean)) {
-            return "UNKNOWN";
+            return ErrorValue.UNKNOWN;
         }
 
         return (Boolean) exp1 && (Boolean) exp2;
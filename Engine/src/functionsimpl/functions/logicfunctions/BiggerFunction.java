@@ -2,6 +2,7 @@ package functionsimpl.functions.logicfunctions;
 
 import api.Expression;
 import api.Function;
+import enums.ErrorValue;
 
 import java.util.List;
 
@@ -18,7 +19,7 @@ public class BiggerFunction implements Function {
         Object arg2 = args.get(1).evaluate();
 
         if (!(arg1 instanceof Number) || !(arg2 instanceof Number)) {
-            return "UNKNOWN";
+            return ErrorValue.UNKNOWN;
         }
 
         return ((Number) arg1).doubleValue() >= ((Number) arg2).doubleValue();
@@ -2,6 +2,7 @@ package functionsimpl.functions.logicfunctions;
 
 import api.Expression;
 import api.Function;
+import enums.ErrorValue;
 import functionsimpl.FunctionUtils;
 
 import java.util.List;
@@ -19,7 +20,7 @@ public class EqualFunction implements Function {
         Object arg2 = args.get(1).evaluate();
 
         if (!FunctionUtils.isValidValue(arg1) || !FunctionUtils.isValidValue(arg2)) {
-            return "UNKNOWN";
+            return ErrorValue.UNKNOWN;
         }
         if (arg1 == null && arg2 == null) {
             return true;
@@ -2,6 +2,7 @@ package functionsimpl.functions.logicfunctions;
 
 import api.Expression;
 import api.Function;
+import enums.ErrorValue;
 import functionsimpl.FunctionUtils;
 
 import java.util.List;
@@ -18,7 +19,7 @@ public class IfFunction implements Function {
         Object condition = args.get(0).evaluate();
 
         if (!FunctionUtils.isValidValue(condition) || !(condition instanceof Boolean)) {
-            return "UNKNOWN";
+            return ErrorValue.UNKNOWN;
         }
         else if ((Boolean)condition) {
             return args.get(1).evaluate();
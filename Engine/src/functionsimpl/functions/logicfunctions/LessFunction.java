@@ -2,6 +2,7 @@ package functionsimpl.functions.logicfunctions;
 
 import api.Expression;
 import api.Function;
+import enums.ErrorValue;
 import functionsimpl.FunctionUtils;
 
 import java.util.List;
@@ -19,7 +20,7 @@ public class LessFunction implements Function {
         Object arg2 = args.get(1).evaluate();
 
         if (!(FunctionUtils.isValidValue(arg1)) || !(FunctionUtils.isValidValue(arg2)) || !(arg1 instanceof Number) || !(arg2 instanceof Number)) {
-            return "UNKNOWN";
+            return ErrorValue.UNKNOWN;
         }
 
         return ((Number) arg1).doubleValue() <= ((Number) arg2).doubleValue();
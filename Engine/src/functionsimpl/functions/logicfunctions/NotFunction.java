@@ -2,6 +2,7 @@ package functionsimpl.functions.logicfunctions;
 
 import api.Expression;
 import api.Function;
+import enums.ErrorValue;
 import functionsimpl.FunctionUtils;
 
 import java.util.List;
@@ -18,7 +19,7 @@ public class NotFunction implements Function {
         Object exp1 = args.get(0).evaluate();
 
         if (!(FunctionUtils.isValidValue(exp1)) || !(exp1 instanceof Boolean)) {
-            return "UNKNOWN";
+            return ErrorValue.UNKNOWN;
         }
 
         return !(Boolean) exp1;
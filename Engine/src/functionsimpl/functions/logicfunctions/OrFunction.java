@@ -2,6 +2,7 @@ package functionsimpl.functions.logicfunctions;
 
 import api.Expression;
 import api.Function;
+import enums.ErrorValue;
 import functionsimpl.FunctionUtils;
 
 import java.util.List;
@@ -19,7 +20,7 @@ public class OrFunction implements Function {
         Object exp2 = args.get(1).evaluate();
 
         if (!(FunctionUtils.isValidValue(exp1)) || !(FunctionUtils.isValidValue(exp2)) || !(exp1 instanceof Boolean) || !(exp2 instanceof Boolean)) {
-            return "UNKNOWN";
+            return ErrorValue.UNKNOWN;
         }
 
         return (Boolean) exp1 || (Boolean) exp2;
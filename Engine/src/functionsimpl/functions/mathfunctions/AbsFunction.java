@@ -2,6 +2,7 @@ package functionsimpl.functions.mathfunctions;
 
 import api.Expression;
 import api.Function;
+import enums.ErrorValue;
 import expressionimpls.FunctionExpression;
 
 import java.io.Serializable;
@@ -22,7 +23,7 @@ public class AbsFunction implements Function, Serializable {
         if (arg instanceof Number) {
             return Math.abs(((Number) arg).doubleValue());
         } else {
-            return "NaN";
+            return ErrorValue.NOT_A_NUMBER;
         }
     }
 
@@ -3,6 +3,7 @@ package functionsimpl.functions.mathfunctions;
 import api.Expression;
 import api.Function;
 import api.Range;
+import enums.ErrorValue;
 import cells.Cell;
 import expressionimpls.RangeExpression;
 
@@ -19,7 +20,7 @@ public class AverageFunction implements Function {
 
         // Check if the argument is a RangeExpression
         if (!(arguments.get(0) instanceof RangeExpression)) {
-            return "NaN";
+            return ErrorValue.NOT_A_NUMBER;
         }
 
         // Get the range and spreadsheet supplier from the RangeExpression
@@ -27,27 +28,19 @@ public class AverageFunction implements Function {
 
         // Fetch the range and validate its existence
         if (rangeExpression.getRange() == null) {
-            return "NaN"; // Return "NaN" if the range does not exist
+            return ErrorValue.NOT_A_NUMBER; // Return NaN if the range does not exist
         }
 
-        double sum = 0;
-        int numericCount = 0;
-
-        // Iterate through the cells in the range and sum the numeric values
-        for (Object value : (List<Object>) rangeExpression.evaluate()) {
-            if (value instanceof Number) {
-                sum += ((Number) value).doubleValue();
-                numericCount++;
-            }
-        }
+        // Sum the numeric values of the cells in the range
+        RangeExpression.NumericTotal total = rangeExpression.sumNumericValues();
 
         // Check if there were any numeric cells
-        if (numericCount == 0) {
-            return "NaN"; // Return "NaN" if no numeric cells were found
+        if (total.getCount() == 0) {
+            return ErrorValue.NOT_A_NUMBER; // Return NaN if no numeric cells were found
         }
 
         // Return the calculated average
-        return sum / numericCount;
+        return total.getSum() / total.getCount();
     }
 
     @Override
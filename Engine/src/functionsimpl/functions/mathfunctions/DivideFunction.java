@@ -2,6 +2,7 @@ package functionsimpl.functions.mathfunctions;
 
 import api.Expression;
 import api.Function;
+import enums.ErrorValue;
 import expressionimpls.FunctionExpression;
 
 import java.io.Serializable;
@@ -24,12 +25,12 @@ public class DivideFunction implements Function, Serializable {
             double denominator = ((Number) arg2).doubleValue();
 
             if (denominator == 0) {
-                return "NaN"; // Division by zero results in NaN
+                return ErrorValue.NOT_A_NUMBER; // Division by zero results in NaN
             }
 
             return ((Number) arg1).doubleValue() / denominator;
         } else {
-            return "NaN";
+            return ErrorValue.NOT_A_NUMBER;
         }
     }
 
@@ -2,6 +2,7 @@ package functionsimpl.functions.mathfunctions;
 
 import api.Expression;
 import api.Function;
+import enums.ErrorValue;
 import expressionimpls.FunctionExpression;
 
 import java.io.Serializable;
@@ -23,7 +24,7 @@ public class MinusFunction implements Function, Serializable {
         if (arg1 instanceof Number && arg2 instanceof Number) {
             return ((Number) arg1).doubleValue() - ((Number) arg2).doubleValue();
         } else {
-            return "NaN";
+            return ErrorValue.NOT_A_NUMBER;
         }
     }
 
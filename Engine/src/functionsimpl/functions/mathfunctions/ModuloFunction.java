@@ -2,6 +2,7 @@ package functionsimpl.functions.mathfunctions;
 
 import api.Expression;
 import api.Function;
+import enums.ErrorValue;
 import expressionimpls.FunctionExpression;
 
 import java.io.Serializable;
@@ -24,12 +25,12 @@ public class ModuloFunction implements Function, Serializable {
             double denominator = ((Number) arg2).doubleValue();
 
             if (denominator == 0) {
-                return "NaN"; // Modulus by zero is undefined, return NaN
+                return ErrorValue.NOT_A_NUMBER; // Modulus by zero is undefined, return NaN
             }
 
             return ((Number) arg1).doubleValue() % denominator;
         } else {
-            return "NaN";
+            return ErrorValue.NOT_A_NUMBER;
         }
     }
 
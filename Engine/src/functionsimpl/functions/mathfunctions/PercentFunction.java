@@ -2,6 +2,7 @@ package functionsimpl.functions.mathfunctions;
 
 import api.Expression;
 import api.Function;
+import enums.ErrorValue;
 
 import java.util.List;
 
@@ -21,7 +22,7 @@ public class PercentFunction implements Function {
 
         // Check if both arguments are numbers
         if (!(partValue instanceof Number) || !(wholeValue instanceof Number)) {
-            return "NaN"; // Return "NaN" if either argument is not a number
+            return ErrorValue.NOT_A_NUMBER; // Return NaN if either argument is not a number
         }
 
         double part = ((Number) partValue).doubleValue();
@@ -2,6 +2,7 @@ package functionsimpl.functions.mathfunctions;
 
 import api.Expression;
 import api.Function;
+import enums.ErrorValue;
 import expressionimpls.FunctionExpression;
 
 import java.io.Serializable;
@@ -26,12 +27,12 @@ public class PowFunction implements Function, Serializable {
 
             // Check if both base and exponent are 0, which is undefined
             if (base == 0 && exponent == 0) {
-                return "NaN"; // Returning NaN to indicate the operation is undefined
+                return ErrorValue.NOT_A_NUMBER; // Returning NaN to indicate the operation is undefined
             }
 
             return Math.pow(base, exponent);
         } else {
-            return "NaN";
+            return ErrorValue.NOT_A_NUMBER;
         }
     }
 
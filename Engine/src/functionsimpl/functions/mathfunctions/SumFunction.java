@@ -3,6 +3,7 @@ package functionsimpl.functions.mathfunctions;
 import api.Expression;
 import api.Function;
 import api.Range;
+import enums.ErrorValue;
 import cells.Cell;
 import expressionimpls.RangeExpression;
 
@@ -19,7 +20,7 @@ public class SumFunction implements Function {
 
         // Check if the argument is a RangeExpression
         if (!(arguments.get(0) instanceof RangeExpression)) {
-            return "NaN";
+            return ErrorValue.NOT_A_NUMBER;
         }
 
         // Get the range and spreadsheet supplier from the RangeExpression
@@ -30,18 +31,10 @@ public class SumFunction implements Function {
             return 0; // Return 0 if the range does not exist
         }
 
-        double sum = 0;
-        boolean hasNumericCells = false;
+        // Sum the numeric values of the cells in the range
+        RangeExpression.NumericTotal total = rangeExpression.sumNumericValues();
 
-        // Iterate through the cells in the range and sum the numeric values
-        for (Object value : (List<Object>) rangeExpression.evaluate()) {
-            if (value instanceof Number) {
-                sum += ((Number) value).doubleValue();
-                hasNumericCells = true;
-            }
-        }
-
-        return hasNumericCells ? sum : 0;
+        return total.getCount() > 0 ? total.getSum() : 0;
     }
 
     @Override
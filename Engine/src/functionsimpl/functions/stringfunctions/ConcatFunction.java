@@ -2,6 +2,7 @@ package functionsimpl.functions.stringfunctions;
 
 import api.Expression;
 import api.Function;
+import enums.ErrorValue;
 import expressionimpls.FunctionExpression;
 
 import java.io.Serializable;
@@ -21,13 +22,13 @@ public class ConcatFunction implements Function, Serializable {
         Object arg1 = arguments.get(0).evaluate();
         Object arg2 = arguments.get(1).evaluate();
 
-        if (!(FunctionUtils.isValidValue(arg1) || !(FunctionUtils.isValidValue(arg2)))) {
-            return "!UNDEFINED!";
+        if (!FunctionUtils.isValidValue(arg1) || !FunctionUtils.isValidValue(arg2)) {
+            return ErrorValue.UNDEFINED;
         }
         if (arg1 instanceof String && arg2 instanceof String) {
             return (String) arg1 + (String) arg2;
         } else {
-            return "!UNDEFINED!";
+            return ErrorValue.UNDEFINED;
         }
     }
 
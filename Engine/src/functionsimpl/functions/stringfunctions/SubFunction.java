@@ -2,6 +2,7 @@ package functionsimpl.functions.stringfunctions;
 
 import api.Expression;
 import api.Function;
+import enums.ErrorValue;
 import expressionimpls.ReferenceExpression;
 import functionsimpl.FunctionUtils;
 
@@ -28,15 +29,15 @@ public class SubFunction implements Function, Serializable {
             int endIndex = ((Number) endIndexObj).intValue();
 
             if (!FunctionUtils.isValidValue(str)) {
-                return "!UNDEFINED!";
+                return ErrorValue.UNDEFINED;
             }
             if (startIndex < 0 || endIndex >= str.length() || startIndex > endIndex) {
-                return "!UNDEFINED!";
+                return ErrorValue.UNDEFINED;
             }
 
             return str.substring(startIndex, endIndex + 1);
         } else {
-            return "!UNDEFINED!";
+            return ErrorValue.UNDEFINED;
         }
     }
 
@@ -2,6 +2,7 @@ package functionsimpl.functions.systemfunctions;
 
 import api.Expression;
 import api.Function;
+import enums.ErrorValue;
 import expressionimpls.ReferenceExpression;
 
 import java.io.Serializable;
@@ -27,8 +28,13 @@ public class RefFunction implements Function, Serializable {
             return argValue; // already evaluated as a string reference
         }
 
+        // The error of the referenced cell is passed on as is
+        if (argValue instanceof ErrorValue) {
+            return argValue;
+        }
+
         // If the argument is not a valid cell reference, return undefined
-        return "!UNDEFINED!";
+        return ErrorValue.UNDEFINED;
     }
 
     @Override
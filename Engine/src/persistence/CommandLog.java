@@ -0,0 +1,223 @@
+package persistence;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+
+// Append-only log of the engine mutations, replayed on startup to rebuild the engine
+// Every record is written as [payload length][CRC32 of the payload][payload], so a torn write at the end of the log
+// is detected on replay and cut off
+// Appends go to an in-memory buffer that a background thread writes and forces to disk together (group commit),
+// so a crash loses at most the records of the last flush interval
+public class CommandLog implements Closeable {
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final long FLUSH_INTERVAL_MILLIS = 10;
+    private static final int RECORD_HEADER_SIZE = 2 * Integer.BYTES;
+
+    private final FileChannel channel;
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+    private final Thread flusher;
+    private boolean dirty; // Records were written to the channel but not forced to disk yet
+    private boolean closed;
+
+    public CommandLog(Path file) throws IOException {
+        Path parent = file.toAbsolutePath().getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+
+        channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        channel.position(channel.size());
+
+        flusher = new Thread(this::flushPeriodically, "shticell-command-log-flusher");
+        flusher.setDaemon(true);
+        flusher.start();
+    }
+
+    // Append a record to the log, it reaches the disk on the next group flush
+    public synchronized void append(LogRecord record) throws IOException {
+        if (closed) {
+            throw new IOException("The command log is closed");
+        }
+
+        byte[] payload = encode(record);
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+
+        if (buffer.remaining() < RECORD_HEADER_SIZE + payload.length) {
+            writeBuffer();
+        }
+
+        if (buffer.remaining() < RECORD_HEADER_SIZE + payload.length) {
+            // Larger than the buffer, like the XML of a big spreadsheet, so it is written directly
+            ByteBuffer large = ByteBuffer.allocate(RECORD_HEADER_SIZE + payload.length);
+            large.putInt(payload.length).putInt((int) crc.getValue()).put(payload).flip();
+            while (large.hasRemaining()) {
+                channel.write(large);
+            }
+            dirty = true;
+        } else {
+            buffer.putInt(payload.length).putInt((int) crc.getValue()).put(payload);
+        }
+    }
+
+    // Write the buffered records and force them to disk
+    public synchronized void sync() throws IOException {
+        if (closed) {
+            return;
+        }
+
+        writeBuffer();
+        if (dirty) {
+            channel.force(false);
+            dirty = false;
+        }
+    }
+
+    // Replay all the records in the log, in the order they were appended
+    // Replay stops at the first torn or corrupted record, which is cut off so new records follow the last valid one
+    public synchronized void replay(Consumer<LogRecord> consumer) throws IOException {
+        writeBuffer();
+
+        long size = channel.size();
+        long validSize = 0;
+
+        if (size > 0) {
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+
+            while (mapped.remaining() >= RECORD_HEADER_SIZE) {
+                int length = mapped.getInt();
+                int checksum = mapped.getInt();
+                if (length < 0 || length > mapped.remaining()) {
+                    break;
+                }
+
+                byte[] payload = new byte[length];
+                mapped.get(payload);
+                CRC32 crc = new CRC32();
+                crc.update(payload);
+                if ((int) crc.getValue() != checksum) {
+                    break;
+                }
+
+                LogRecord record = decode(payload);
+                if (record == null) {
+                    break;
+                }
+
+                consumer.accept(record);
+                validSize = mapped.position();
+            }
+        }
+
+        if (validSize < size) {
+            channel.truncate(validSize);
+        }
+        channel.position(validSize);
+    }
+
+    // Get the size of the log in bytes, including the records that weren't written yet
+    public synchronized long size() throws IOException {
+        return channel.position() + buffer.position();
+    }
+
+    // Drop all the records in the log
+    public synchronized void reset() throws IOException {
+        buffer.clear();
+        channel.truncate(0);
+        channel.position(0);
+        channel.force(false);
+        dirty = false;
+    }
+
+    @Override
+    public void close() throws IOException {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            sync();
+            closed = true;
+            channel.close();
+        }
+
+        flusher.interrupt();
+    }
+
+    private void flushPeriodically() {
+        while (!Thread.currentThread().isInterrupted()) {
+            try {
+                Thread.sleep(FLUSH_INTERVAL_MILLIS);
+                sync();
+            } catch (InterruptedException e) {
+                return;
+            } catch (IOException e) {
+                // Keep the records buffered and try again on the next flush
+            }
+        }
+    }
+
+    private void writeBuffer() throws IOException {
+        if (buffer.position() == 0) {
+            return;
+        }
+
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+        dirty = true;
+    }
+
+    // Payload: [type][argument count]{[argument length][UTF-8 argument]}[data length][data]
+    private static byte[] encode(LogRecord record) {
+        String[] arguments = record.getArguments();
+        byte[][] encodedArguments = new byte[arguments.length][];
+        int size = 1 + Integer.BYTES + Integer.BYTES + record.getData().length;
+
+        for (int i = 0; i < arguments.length; i++) {
+            encodedArguments[i] = arguments[i].getBytes(StandardCharsets.UTF_8);
+            size += Integer.BYTES + encodedArguments[i].length;
+        }
+
+        ByteBuffer payload = ByteBuffer.allocate(size);
+        payload.put(record.getType().getCode());
+        payload.putInt(arguments.length);
+        for (byte[] argument : encodedArguments) {
+            payload.putInt(argument.length).put(argument);
+        }
+        payload.putInt(record.getData().length).put(record.getData());
+
+        return payload.array();
+    }
+
+    // Null if the payload doesn't hold a known record
+    private static LogRecord decode(byte[] bytes) {
+        ByteBuffer payload = ByteBuffer.wrap(bytes);
+        LogRecordType type = LogRecordType.fromCode(payload.get());
+        if (type == null) {
+            return null;
+        }
+
+        String[] arguments = new String[payload.getInt()];
+        for (int i = 0; i < arguments.length; i++) {
+            byte[] argument = new byte[payload.getInt()];
+            payload.get(argument);
+            arguments[i] = new String(argument, StandardCharsets.UTF_8);
+        }
+
+        byte[] data = new byte[payload.getInt()];
+        payload.get(data);
+
+        return new LogRecord(type, data, arguments);
+    }
+}
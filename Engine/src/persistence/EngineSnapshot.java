@@ -0,0 +1,116 @@
+package persistence;
+
+import versions.VersionsManager;
+import versions.VersionsManagerSnapshot;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+// Snapshot file of all the spreadsheets in the engine
+// The file holds [magic][format version][checkpoint ID][spreadsheet count] and then every spreadsheet as
+// [length][versions manager snapshot], the checkpoint ID ties the snapshot to the command log that continues it
+public class EngineSnapshot {
+    private static final int MAGIC = 0x53484e50; // "SHNP"
+    private static final int FORMAT_VERSION = VersionsManagerSnapshot.DEPENDENCY_GRAPH_FORMAT;
+    private static final int OLDEST_FORMAT_VERSION = 1; // Older formats that can still be read
+    private static final int HEADER_SIZE = 2 * Integer.BYTES + Long.BYTES + Integer.BYTES;
+    private static final long MAPPED_READ_THRESHOLD = 1024 * 1024; // Smaller files are read into the heap
+
+    private final long checkpointId;
+    private final List<VersionsManager> spreadsheets;
+
+    public EngineSnapshot(long checkpointId, List<VersionsManager> spreadsheets) {
+        this.checkpointId = checkpointId;
+        this.spreadsheets = spreadsheets;
+    }
+
+    public long getCheckpointId() {
+        return checkpointId;
+    }
+
+    public List<VersionsManager> getSpreadsheets() {
+        return spreadsheets;
+    }
+
+    // Write the spreadsheets to the snapshot file, the file is replaced at once so a crash keeps the previous snapshot
+    public static void write(Path file, long checkpointId, Collection<VersionsManager> spreadsheets) throws IOException {
+        Path temporaryFile = file.resolveSibling(file.getFileName() + ".tmp");
+
+        try (FileChannel channel = FileChannel.open(temporaryFile, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            header.putInt(MAGIC).putInt(FORMAT_VERSION).putLong(checkpointId).putInt(spreadsheets.size()).flip();
+            writeFully(channel, header);
+
+            for (VersionsManager versionsManager : spreadsheets) {
+                ByteBuffer content = VersionsManagerSnapshot.write(versionsManager);
+                ByteBuffer length = ByteBuffer.allocate(Integer.BYTES);
+                length.putInt(content.remaining()).flip();
+
+                writeFully(channel, length);
+                writeFully(channel, content);
+            }
+
+            channel.force(true);
+        }
+
+        Files.move(temporaryFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    // Read the snapshot file, large files are memory-mapped instead of read into the heap
+    public static EngineSnapshot read(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            ByteBuffer in;
+
+            if (size >= MAPPED_READ_THRESHOLD) {
+                in = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            } else {
+                in = ByteBuffer.allocate((int) size);
+                while (in.hasRemaining() && channel.read(in) >= 0) {
+                    // Keep reading until the whole file is in the buffer
+                }
+                in.flip();
+            }
+
+            if (in.remaining() < HEADER_SIZE || in.getInt() != MAGIC) {
+                throw new IOException("Not a spreadsheet snapshot: " + file);
+            }
+
+            int formatVersion = in.getInt();
+            if (formatVersion < OLDEST_FORMAT_VERSION || formatVersion > FORMAT_VERSION) {
+                throw new IOException("Unsupported spreadsheet snapshot format " + formatVersion + ": " + file);
+            }
+
+            long checkpointId = in.getLong();
+            int count = in.getInt();
+            List<VersionsManager> spreadsheets = new ArrayList<>();
+
+            for (int i = 0; i < count; i++) {
+                int length = in.remaining() >= Integer.BYTES ? in.getInt() : -1;
+                if (length < 0 || length > in.remaining()) {
+                    throw new IOException("The spreadsheet snapshot is truncated: " + file);
+                }
+
+                spreadsheets.add(VersionsManagerSnapshot.read(in.slice(in.position(), length), formatVersion));
+                in.position(in.position() + length);
+            }
+
+            return new EngineSnapshot(checkpointId, spreadsheets);
+        }
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+}
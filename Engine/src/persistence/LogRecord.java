@@ -0,0 +1,36 @@
+package persistence;
+
+// A single engine mutation in the command log
+public class LogRecord {
+    private static final byte[] NO_DATA = new byte[0];
+
+    private final LogRecordType type;
+    private final String[] arguments;
+    private final byte[] data; // Binary payload, like the XML file of a loaded spreadsheet
+
+    public LogRecord(LogRecordType type, String... arguments) {
+        this(type, NO_DATA, arguments);
+    }
+
+    public LogRecord(LogRecordType type, byte[] data, String... arguments) {
+        this.type = type;
+        this.arguments = arguments;
+        this.data = data;
+    }
+
+    public LogRecordType getType() {
+        return type;
+    }
+
+    public String getArgument(int index) {
+        return arguments[index];
+    }
+
+    public String[] getArguments() {
+        return arguments;
+    }
+
+    public byte[] getData() {
+        return data;
+    }
+}
@@ -0,0 +1,34 @@
+package persistence;
+
+// The engine mutations that are written to the command log, the codes are stored in the log and must not change
+public enum LogRecordType {
+    LOAD_SPREADSHEET((byte) 1),   // Arguments: username, data: the XML file
+    UPDATE_CELL_VALUE((byte) 2),  // Arguments: username, spreadsheet name, cell ID, new value, is dynamic analysis
+    ADD_RANGE((byte) 3),          // Arguments: username, spreadsheet name, range name, first cell, last cell
+    REMOVE_RANGE((byte) 4),       // Arguments: username, spreadsheet name, range name
+    ASK_FOR_PERMISSION((byte) 5), // Arguments: username, spreadsheet name, permission type
+    HANDLE_PERMISSION((byte) 6),  // Arguments: applicant, handler, spreadsheet name, request number, status, permission type
+    REMOVE_USER((byte) 7),        // Arguments: username, the spreadsheets the user owns are removed with the user
+    CHECKPOINT((byte) 8);         // Arguments: ID of the snapshot the log continues, always the first record
+
+    private final byte code;
+
+    LogRecordType(byte code) {
+        this.code = code;
+    }
+
+    public byte getCode() {
+        return code;
+    }
+
+    // Get the record type of a code read from the log, null if the code is unknown
+    public static LogRecordType fromCode(byte code) {
+        for (LogRecordType type : values()) {
+            if (type.code == code) {
+                return type;
+            }
+        }
+
+        return null;
+    }
+}
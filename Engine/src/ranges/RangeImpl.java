@@ -1,22 +1,39 @@
 package ranges;
 
 import api.Range;
+import spreadsheet.CellCoordinate;
 
-import java.util.ArrayList;
+import java.util.AbstractList;
 import java.util.List;
 import java.util.Objects;
+import java.util.RandomAccess;
 
+// A range is kept as the rectangle between its corners, the IDs of its cells are never stored
+// The cells are ordered by column and then by row, a range whose start cell is past its end cell has no cells
 public class RangeImpl implements Range {
     private final String name;
     private final String startCell;
     private final String endCell;
-    private final List<String> cells;
+    private final int top;    // First row, from 1
+    private final int left;   // First column, from 0
+    private final int bottom; // Last row
+    private final int right;  // Last column
 
     public RangeImpl(String name, String startCell, String endCell) {
         this.name = name;
         this.startCell = startCell;
         this.endCell = endCell;
-        this.cells = calculateCells(startCell, endCell);
+
+        CellCoordinate start = CellCoordinate.parse(startCell);
+        CellCoordinate end = CellCoordinate.parse(endCell);
+        if (start == null || end == null) {
+            throw new IllegalArgumentException("Invalid range cells: " + startCell + ".." + endCell);
+        }
+
+        this.top = start.getRow();
+        this.left = start.getColumn();
+        this.bottom = end.getRow();
+        this.right = end.getColumn();
     }
 
     @Override
@@ -24,14 +41,26 @@ public class RangeImpl implements Range {
         return name;
     }
 
+    // Read-only view of the cell IDs, every ID is built when it is read
     @Override
     public List<String> getCells() {
-        return cells;
+        return new CellIdList();
     }
 
     @Override
     public boolean containsCell(String cellId) {
-        return cells.contains(cellId);
+        long key = CellCoordinate.parseKey(cellId);
+
+        return key != CellCoordinate.INVALID_KEY && contains(CellCoordinate.row(key), CellCoordinate.column(key));
+    }
+
+    public boolean contains(int row, int column) {
+        return row >= top && row <= bottom && column >= left && column <= right;
+    }
+
+    @Override
+    public Cursor cursor() {
+        return new RectangleCursor();
     }
 
     @Override
@@ -44,26 +73,87 @@ public class RangeImpl implements Range {
         return endCell;
     }
 
-    // Helper method to calculate all cell IDs between the start and end cells
-    private List<String> calculateCells(String startCell, String endCell) {
-        List<String> cellList = new ArrayList<>();
-        // Logic to compute all cells within the range goes here
-        // Assuming cell IDs are like "A1", "A2", ..., "B1", "B2", ...
-        // Example: "A1..A4", "A3..D3", "A3..D4"
+    public int getTop() {
+        return top;
+    }
+
+    public int getLeft() {
+        return left;
+    }
+
+    public int getBottom() {
+        return bottom;
+    }
+
+    public int getRight() {
+        return right;
+    }
+
+    public boolean isEmpty() {
+        return top > bottom || left > right;
+    }
+
+    // Number of cells in the range, capped at Integer.MAX_VALUE
+    public int size() {
+        return isEmpty() ? 0 : (int) Math.min(Integer.MAX_VALUE, (long) (bottom - top + 1) * (right - left + 1));
+    }
+
+    // Walks the rectangle by column and then by row, like the order of getCells
+    private class RectangleCursor implements Cursor {
+        private int row = bottom;
+        private int column = left - 1;
+
+        @Override
+        public boolean next() {
+            if (isEmpty()) {
+                return false;
+            }
+
+            if (row < bottom) {
+                row++;
+                return true;
+            }
+            if (column < right) {
+                column++;
+                row = top;
+                return true;
+            }
+
+            return false;
+        }
+
+        @Override
+        public int getRow() {
+            return row;
+        }
 
-        // Compute row and column ranges
-        char startColumn = startCell.charAt(0);
-        int startRow = Integer.parseInt(startCell.substring(1));
-        char endColumn = endCell.charAt(0);
-        int endRow = Integer.parseInt(endCell.substring(1));
+        @Override
+        public int getColumn() {
+            return column;
+        }
+    }
 
-        for (char col = startColumn; col <= endColumn; col++) {
-            for (int row = startRow; row <= endRow; row++) {
-                cellList.add(col + String.valueOf(row));
+    // The cell at an index is found by arithmetic on the corners
+    private class CellIdList extends AbstractList<String> implements RandomAccess {
+        @Override
+        public String get(int index) {
+            if (index < 0 || index >= size()) {
+                throw new IndexOutOfBoundsException("Index " + index + " is out of the range " + name);
             }
+
+            int height = bottom - top + 1;
+            return CellCoordinate.toCellId(top + index % height, left + index / height);
+        }
+
+        @Override
+        public int size() {
+            return RangeImpl.this.size();
         }
 
-        return cellList;
+        @Override
+        public boolean contains(Object o) {
+            return o instanceof String && containsCell((String) o);
+        }
     }
 
     @Override
@@ -71,11 +161,11 @@ public class RangeImpl implements Range {
         if (this == o) return true;
         if (o == null || getClass() != o.getClass()) return false;
         RangeImpl range = (RangeImpl) o;
-        return Objects.equals(name, range.name) && Objects.equals(startCell, range.startCell) && Objects.equals(endCell, range.endCell) && Objects.equals(cells, range.cells);
+        return Objects.equals(name, range.name) && Objects.equals(startCell, range.startCell) && Objects.equals(endCell, range.endCell);
     }
 
     @Override
     public int hashCode() {
-        return Objects.hash(name, startCell, endCell, cells);
+        return Objects.hash(name, startCell, endCell);
     }
 }
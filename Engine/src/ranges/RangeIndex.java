@@ -0,0 +1,191 @@
+package ranges;
+
+import api.Range;
+import spreadsheet.CellCoordinate;
+
+import java.util.*;
+import java.util.function.Consumer;
+
+// Immutable interval index over the areas of the ranges, answers which ranges contain a given cell
+// The areas are kept in a centered interval tree over their rows: every node holds the areas that cross its center
+// row, sorted by their first row and by their last row, so a lookup visits one path of the tree and only the areas
+// whose rows contain the cell, which are then checked by their columns
+public final class RangeIndex {
+    private static final RangeIndex EMPTY = new RangeIndex(Collections.emptyMap(), null);
+
+    private final Map<String, Area> areas; // Area of every range by its key
+    private final Node root;
+
+    private RangeIndex(Map<String, Area> areas, Node root) {
+        this.areas = areas;
+        this.root = root;
+    }
+
+    public static RangeIndex empty() {
+        return EMPTY;
+    }
+
+    // Build the index of the given ranges by their keys, ranges without cells are left out
+    public static RangeIndex of(Map<String, Range> ranges) {
+        Map<String, Area> areas = new HashMap<>();
+
+        for (Map.Entry<String, Range> entry : ranges.entrySet()) {
+            Area area = toArea(entry.getKey(), entry.getValue());
+
+            if (area != null && area.top <= area.bottom && area.left <= area.right) {
+                areas.put(entry.getKey(), area);
+            }
+        }
+
+        return areas.isEmpty() ? EMPTY : new RangeIndex(areas, build(new ArrayList<>(areas.values())));
+    }
+
+    // The corners of a RangeImpl are read as they are, other ranges are parsed from their cells
+    private static Area toArea(String key, Range range) {
+        if (range instanceof RangeImpl) {
+            RangeImpl rectangle = (RangeImpl) range;
+            return new Area(key, rectangle.getTop(), rectangle.getLeft(), rectangle.getBottom(), rectangle.getRight());
+        }
+
+        CellCoordinate start = CellCoordinate.parse(range.getStartCell());
+        CellCoordinate end = CellCoordinate.parse(range.getEndCell());
+
+        return start != null && end != null ? new Area(key, start.getRow(), start.getColumn(), end.getRow(), end.getColumn()) : null;
+    }
+
+    // Build the subtree of the given areas, the center is the middle row of the middle area
+    private static Node build(List<Area> areas) {
+        if (areas.isEmpty()) {
+            return null;
+        }
+
+        areas.sort(Comparator.comparingInt(Area::getTop));
+        Area middle = areas.get(areas.size() / 2);
+        int center = middle.top + (middle.bottom - middle.top) / 2;
+
+        List<Area> above = new ArrayList<>();
+        List<Area> below = new ArrayList<>();
+        List<Area> crossing = new ArrayList<>();
+
+        for (Area area : areas) {
+            if (area.bottom < center) {
+                above.add(area);
+            } else if (area.top > center) {
+                below.add(area);
+            } else {
+                crossing.add(area);
+            }
+        }
+
+        Area[] byTop = crossing.toArray(new Area[0]); // Already sorted by the first row
+        Area[] byBottom = crossing.toArray(new Area[0]);
+        Arrays.sort(byBottom, Comparator.comparingInt(Area::getBottom).reversed());
+
+        return new Node(center, byTop, byBottom, build(above), build(below));
+    }
+
+    // Visit the keys of the ranges that contain the cell at the given row and column
+    public void forEachRangeContaining(int row, int column, Consumer<String> action) {
+        Node node = root;
+
+        while (node != null) {
+            if (row < node.center) {
+                // Every area of the node ends at the center or below it, so only its first row matters
+                for (Area area : node.byTop) {
+                    if (area.top > row) {
+                        break;
+                    }
+                    acceptIfInColumns(area, column, action);
+                }
+                node = node.above;
+            } else if (row > node.center) {
+                // Every area of the node starts at the center or above it, so only its last row matters
+                for (Area area : node.byBottom) {
+                    if (area.bottom < row) {
+                        break;
+                    }
+                    acceptIfInColumns(area, column, action);
+                }
+                node = node.below;
+            } else {
+                for (Area area : node.byTop) {
+                    acceptIfInColumns(area, column, action);
+                }
+                node = null;
+            }
+        }
+    }
+
+    private static void acceptIfInColumns(Area area, int column, Consumer<String> action) {
+        if (column >= area.left && column <= area.right) {
+            action.accept(area.key);
+        }
+    }
+
+    // Get the area of a range by its key, null if the range isn't in the index
+    public Area getArea(String rangeKey) {
+        return areas.get(rangeKey);
+    }
+
+    public boolean isEmpty() {
+        return areas.isEmpty();
+    }
+
+    // Rectangle of cells covered by a range, rows are numbered from 1 and columns are indexed from 0
+    public static final class Area {
+        private final String key;
+        private final int top;
+        private final int left;
+        private final int bottom;
+        private final int right;
+
+        private Area(String key, int top, int left, int bottom, int right) {
+            this.key = key;
+            this.top = top;
+            this.left = left;
+            this.bottom = bottom;
+            this.right = right;
+        }
+
+        public String getKey() {
+            return key;
+        }
+
+        public int getTop() {
+            return top;
+        }
+
+        public int getLeft() {
+            return left;
+        }
+
+        public int getBottom() {
+            return bottom;
+        }
+
+        public int getRight() {
+            return right;
+        }
+
+        public boolean contains(int row, int column) {
+            return row >= top && row <= bottom && column >= left && column <= right;
+        }
+    }
+
+    // Node of the interval tree
+    private static final class Node {
+        private final int center;
+        private final Area[] byTop;    // Areas crossing the center row, by their first row
+        private final Area[] byBottom; // The same areas, by their last row from the bottom up
+        private final Node above;      // Areas that end before the center row
+        private final Node below;      // Areas that start after the center row
+
+        private Node(int center, Area[] byTop, Area[] byBottom, Node above, Node below) {
+            this.center = center;
+            this.byTop = byTop;
+            this.byBottom = byBottom;
+            this.above = above;
+            this.below = below;
+        }
+    }
+}
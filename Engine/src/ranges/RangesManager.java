@@ -4,12 +4,15 @@ import api.Range;
 import exceptions.RangeAlreadyExistsException;
 import exceptions.RangeNotFoundException;
 
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Objects;
 
 public class RangesManager {
     private final Map<String, Range> ranges; // Map to store ranges by their names
+    private RangeIndex index;                // Index of the range areas, built again on first use after a change
+    private int generation;                  // Changes whenever a range is added or removed
 
     public RangesManager() {
         this.ranges = new HashMap<>();
@@ -22,11 +25,20 @@ public class RangesManager {
         }
 
         Range range = new RangeImpl(rangeName, firstCell, lastCell);
-        ranges.put(rangeName.toUpperCase(), range);
+        putRange(rangeName.toUpperCase(), range);
+    }
+
+    // Add or replace a range by its key, for ranges that are restored as they were
+    public void putRange(String rangeKey, Range range) {
+        ranges.put(rangeKey, range);
+        index = null;
+        generation++;
     }
 
     public void clearRanges() {
         ranges.clear();
+        index = null;
+        generation++;
     }
 
     // Delete a range
@@ -36,11 +48,27 @@ public class RangesManager {
         }
 
         ranges.remove(rangeName);
+        index = null;
+        generation++;
+    }
+
+    // Get the generation of the ranges, a formula parsed in an older generation may read a name differently
+    public int getGeneration() {
+        return generation;
     }
 
-    // Get all ranges
+    // Get all ranges, the map can't be changed
     public Map<String, Range> getAllRanges() {
-        return ranges;
+        return Collections.unmodifiableMap(ranges);
+    }
+
+    // Get the index of the range areas, to find the ranges that contain a cell
+    public RangeIndex getIndex() {
+        if (index == null) {
+            index = RangeIndex.of(ranges);
+        }
+
+        return index;
     }
 
     // Get a certain range
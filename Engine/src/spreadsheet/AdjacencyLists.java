@@ -0,0 +1,122 @@
+package spreadsheet;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
+
+// One side of the dependency graph: a list of cell indexes (see CellIndex) for every cell index
+// A list is a plain int array that starts with the number of indexes in it and may have room to grow after them,
+// the lists are grouped in pages of 64 cells, so a cell's list is found with two array reads
+// A copy shares the pages and the lists with the original until either of them changes them (copy-on-write): the
+// lists and pages created or copied by this object are tracked by identity and changed in place, the others are
+// copied first
+final class AdjacencyLists implements Serializable {
+    private static final int PAGE_SHIFT = 6;
+    private static final int PAGE_SIZE = 1 << PAGE_SHIFT;
+    private static final int PAGE_MASK = PAGE_SIZE - 1;
+    private static final int MIN_CAPACITY = 4;
+    private static final int[] NO_TARGETS = {0};
+
+    private int[][][] pages;
+    private transient Set<Object> owned; // Arrays that belong only to this object, by identity
+
+    AdjacencyLists() {
+        this.pages = new int[0][][];
+        this.owned = newOwned();
+    }
+
+    // Copy constructor, the copy shares the pages and lists with the original
+    AdjacencyLists(AdjacencyLists original) {
+        this.pages = original.pages;
+        this.owned = newOwned();
+    }
+
+    private static Set<Object> newOwned() {
+        return Collections.newSetFromMap(new IdentityHashMap<>());
+    }
+
+    // Get the list of a cell index, the first element is the number of indexes that follow it
+    // The array must not be changed, it may be shared
+    int[] get(int vertex) {
+        int pageIndex = vertex >>> PAGE_SHIFT;
+        int[][] page = pageIndex < pages.length ? pages[pageIndex] : null;
+        int[] list = page != null ? page[vertex & PAGE_MASK] : null;
+
+        return list != null ? list : NO_TARGETS;
+    }
+
+    // Insert an index at the given position of a list
+    void insert(int vertex, int position, int target) {
+        int[] list = get(vertex);
+        int size = list[0];
+        int[] updated = list;
+
+        // Grow the array or take a private copy of a shared array
+        if (!owned.contains(list) || size + 1 == list.length) {
+            updated = new int[owned.contains(list) ? Math.max(MIN_CAPACITY, list.length * 2) : size + 2];
+            System.arraycopy(list, 0, updated, 0, position + 1);
+            setList(vertex, updated);
+        }
+
+        System.arraycopy(list, position + 1, updated, position + 2, size - position);
+        updated[position + 1] = target;
+        updated[0] = size + 1;
+    }
+
+    // Remove the index at the given position of a list
+    void remove(int vertex, int position) {
+        int[] list = get(vertex);
+
+        if (!owned.contains(list)) {
+            list = Arrays.copyOf(list, list[0] + 1);
+            setList(vertex, list);
+        }
+
+        System.arraycopy(list, position + 2, list, position + 1, list[0] - position - 1);
+        list[0]--;
+    }
+
+    // Empty the list of a cell index
+    void clear(int vertex) {
+        if (get(vertex)[0] > 0) {
+            setList(vertex, null);
+        }
+    }
+
+    // Place a list in its page, the pages on the way are copied first if they are shared
+    private void setList(int vertex, int[] list) {
+        int pageIndex = vertex >>> PAGE_SHIFT;
+
+        if (!owned.contains(pages) || pageIndex >= pages.length) {
+            owned.remove(pages);
+            pages = Arrays.copyOf(pages, pageIndex < pages.length ? pages.length : Math.max(pageIndex + 1, pages.length * 2));
+            owned.add(pages);
+        }
+
+        int[][] page = pages[pageIndex];
+        if (page == null) {
+            page = new int[PAGE_SIZE][];
+            owned.add(page);
+        } else if (!owned.contains(page)) {
+            page = page.clone();
+            owned.add(page);
+        }
+
+        owned.remove(page[vertex & PAGE_MASK]); // A replaced list isn't kept alive by the set
+        page[vertex & PAGE_MASK] = list;
+        pages[pageIndex] = page;
+        if (list != null) {
+            owned.add(list);
+        }
+    }
+
+    // Nothing is owned after reading, so the arrays are copied before their first change
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        owned = newOwned();
+    }
+}
@@ -0,0 +1,208 @@
+package spreadsheet;
+
+import java.io.Serializable;
+
+// Immutable position of a cell, rows are numbered from 1 and columns are indexed from 0
+// A coordinate is packed into a single long key (row in the high half, column in the low half) so it can be kept
+// and compared without allocating, cell IDs like "C12" are only parsed and built at the boundary of the engine
+// The cell IDs of the top-left part of the sheet are cached, so building them again doesn't allocate
+public final class CellCoordinate implements Serializable, Comparable<CellCoordinate> {
+    public static final long INVALID_KEY = -1;
+    private static final int CACHED_ROWS = 1024;
+    private static final int CACHED_COLUMNS = 64;
+    private static final String[] CELL_ID_CACHE = new String[CACHED_ROWS * CACHED_COLUMNS];
+
+    private final int row;
+    private final int column;
+
+    private CellCoordinate(int row, int column) {
+        this.row = row;
+        this.column = column;
+    }
+
+    public static CellCoordinate of(int row, int column) {
+        return new CellCoordinate(row, column);
+    }
+
+    public static CellCoordinate of(long key) {
+        return new CellCoordinate(row(key), column(key));
+    }
+
+    // Parse a cell ID like "C12", returns null if the cell ID isn't made of upper case letters and then digits
+    public static CellCoordinate parse(String cellId) {
+        long key = parseKey(cellId);
+
+        return key == INVALID_KEY ? null : of(key);
+    }
+
+    // Pack a row and a column into a single key
+    public static long key(int row, int column) {
+        return ((long) row << 32) | (column & 0xFFFFFFFFL);
+    }
+
+    public static int row(long key) {
+        return (int) (key >>> 32);
+    }
+
+    public static int column(long key) {
+        return (int) key;
+    }
+
+    // Parse a cell ID made of upper case column letters and a row number, like "C12", into its key without allocating
+    // Returns INVALID_KEY if the cell ID isn't in that form, the row isn't checked so "A0" gives row 0
+    public static long parseKey(String cellId) {
+        if (cellId == null) {
+            return INVALID_KEY;
+        }
+
+        int length = cellId.length();
+        int index = 0;
+        int column = 0;
+
+        while (index < length && isColumnLetter(cellId.charAt(index))) {
+            column = column * 26 + (cellId.charAt(index) - 'A' + 1);
+            index++;
+
+            if (column > Integer.MAX_VALUE / 26) {
+                return INVALID_KEY;
+            }
+        }
+
+        if (index == 0 || index == length) {
+            return INVALID_KEY;
+        }
+
+        long row = 0;
+        while (index < length) {
+            char c = cellId.charAt(index++);
+
+            if (c < '0' || c > '9') {
+                return INVALID_KEY;
+            }
+            row = row * 10 + (c - '0');
+
+            if (row > Integer.MAX_VALUE) {
+                return INVALID_KEY;
+            }
+        }
+
+        return key((int) row, column - 1);
+    }
+
+    // Parse column letters like "C" or "AB" into a column index (from 0), returns -1 if they aren't upper case letters
+    public static int parseColumn(String columnName) {
+        if (columnName == null || columnName.isEmpty()) {
+            return -1;
+        }
+
+        int column = 0;
+        for (int index = 0; index < columnName.length(); index++) {
+            if (!isColumnLetter(columnName.charAt(index)) || column > Integer.MAX_VALUE / 26) {
+                return -1;
+            }
+            column = column * 26 + (columnName.charAt(index) - 'A' + 1);
+        }
+
+        return column - 1;
+    }
+
+    // Parse an area like "A3..D9" into its top-left and bottom-right coordinates, spaces around the cells are ignored
+    // Returns null if the area isn't in that form
+    public static CellCoordinate[] parseArea(String area) {
+        int separator = area == null ? -1 : area.indexOf("..");
+        if (separator < 0) {
+            return null;
+        }
+
+        CellCoordinate first = parse(area.substring(0, separator).trim().toUpperCase());
+        CellCoordinate last = parse(area.substring(separator + 2).trim().toUpperCase());
+
+        return first == null || last == null ? null : new CellCoordinate[]{first, last};
+    }
+
+    // Build the column letters of a column index (from 0), like "C" or "AB"
+    public static String columnName(int column) {
+        StringBuilder columnName = new StringBuilder();
+
+        for (int index = column; index >= 0; index = index / 26 - 1) {
+            columnName.insert(0, (char) ('A' + index % 26));
+        }
+
+        return columnName.toString();
+    }
+
+    // Build the cell ID of a key
+    public static String toCellId(long key) {
+        return toCellId(row(key), column(key));
+    }
+
+    // Build the cell ID of a row and a column, like "C12"
+    public static String toCellId(int row, int column) {
+        boolean cached = row >= 1 && row <= CACHED_ROWS && column >= 0 && column < CACHED_COLUMNS;
+        int index = cached ? (row - 1) * CACHED_COLUMNS + column : -1;
+
+        // Strings are immutable, so a cell ID shared through the cache is safe without synchronization
+        if (cached && CELL_ID_CACHE[index] != null) {
+            return CELL_ID_CACHE[index];
+        }
+
+        String cellId = columnName(column) + row;
+        if (cached) {
+            CELL_ID_CACHE[index] = cellId;
+        }
+
+        return cellId;
+    }
+
+    private static boolean isColumnLetter(char c) {
+        return c >= 'A' && c <= 'Z';
+    }
+
+    public int getRow() {
+        return row;
+    }
+
+    public int getColumn() {
+        return column;
+    }
+
+    public long getKey() {
+        return key(row, column);
+    }
+
+    public String getColumnName() {
+        return columnName(column);
+    }
+
+    public String getCellId() {
+        return toCellId(row, column);
+    }
+
+    // Coordinates are ordered by column and then by row, the order of the cells in a range
+    @Override
+    public int compareTo(CellCoordinate other) {
+        if (column != other.column) {
+            return Integer.compare(column, other.column);
+        }
+
+        return Integer.compare(row, other.row);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        CellCoordinate that = (CellCoordinate) o;
+        return row == that.row && column == that.column;
+    }
+
+    @Override
+    public int hashCode() {
+        return Long.hashCode(getKey());
+    }
+
+    @Override
+    public String toString() {
+        return getCellId();
+    }
+}
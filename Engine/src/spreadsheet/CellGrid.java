@@ -0,0 +1,337 @@
+package spreadsheet;
+
+import cells.Cell;
+
+import java.io.Serializable;
+import java.util.*;
+
+// Immutable sparse grid of cells addressed by (row, column), rows are numbered from 1 and columns are indexed from 0
+// The sheet is split into tiles of 64 rows by 64 columns that are created on the first write to them, so the memory
+// depends on the populated cells and not on the size of the sheet
+// Tiles are reached through a small tree: directory (by groups of 64 tile rows) -> group (by tile row) ->
+// band (by tile column) -> tile (by row in the tile) -> tile row (by column in the tile), any level may be missing
+// Every change returns a new grid that copies only the arrays on the path to the changed cell (path copying),
+// so copies of a spreadsheet share all the untouched tiles and tile rows
+// Cell IDs like "C12" are translated to coordinates only at the boundary of the grid
+public final class CellGrid implements Serializable {
+    private static final int TILE_SHIFT = 6;
+    private static final int TILE_SIZE = 1 << TILE_SHIFT; // Rows and columns in a tile, also tile rows in a group
+    private static final int TILE_MASK = TILE_SIZE - 1;
+    private static final CellGrid EMPTY = new CellGrid(new Cell[0][][][][], 0);
+
+    private final Cell[][][][][] directory;
+    private final int size;
+
+    private CellGrid(Cell[][][][][] directory, int size) {
+        this.directory = directory;
+        this.size = size;
+    }
+
+    public static CellGrid empty() {
+        return EMPTY;
+    }
+
+    public Cell get(int row, int column) {
+        if (row < 1 || column < 0) {
+            return null;
+        }
+
+        int rowIndex = row - 1;
+        int tileRow = rowIndex >>> TILE_SHIFT;
+        Cell[][][][] group = at(directory, tileRow >>> TILE_SHIFT);
+        Cell[][][] band = group != null ? group[tileRow & TILE_MASK] : null;
+        Cell[][] tile = at(band, column >>> TILE_SHIFT);
+        Cell[] cells = tile != null ? tile[rowIndex & TILE_MASK] : null;
+
+        return cells != null ? cells[column & TILE_MASK] : null;
+    }
+
+    public Cell get(String cellId) {
+        long key = CellCoordinate.parseKey(cellId);
+
+        return key == CellCoordinate.INVALID_KEY ? null : get(key);
+    }
+
+    public Cell get(long key) {
+        return get(CellCoordinate.row(key), CellCoordinate.column(key));
+    }
+
+    // Get a grid where the cell is placed at the given row and column
+    public CellGrid with(int row, int column, Cell cell) {
+        if (row < 1 || column < 0) {
+            throw new IllegalArgumentException("Invalid cell position: row " + row + ", column " + column);
+        }
+
+        Cell previous = get(row, column);
+        if (previous == cell) {
+            return this;
+        }
+
+        return set(row, column, cell, previous == null ? size + 1 : size);
+    }
+
+    // Get a grid without the cell at the given row and column
+    public CellGrid without(int row, int column) {
+        if (get(row, column) == null) {
+            return this;
+        }
+
+        return set(row, column, null, size - 1);
+    }
+
+    // Copy the path to the cell, creating the missing levels, and place the cell at its end
+    private CellGrid set(int row, int column, Cell cell, int newSize) {
+        int rowIndex = row - 1;
+        int tileRow = rowIndex >>> TILE_SHIFT;
+        int groupIndex = tileRow >>> TILE_SHIFT;
+        int tileColumn = column >>> TILE_SHIFT;
+
+        Cell[][][][][] newDirectory = Arrays.copyOf(directory, Math.max(directory.length, groupIndex + 1));
+        Cell[][][][] group = newDirectory[groupIndex];
+        group = group != null ? group.clone() : new Cell[TILE_SIZE][][][];
+
+        Cell[][][] band = group[tileRow & TILE_MASK];
+        band = band != null ? Arrays.copyOf(band, Math.max(band.length, tileColumn + 1)) : new Cell[tileColumn + 1][][];
+
+        Cell[][] tile = band[tileColumn];
+        tile = tile != null ? tile.clone() : new Cell[TILE_SIZE][];
+
+        Cell[] cells = tile[rowIndex & TILE_MASK];
+        cells = cells != null ? cells.clone() : new Cell[TILE_SIZE];
+
+        cells[column & TILE_MASK] = cell;
+        tile[rowIndex & TILE_MASK] = cells;
+        band[tileColumn] = tile;
+        group[tileRow & TILE_MASK] = band;
+        newDirectory[groupIndex] = group;
+
+        return new CellGrid(newDirectory, newSize);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    // Visit the cells of a single row by column order, only the tiles of the row are visited
+    public void forEachInRow(int row, CellVisitor visitor) {
+        if (row < 1) {
+            return;
+        }
+
+        int rowIndex = row - 1;
+        int tileRow = rowIndex >>> TILE_SHIFT;
+        Cell[][][][] group = at(directory, tileRow >>> TILE_SHIFT);
+        Cell[][][] band = group != null ? group[tileRow & TILE_MASK] : null;
+
+        if (band != null) {
+            visitBandRow(band, row, rowIndex & TILE_MASK, visitor);
+        }
+    }
+
+    // Visit the cells of a rectangular area by row and then by column order, only the tiles of the area are visited
+    public void forEachInArea(int top, int left, int bottom, int right, CellVisitor visitor) {
+        for (int row = Math.max(top, 1); row <= bottom; row++) {
+            int rowIndex = row - 1;
+            int tileRow = rowIndex >>> TILE_SHIFT;
+            Cell[][][][] group = at(directory, tileRow >>> TILE_SHIFT);
+            Cell[][][] band = group != null ? group[tileRow & TILE_MASK] : null;
+
+            if (band == null) {
+                row = (tileRow + 1) << TILE_SHIFT; // Skip to the first row of the next band
+                continue;
+            }
+
+            int lastTileColumn = Math.min(right >>> TILE_SHIFT, band.length - 1);
+            for (int tileColumn = Math.max(left, 0) >>> TILE_SHIFT; tileColumn <= lastTileColumn; tileColumn++) {
+                Cell[] cells = band[tileColumn] != null ? band[tileColumn][rowIndex & TILE_MASK] : null;
+                if (cells == null) {
+                    continue;
+                }
+
+                int firstColumn = Math.max(left, tileColumn << TILE_SHIFT);
+                int lastColumn = Math.min(right, tileColumn << TILE_SHIFT | TILE_MASK);
+                for (int column = firstColumn; column <= lastColumn; column++) {
+                    if (cells[column & TILE_MASK] != null) {
+                        visitor.visit(row, column, cells[column & TILE_MASK]);
+                    }
+                }
+            }
+        }
+    }
+
+    // Visit the cells of a single column by row order, only the tiles of the column are visited
+    public void forEachInColumn(int column, CellVisitor visitor) {
+        if (column < 0) {
+            return;
+        }
+
+        int tileColumn = column >>> TILE_SHIFT;
+        for (int groupIndex = 0; groupIndex < directory.length; groupIndex++) {
+            Cell[][][][] group = directory[groupIndex];
+
+            for (int bandIndex = 0; group != null && bandIndex < TILE_SIZE; bandIndex++) {
+                Cell[][] tile = at(group[bandIndex], tileColumn);
+                if (tile == null) {
+                    continue;
+                }
+
+                int firstRow = ((groupIndex << TILE_SHIFT | bandIndex) << TILE_SHIFT) + 1;
+                for (int rowInTile = 0; rowInTile < TILE_SIZE; rowInTile++) {
+                    Cell cell = at(tile[rowInTile], column & TILE_MASK);
+
+                    if (cell != null) {
+                        visitor.visit(firstRow + rowInTile, column, cell);
+                    }
+                }
+            }
+        }
+    }
+
+    // Visit all the cells by row and then by column order
+    public void forEach(CellVisitor visitor) {
+        for (int groupIndex = 0; groupIndex < directory.length; groupIndex++) {
+            Cell[][][][] group = directory[groupIndex];
+            if (group == null) {
+                continue;
+            }
+
+            for (int bandIndex = 0; bandIndex < TILE_SIZE; bandIndex++) {
+                Cell[][][] band = group[bandIndex];
+                if (band == null) {
+                    continue;
+                }
+
+                int firstRow = ((groupIndex << TILE_SHIFT | bandIndex) << TILE_SHIFT) + 1;
+                for (int rowInTile = 0; rowInTile < TILE_SIZE; rowInTile++) {
+                    visitBandRow(band, firstRow + rowInTile, rowInTile, visitor);
+                }
+            }
+        }
+    }
+
+    // Visit the cells of a row in every tile of a band
+    private static void visitBandRow(Cell[][][] band, int row, int rowInTile, CellVisitor visitor) {
+        for (int tileColumn = 0; tileColumn < band.length; tileColumn++) {
+            Cell[] cells = band[tileColumn] != null ? band[tileColumn][rowInTile] : null;
+            if (cells == null) {
+                continue;
+            }
+
+            for (int columnInTile = 0; columnInTile < TILE_SIZE; columnInTile++) {
+                if (cells[columnInTile] != null) {
+                    visitor.visit(row, tileColumn << TILE_SHIFT | columnInTile, cells[columnInTile]);
+                }
+            }
+        }
+    }
+
+    // Collect the cells that differ between two grids, changed and added cells are mapped to their cell in the second
+    // grid and removed cells are mapped to null
+    // Levels that both grids share are skipped without being visited, so the cost depends on the number of changes
+    public static Map<String, Cell> diff(CellGrid from, CellGrid to) {
+        Map<String, Cell> changes = new HashMap<>();
+        int groups = Math.max(from.directory.length, to.directory.length);
+
+        for (int groupIndex = 0; groupIndex < groups; groupIndex++) {
+            Cell[][][][] fromGroup = at(from.directory, groupIndex);
+            Cell[][][][] toGroup = at(to.directory, groupIndex);
+            if (fromGroup == toGroup) {
+                continue;
+            }
+
+            for (int bandIndex = 0; bandIndex < TILE_SIZE; bandIndex++) {
+                Cell[][][] fromBand = at(fromGroup, bandIndex);
+                Cell[][][] toBand = at(toGroup, bandIndex);
+                if (fromBand != toBand) {
+                    diffBands(fromBand, toBand, (groupIndex << TILE_SHIFT | bandIndex) << TILE_SHIFT, changes);
+                }
+            }
+        }
+
+        return changes;
+    }
+
+    // Collect the differing cells of two bands, the first row of the band is given as a row index (from 0)
+    private static void diffBands(Cell[][][] fromBand, Cell[][][] toBand, int firstRowIndex, Map<String, Cell> changes) {
+        int tileColumns = Math.max(fromBand != null ? fromBand.length : 0, toBand != null ? toBand.length : 0);
+
+        for (int tileColumn = 0; tileColumn < tileColumns; tileColumn++) {
+            Cell[][] fromTile = at(fromBand, tileColumn);
+            Cell[][] toTile = at(toBand, tileColumn);
+            if (fromTile == toTile) {
+                continue;
+            }
+
+            for (int rowInTile = 0; rowInTile < TILE_SIZE; rowInTile++) {
+                Cell[] fromCells = at(fromTile, rowInTile);
+                Cell[] toCells = at(toTile, rowInTile);
+                if (fromCells == toCells) {
+                    continue;
+                }
+
+                for (int columnInTile = 0; columnInTile < TILE_SIZE; columnInTile++) {
+                    Cell fromCell = at(fromCells, columnInTile);
+                    Cell toCell = at(toCells, columnInTile);
+
+                    if (fromCell != toCell) {
+                        int row = firstRowIndex + rowInTile + 1;
+                        changes.put(CellCoordinate.toCellId(row, tileColumn << TILE_SHIFT | columnInTile), toCell);
+                    }
+                }
+            }
+        }
+    }
+
+    // Element of a level that may be missing or shorter than the index
+    private static <T> T at(T[] level, int index) {
+        return level != null && index < level.length ? level[index] : null;
+    }
+
+    // Read-only java.util.Map view of the cells by cell ID
+    public Map<String, Cell> asMap() {
+        return new MapView();
+    }
+
+    // Receives the cells of the grid with their position
+    public interface CellVisitor {
+        void visit(int row, int column, Cell cell);
+    }
+
+    // Read-only map view, lookups go straight to the grid
+    private final class MapView extends AbstractMap<String, Cell> {
+        @Override
+        public Cell get(Object key) {
+            return key instanceof String ? CellGrid.this.get((String) key) : null;
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            return get(key) != null;
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+
+        @Override
+        public Set<Entry<String, Cell>> entrySet() {
+            return new AbstractSet<>() {
+                // The entries are collected by row and then by column order when the iteration starts
+                @Override
+                public Iterator<Entry<String, Cell>> iterator() {
+                    List<Entry<String, Cell>> entries = new ArrayList<>(size);
+                    CellGrid.this.forEach((row, column, cell) ->
+                            entries.add(new AbstractMap.SimpleImmutableEntry<>(CellCoordinate.toCellId(row, column), cell)));
+
+                    return Collections.unmodifiableList(entries).iterator();
+                }
+
+                @Override
+                public int size() {
+                    return size;
+                }
+            };
+        }
+    }
+}
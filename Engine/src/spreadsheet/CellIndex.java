@@ -0,0 +1,94 @@
+package spreadsheet;
+
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.Arrays;
+
+// Numbering of the cells of a spreadsheet lineage, gives every cell key (see CellCoordinate) a dense int index
+// The dependency graph refers to cells by their index, so its lists are int arrays instead of arrays of keys or IDs
+// The numbering only grows: an index stays with its key for good, so all the copies of a spreadsheet share the
+// numbering, and a copy that adds a cell doesn't renumber the cells of the others
+// Keys are added under the lock, an index is read without it: an index is handed out only after its key is stored,
+// and a grown array is published only after it holds all the keys
+final class CellIndex implements Serializable {
+    private static final int INITIAL_CAPACITY = 16;
+    private static final int NO_INDEX = -1;
+
+    private volatile long[] keys;  // Key of every index
+    private int size;
+    private int[] slots;           // Open addressing table of the indexes by key, a slot holds its index plus one
+
+    CellIndex() {
+        this.keys = new long[INITIAL_CAPACITY];
+        this.slots = new int[INITIAL_CAPACITY * 2];
+    }
+
+    // Get the index of a key, numbering the key if it has no index yet
+    synchronized int indexOf(long key) {
+        int slot = findSlot(key);
+        if (slots[slot] != 0) {
+            return slots[slot] - 1;
+        }
+
+        if (size == keys.length) {
+            keys = Arrays.copyOf(keys, size * 2);
+        }
+        keys[size] = key;
+        slots[slot] = ++size;
+
+        // Keep the table at most half full
+        if (size * 2 > slots.length) {
+            rehash();
+        }
+
+        return size - 1;
+    }
+
+    // Get the index of a key, or -1 if the key has no index
+    synchronized int find(long key) {
+        int slot = findSlot(key);
+
+        return slots[slot] != 0 ? slots[slot] - 1 : NO_INDEX;
+    }
+
+    long keyAt(int index) {
+        return keys[index];
+    }
+
+    // Slot of the key, or the empty slot where it would be added
+    private int findSlot(long key) {
+        int mask = slots.length - 1;
+        int slot = hash(key) & mask;
+
+        while (slots[slot] != 0 && keys[slots[slot] - 1] != key) {
+            slot = (slot + 1) & mask;
+        }
+
+        return slot;
+    }
+
+    private void rehash() {
+        slots = new int[slots.length * 2];
+        int mask = slots.length - 1;
+
+        for (int index = 0; index < size; index++) {
+            int slot = hash(keys[index]) & mask;
+            while (slots[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            slots[slot] = index + 1;
+        }
+    }
+
+    private static int hash(long key) {
+        long mixed = key * 0x9E3779B97F4A7C15L;
+
+        return (int) (mixed ^ (mixed >>> 32));
+    }
+
+    // Written under the lock, so a copy of the spreadsheet that adds a cell meanwhile doesn't tear the numbering
+    private synchronized void writeObject(ObjectOutputStream out) throws IOException {
+        out.defaultWriteObject();
+    }
+}
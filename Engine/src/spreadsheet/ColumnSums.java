@@ -0,0 +1,109 @@
+package spreadsheet;
+
+import java.io.Serializable;
+
+// Immutable index of the numeric values in one column of a spreadsheet, a segment tree over the rows where every
+// node holds the sum and the count of the numbers below it, so the total of any run of rows takes O(log n)
+// Every change returns a new index that copies only the nodes on the path to the changed row (path copying),
+// so the versions of a spreadsheet share the untouched nodes, and all the ranges over the column share one index
+// Cell values are rounded to 2 decimal places, so they are summed as whole cents and the sums don't depend on the
+// order of the changes, values that can't be kept in cents are summed apart as doubles
+final class ColumnSums implements Serializable {
+    private static final double MAX_CENTS_VALUE = 1e13; // Larger values are summed as doubles
+    private static final ColumnSums EMPTY = new ColumnSums(null, 0);
+
+    private final Node root; // Null while no row holds a number
+    private final int depth; // The tree covers the rows 1 to 2^depth
+
+    private ColumnSums(Node root, int depth) {
+        this.root = root;
+        this.depth = depth;
+    }
+
+    static ColumnSums empty() {
+        return EMPTY;
+    }
+
+    // Get an index where the value at the row is added (sign 1) or taken away (sign -1)
+    ColumnSums with(int row, double value, int sign) {
+        int index = row - 1;
+        Node newRoot = root;
+        int newDepth = depth;
+
+        // Grow the tree upwards until it covers the row, the old tree becomes the first half
+        while (index >= 1L << newDepth) {
+            newRoot = newRoot != null ? new Node(newRoot.cents, newRoot.otherSum, newRoot.count, newRoot, null) : null;
+            newDepth++;
+        }
+
+        long cents = Math.round(value * 100.0);
+        if (Math.abs(value) < MAX_CENTS_VALUE && cents / 100.0 == value) {
+            return new ColumnSums(update(newRoot, newDepth, index, sign * cents, 0, sign), newDepth);
+        }
+
+        return new ColumnSums(update(newRoot, newDepth, index, 0, sign * value, sign), newDepth);
+    }
+
+    // Copy the path to the row and change the sums along it
+    private static Node update(Node node, int depth, int index, long cents, double otherSum, int count) {
+        Node left = node != null ? node.left : null;
+        Node right = node != null ? node.right : null;
+
+        if (depth > 0) {
+            int half = 1 << (depth - 1);
+
+            if (index < half) {
+                left = update(left, depth - 1, index, cents, otherSum, count);
+            } else {
+                right = update(right, depth - 1, index - half, cents, otherSum, count);
+            }
+        }
+
+        if (node == null) {
+            return new Node(cents, otherSum, count, left, right);
+        }
+
+        return new Node(node.cents + cents, node.otherSum + otherSum, node.count + count, left, right);
+    }
+
+    // Add the numbers of the rows from top to bottom to the total
+    void addTo(RangeTotal total, int top, int bottom) {
+        if (root != null && top <= bottom) {
+            addTo(root, depth, 0, top - 1, bottom - 1, total);
+        }
+    }
+
+    // The node covers the row indexes from first to first + 2^depth - 1
+    private static void addTo(Node node, int depth, int first, int from, int to, RangeTotal total) {
+        long last = first + (1L << depth) - 1;
+
+        if (node == null || to < first || from > last) {
+            return;
+        }
+        if (from <= first && to >= last) {
+            total.add(node.cents, node.otherSum, node.count);
+            return;
+        }
+
+        int half = 1 << (depth - 1);
+        addTo(node.left, depth - 1, first, from, to, total);
+        addTo(node.right, depth - 1, first + half, from, to, total);
+    }
+
+    // Node of the segment tree
+    private static final class Node implements Serializable {
+        private final long cents;     // Sum of the values kept in cents
+        private final double otherSum; // Sum of the values that can't be kept in cents
+        private final int count;      // Number of the numeric cells
+        private final Node left;
+        private final Node right;
+
+        private Node(long cents, double otherSum, int count, Node left, Node right) {
+            this.cents = cents;
+            this.otherSum = otherSum;
+            this.count = count;
+            this.left = left;
+            this.right = right;
+        }
+    }
+}
@@ -0,0 +1,185 @@
+package spreadsheet;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.LongConsumer;
+
+// Dependencies between the cells of a spreadsheet, kept by the spreadsheet instead of by each cell
+// Every cell key gets an int index from the numbering of the spreadsheet lineage (see CellIndex), and both sides of
+// every dependency are kept as int lists by cell index (see AdjacencyLists), so a cell without dependencies takes
+// nothing and walking the dependents of a cell reads a single int array
+// The indexes of a list are ordered by the keys of their cells, by row and then by column
+// A copy shares the numbering and the lists with the original, the lists are copied before they are changed
+public final class DependencyGraph implements Serializable {
+    private static final int NO_INDEX = -1;
+    private static final long[] NO_KEYS = new long[0];
+
+    private final CellIndex index;
+    private final AdjacencyLists dependencies; // The cells each cell depends on
+    private final AdjacencyLists dependents;   // The cells that depend on each cell
+
+    public DependencyGraph() {
+        this.index = new CellIndex();
+        this.dependencies = new AdjacencyLists();
+        this.dependents = new AdjacencyLists();
+    }
+
+    // Copy constructor, the copy shares the numbering and the lists with the original
+    public DependencyGraph(DependencyGraph original) {
+        this.index = original.index;
+        this.dependencies = new AdjacencyLists(original.dependencies);
+        this.dependents = new AdjacencyLists(original.dependents);
+    }
+
+    // Add a dependency of the cell at the first key on the cell at the second key, returns false if it already exists
+    public boolean addDependency(long cellKey, long dependencyKey) {
+        int cell = index.indexOf(cellKey);
+        int dependency = index.indexOf(dependencyKey);
+        int position = search(dependencies.get(cell), dependencyKey);
+
+        if (position >= 0) {
+            return false;
+        }
+
+        dependencies.insert(cell, -position - 1, dependency);
+        dependents.insert(dependency, -search(dependents.get(dependency), cellKey) - 1, cell);
+
+        return true;
+    }
+
+    // Remove a dependency between two cells, returns false if it didn't exist
+    public boolean removeDependency(long cellKey, long dependencyKey) {
+        int cell = index.find(cellKey);
+        int dependency = index.find(dependencyKey);
+        int position = cell != NO_INDEX && dependency != NO_INDEX ? search(dependencies.get(cell), dependencyKey) : -1;
+
+        if (position < 0) {
+            return false;
+        }
+
+        dependencies.remove(cell, position);
+        dependents.remove(dependency, search(dependents.get(dependency), cellKey));
+
+        return true;
+    }
+
+    // Remove all the dependencies of a cell, the cells it depended on forget it too
+    public void removeDependencies(long cellKey) {
+        int cell = index.find(cellKey);
+        if (cell == NO_INDEX) {
+            return;
+        }
+
+        int[] list = dependencies.get(cell);
+        for (int position = 1; position <= list[0]; position++) {
+            int dependency = list[position];
+            dependents.remove(dependency, search(dependents.get(dependency), cellKey));
+        }
+        dependencies.clear(cell);
+    }
+
+    // Replace the dependencies of a cell
+    public void setDependencies(long cellKey, long[] dependencyKeys) {
+        removeDependencies(cellKey);
+
+        for (long dependencyKey : dependencyKeys) {
+            addDependency(cellKey, dependencyKey);
+        }
+    }
+
+    // Check if the cell at the first key depends directly on the cell at the second key
+    public boolean dependsOn(long cellKey, long dependencyKey) {
+        int cell = index.find(cellKey);
+
+        return cell != NO_INDEX && search(dependencies.get(cell), dependencyKey) >= 0;
+    }
+
+    // Visit the keys of the cells a cell depends on, by row and then by column order
+    public void forEachDependency(long cellKey, LongConsumer action) {
+        forEach(dependencies, cellKey, action);
+    }
+
+    // Visit the keys of the cells that depend on a cell, by row and then by column order
+    public void forEachDependent(long cellKey, LongConsumer action) {
+        forEach(dependents, cellKey, action);
+    }
+
+    // Get the keys of the cells a cell depends on, by row and then by column order
+    public long[] getDependencyKeys(long cellKey) {
+        return toKeys(dependencies, cellKey);
+    }
+
+    // Get the keys of the cells that depend on a cell, by row and then by column order
+    public long[] getDependentKeys(long cellKey) {
+        return toKeys(dependents, cellKey);
+    }
+
+    private void forEach(AdjacencyLists lists, long cellKey, LongConsumer action) {
+        int cell = index.find(cellKey);
+        if (cell == NO_INDEX) {
+            return;
+        }
+
+        int[] list = lists.get(cell);
+        for (int position = 1; position <= list[0]; position++) {
+            action.accept(index.keyAt(list[position]));
+        }
+    }
+
+    private long[] toKeys(AdjacencyLists lists, long cellKey) {
+        int cell = index.find(cellKey);
+        int[] list = cell != NO_INDEX ? lists.get(cell) : null;
+        if (list == null || list[0] == 0) {
+            return NO_KEYS;
+        }
+
+        long[] keys = new long[list[0]];
+        for (int position = 1; position <= list[0]; position++) {
+            keys[position - 1] = index.keyAt(list[position]);
+        }
+
+        return keys;
+    }
+
+    // Binary search of a key in a list ordered by the keys of its cells, returns the position of the key among the
+    // indexes of the list, or (-(insertion point) - 1) like Arrays.binarySearch
+    private int search(int[] list, long key) {
+        int low = 0;
+        int high = list[0] - 1;
+
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            long middleKey = index.keyAt(list[middle + 1]);
+
+            if (middleKey < key) {
+                low = middle + 1;
+            } else if (middleKey > key) {
+                high = middle - 1;
+            } else {
+                return middle;
+            }
+        }
+
+        return -(low + 1);
+    }
+
+    // Collect the dependencies of the given cells that differ between two graphs, by cell ID, a cell that lost all
+    // its dependencies is mapped to an empty array
+    public static Map<String, long[]> diff(DependencyGraph from, DependencyGraph to, Collection<String> cellIds) {
+        Map<String, long[]> changes = new HashMap<>();
+
+        for (String cellId : cellIds) {
+            long key = CellCoordinate.parseKey(cellId);
+            long[] dependencyKeys = to.getDependencyKeys(key);
+
+            if (!Arrays.equals(from.getDependencyKeys(key), dependencyKeys)) {
+                changes.put(cellId, dependencyKeys);
+            }
+        }
+
+        return changes;
+    }
+}
@@ -0,0 +1,57 @@
+package spreadsheet;
+
+import exceptions.CircularReferenceException;
+
+import java.util.List;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicReference;
+
+// Fork/join task that recalculates the cells of a single dependency level
+// The cells of a level don't depend on each other, so the level is split in halves until the parts are small
+class LevelRecalculationTask extends RecursiveAction {
+    private static final int CELLS_PER_TASK = 16;
+
+    private final Spreadsheet spreadsheet; // Bound to the worker threads while they evaluate their part
+    private final List<String> cellIds;
+    private final int from;
+    private final int to;
+    private final CellRecalculation recalculation;
+    private final AtomicReference<CircularReferenceException> failure; // The first error, stops the remaining work
+
+    // Recalculation of a single cell
+    interface CellRecalculation {
+        void recalculate(String cellId) throws CircularReferenceException;
+    }
+
+    LevelRecalculationTask(Spreadsheet spreadsheet, List<String> cellIds, int from, int to, CellRecalculation recalculation,
+                           AtomicReference<CircularReferenceException> failure) {
+        this.spreadsheet = spreadsheet;
+        this.cellIds = cellIds;
+        this.from = from;
+        this.to = to;
+        this.recalculation = recalculation;
+        this.failure = failure;
+    }
+
+    @Override
+    protected void compute() {
+        if (to - from <= CELLS_PER_TASK) {
+            Spreadsheet previous = SpreadsheetLink.bind(spreadsheet);
+            try {
+                for (int i = from; i < to && failure.get() == null; i++) {
+                    try {
+                        recalculation.recalculate(cellIds.get(i));
+                    } catch (CircularReferenceException e) {
+                        failure.compareAndSet(null, e);
+                    }
+                }
+            } finally {
+                SpreadsheetLink.restore(previous);
+            }
+        } else {
+            int middle = (from + to) >>> 1;
+            invokeAll(new LevelRecalculationTask(spreadsheet, cellIds, from, middle, recalculation, failure),
+                    new LevelRecalculationTask(spreadsheet, cellIds, middle, to, recalculation, failure));
+        }
+    }
+}
@@ -0,0 +1,28 @@
+package spreadsheet;
+
+import java.io.Serializable;
+
+// Sum and count of the numeric cells in a range, collected from the column indexes of the spreadsheet
+// The values kept in whole cents are summed exactly, see ColumnSums
+public final class RangeTotal implements Serializable {
+    private long cents;
+    private double otherSum;
+    private int count;
+
+    RangeTotal() {
+    }
+
+    void add(long cents, double otherSum, int count) {
+        this.cents += cents;
+        this.otherSum += otherSum;
+        this.count += count;
+    }
+
+    public double getSum() {
+        return cents / 100.0 + otherSum;
+    }
+
+    public int getCount() {
+        return count;
+    }
+}
@@ -1,47 +1,113 @@
 package spreadsheet;
 
+import api.Expression;
+import api.Range;
 import cells.Cell;
+import cells.DependencySet;
+import enums.CellValueStorage;
 import exceptions.CircularReferenceException;
 import exceptions.InvalidColumnException;
+import ranges.RangeImpl;
+import ranges.RangeIndex;
+import ranges.RangesManager;
 
 import java.io.Serializable;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+import java.util.function.LongConsumer;
 
 // This class is for creating the spreadsheet and containing its data
+// Copies of a spreadsheet share their cells (copy-on-write), a spreadsheet copies a shared cell only before changing it
+// The dependencies between the cells are kept by the spreadsheet in a graph of int lists by cell index and not by the
+// cells, so adding a dependency on a cell neither copies nor changes that cell
+// A named range is a single vertex of the dependency graph: a cell that uses a range depends on the range and not on
+// each of its cells, and a change to a cell reaches the users of the ranges that contain it through the range index
+// The topological order keeps a used range as a vertex too, between the cells it contains and the cells that use it
 public class Spreadsheet implements Serializable {
-    private final Map<String, Cell> cells;
+    private CellGrid cells;
+    private Set<Cell> ownedCells; // Cells that belong only to this spreadsheet and can be changed in place, by identity
+    private DependencyGraph dependencies; // Both sides of the dependencies between the cells
+    private boolean ownsDependencies; // Whether the dependency graph belongs only to this spreadsheet
+    private TopologicalOrder topologicalOrder; // Dependency order of the cells, maintained as dependencies are added
+    private boolean ownsTopologicalOrder; // Whether the topological order belongs only to this spreadsheet
+    private Map<String, DependencySet> rangeConsumers; // Keys of the cells that use each named range, by range key
+    private boolean ownsRangeConsumers; // Whether the range consumers belong only to this spreadsheet
+    private transient RangesManager ranges; // Definitions of the named ranges, shared by all the versions of the sheet
+    private transient Map<Integer, ColumnSums> columnSums; // Indexes of the numbers in the summed columns, by column
+    private transient boolean ownsColumnSums; // Whether the map of the column indexes belongs only to this spreadsheet
+    private AtomicLong forks; // Number of copies taken in the lineage of this spreadsheet, shared by all its copies
+    private long ownedSince; // Number of copies in the lineage when the owned state of this spreadsheet was taken
     private int rows;
     private int columns;
     private int columnWidth;
     private int rowHeight;
     private String name;
     private int versionNumber;
+    private CellValueStorage cellValueStorage = CellValueStorage.HEAP; // Where the cells created or copied by this spreadsheet keep their values
     private static final String EMPTY_STRING = "";
+    private static final String RANGE_VERTEX_PREFIX = "#"; // Prefix of the range vertices of the topological order, never part of a cell ID
+    private static final int PARALLEL_THRESHOLD = 64; // Levels smaller than this are recalculated sequentially
 
     // Default Constructor
     public Spreadsheet() {
-        this.cells = new HashMap<>();
+        this.cells = CellGrid.empty();
+        this.ownedCells = newOwnedCells();
+        this.dependencies = new DependencyGraph();
+        this.ownsDependencies = true;
+        this.topologicalOrder = new TopologicalOrder();
+        this.ownsTopologicalOrder = true;
+        this.rangeConsumers = new HashMap<>();
+        this.ownsRangeConsumers = true;
+        this.columnSums = new HashMap<>();
+        this.ownsColumnSums = true;
+        this.forks = new AtomicLong();
         this.versionNumber = 1;
     }
 
-    // Deep copy constructor
+    // Copy constructor, the copy shares the cells, the dependencies, the topological order, the range consumers and the column indexes with the original
+    // spreadsheet, neither spreadsheet owns the shared cells anymore, so both copy a cell before changing it
+    // The original isn't written to, so it may be copied while it's read: the copy counts itself in the lineage and the
+    // original drops what it owned before its next change, when it sees the count moved
     public Spreadsheet(Spreadsheet original) {
-        this.cells = new HashMap<>();
-        // Copy map
-        for (Map.Entry<String, Cell> entry : original.cells.entrySet()) {
-            this.cells.put(entry.getKey(), new Cell(entry.getValue()));
-        }
+        this.cells = original.cells;
+        this.ownedCells = newOwnedCells();
+        this.dependencies = original.dependencies;
+        this.ownsDependencies = false;
+        this.topologicalOrder = original.topologicalOrder;
+        this.ownsTopologicalOrder = false;
+        this.rangeConsumers = original.rangeConsumers;
+        this.ownsRangeConsumers = false;
+        this.ranges = original.ranges;
+        this.columnSums = original.columnSums;
+        this.ownsColumnSums = false;
         this.rows = original.rows;
         this.columns = original.columns;
         this.columnWidth = original.columnWidth;
         this.rowHeight = original.rowHeight;
         this.name = original.name;
         this.versionNumber = original.versionNumber;
+        this.cellValueStorage = original.cellValueStorage;
+        this.forks = original.forks;
+        this.ownedSince = forks.incrementAndGet();
     }
     // Parameterized Constructor for creating a Spreadsheet directly
     public Spreadsheet(String name, int rows, int columns,
                        int columnWidth, int rowHeight, int versionNumber) {
-        this.cells = new HashMap<>(); // Initialize cells map
+        this.cells = CellGrid.empty(); // Initialize cells grid
+        this.ownedCells = newOwnedCells();
+        this.dependencies = new DependencyGraph();
+        this.ownsDependencies = true;
+        this.topologicalOrder = new TopologicalOrder();
+        this.ownsTopologicalOrder = true;
+        this.rangeConsumers = new HashMap<>();
+        this.ownsRangeConsumers = true;
+        this.columnSums = new HashMap<>();
+        this.ownsColumnSums = true;
+        this.forks = new AtomicLong();
         this.rows = rows;
         this.columns = columns;
         this.columnWidth = columnWidth;
@@ -50,33 +116,589 @@ public class Spreadsheet implements Serializable {
         this.versionNumber = versionNumber;
     }
 
+    private static Set<Cell> newOwnedCells() {
+        return Collections.newSetFromMap(new IdentityHashMap<>());
+    }
+
+    // Drop the cells and the structures owned by this spreadsheet once a copy was taken in its lineage since they were
+    // owned, a copy may share them, so they are copied again before the next change
+    private void releaseOwnershipIfCopied() {
+        long copies = forks.get();
+
+        if (ownedSince != copies) {
+            ownedCells = newOwnedCells();
+            ownsDependencies = false;
+            ownsTopologicalOrder = false;
+            ownsRangeConsumers = false;
+            ownsColumnSums = false;
+            ownedSince = copies;
+        }
+    }
+
+    // Translate a cell ID to its key in the grid, throws an IllegalArgumentException if the cell ID is invalid
+    private static long toKey(String cellId) {
+        long key = CellCoordinate.parseKey(cellId);
+        if (key == CellCoordinate.INVALID_KEY || CellCoordinate.row(key) < 1) {
+            throw new IllegalArgumentException("Invalid cell ID: " + cellId);
+        }
+
+        return key;
+    }
+
+    // Set the named ranges the cells may depend on, the ranges are shared by all the versions of the sheet
+    public void setRangesManager(RangesManager ranges) {
+        this.ranges = ranges;
+    }
+
     // Create a new cell in the spreadsheet or return an existing cell if it already exists
+    // The returned cell belongs only to this spreadsheet, so it can be changed
     public Cell getOrCreateCell(String cellId) {
         // Check if the cell exists
-        Cell cell = cells.get(cellId);
+        Cell cell = getCellForUpdate(cellId);
 
         // If the cell doesn't exist, create it and add it to the map
         if (cell == null) {
-            cell = new Cell();
-            cells.put(cellId, cell);
+            cell = Cell.create(cellValueStorage);
+            addCell(cellId, cell);
+            ownedCells.add(cell);
+            placeBeforeRangeConsumers(cellId);
         }
 
         return cell;
     }
 
-    // Add a cell to the spreadsheet
-    public void addCell(String cellId, Cell cell) { cells.put(cellId, cell); }
+    // Move a new cell before the vertices of the used ranges that contain it, and so before the cells that use them
+    // The new cell has no dependencies yet, so this never closes a cycle
+    private void placeBeforeRangeConsumers(String cellId) {
+        long key = toKey(cellId);
+
+        forEachUsedRangeContaining(CellCoordinate.row(key), CellCoordinate.column(key), rangeKey -> {
+            String rangeVertex = toRangeVertex(rangeKey);
+
+            if (!topologicalOrder.comesBefore(cellId, rangeVertex)) {
+                try {
+                    getTopologicalOrderForUpdate().addEdge(cellId, rangeVertex, this);
+                } catch (CircularReferenceException e) {
+                    throw new IllegalStateException("A new cell closed a cycle: " + e.getMessage(), e);
+                }
+            }
+        });
+    }
+
+    // Get the vertex of a named range in the topological order
+    private static String toRangeVertex(String rangeKey) {
+        return RANGE_VERTEX_PREFIX + rangeKey;
+    }
+
+    // Check if a vertex of the topological order is a named range and not a cell
+    static boolean isRangeVertex(String vertex) {
+        return vertex.startsWith(RANGE_VERTEX_PREFIX);
+    }
+
+    // Get a cell that can be changed, a cell shared with other spreadsheets is copied first
+    // Returns null if the cell doesn't exist
+    public Cell getCellForUpdate(String cellId) {
+        long key = toKey(cellId);
+        Cell cell = cells.get(CellCoordinate.row(key), CellCoordinate.column(key));
+
+        releaseOwnershipIfCopied();
+        if (cell != null && !ownedCells.contains(cell)) {
+            cell = Cell.copyOf(cell, cellValueStorage);
+            cells = cells.with(CellCoordinate.row(key), CellCoordinate.column(key), cell);
+            ownedCells.add(cell);
+        }
+
+        return cell;
+    }
+
+    // Add a cell to the spreadsheet, the cell may be shared so it isn't owned by this spreadsheet
+    public void addCell(String cellId, Cell cell) {
+        long key = toKey(cellId);
+        Cell previous = cells.get(CellCoordinate.row(key), CellCoordinate.column(key));
+
+        if (previous != null) {
+            ownedCells.remove(previous);
+            removeRangeConsumer(previous, key);
+        }
+        updateColumnSums(key, previous, cell);
+        cells = cells.with(CellCoordinate.row(key), CellCoordinate.column(key), cell);
+        ownedCells.remove(cell);
+        addRangeConsumer(cell, key);
+
+        if (!topologicalOrder.containsCell(cellId)) {
+            getTopologicalOrderForUpdate().addCell(cellId);
+        }
+    }
+
+    // Add a dependency between two cells, the cell with the given ID depends on the dependency cell
+    // The dependency cell is created if it doesn't exist, an existing one stays shared since the graph keeps the dependency
+    // Throws a CircularReferenceException if the new dependency closes a cycle
+    public void addDependency(String cellId, String dependencyId) throws CircularReferenceException {
+        getOrCreateCell(cellId);
+        if (cells.get(toKey(dependencyId)) == null) {
+            getOrCreateCell(dependencyId);
+        }
+
+        // Update the order first, so a circular reference leaves the cells untouched
+        // The order is copied only if the new dependency breaks it
+        if (!topologicalOrder.comesBefore(dependencyId, cellId)) {
+            getTopologicalOrderForUpdate().addEdge(dependencyId, cellId, this);
+        }
+
+        getDependenciesForUpdate().addDependency(toKey(cellId), toKey(dependencyId));
+    }
+
+    // Add a dependency of a cell on a named range, the cell depends on every cell the range covers
+    // The cells of the range aren't created and don't get an edge each: the cell gets a single edge from the vertex of
+    // the range in the topological order, which comes after the cells of the range
+    // Throws a CircularReferenceException if the range contains the cell or a cell that depends on it
+    public void addRangeDependency(String cellId, String rangeKey) throws CircularReferenceException {
+        Cell cell = getOrCreateCell(cellId);
+        long key = toKey(cellId);
+        RangeIndex.Area area = getRangeArea(rangeKey);
+
+        if (area != null && area.contains(CellCoordinate.row(key), CellCoordinate.column(key))) {
+            throw new CircularReferenceException("Circular reference detected: " + cellId + " depends on itself");
+        }
+
+        // Update the order first, so a circular reference leaves the cells untouched
+        // A range used for the first time gets its vertex at the end of the order, after all the cells it contains
+        String rangeVertex = toRangeVertex(rangeKey);
+        boolean newVertex = !topologicalOrder.containsCell(rangeVertex);
+        if (newVertex) {
+            getTopologicalOrderForUpdate().addCell(rangeVertex);
+        }
+
+        if (!topologicalOrder.comesBefore(rangeVertex, cellId)) {
+            try {
+                getTopologicalOrderForUpdate().addEdge(rangeVertex, cellId, this);
+            } catch (CircularReferenceException e) {
+                if (newVertex) {
+                    getTopologicalOrderForUpdate().removeCell(rangeVertex);
+                }
+                throw new CircularReferenceException("Circular reference detected: the range " + rangeKey + " depends on " + cellId);
+            }
+        }
+
+        cell.addDependsOnRange(rangeKey);
+        addRangeConsumer(rangeKey, key);
+    }
+
+    // Remove the dependencies of a cell on other cells and on ranges, the cells it depended on forget it too
+    public void removeDependencies(String cellId) {
+        Cell cell = getCellForUpdate(cellId);
+        if (cell == null) {
+            return;
+        }
+
+        long key = toKey(cellId);
+        getDependenciesForUpdate().removeDependencies(key);
+
+        removeRangeConsumer(cell, key);
+        cell.clearDependsOnRanges();
+    }
+
+    // Check if any cell of the spreadsheet uses the named range
+    public boolean isRangeInUse(String rangeKey) {
+        return rangeConsumers.containsKey(rangeKey);
+    }
+
+    // Get the IDs of the cells that the cell depends on, including the existing cells of the ranges it uses
+    public List<String> getDependencyIds(String cellId) {
+        long key = CellCoordinate.parseKey(cellId);
+        Cell cell = key != CellCoordinate.INVALID_KEY ? cells.get(key) : null;
+        if (cell == null) {
+            return new ArrayList<>();
+        }
+
+        List<String> dependencyIds = toCellIds(dependencies.getDependencyKeys(key));
+        if (!cell.dependsOnRanges()) {
+            return dependencyIds;
+        }
+
+        Set<String> uniqueIds = new LinkedHashSet<>(dependencyIds);
+        for (String rangeKey : cell.getDependsOnRanges()) {
+            RangeIndex.Area area = getRangeArea(rangeKey);
+
+            if (area != null) {
+                cells.forEachInArea(area.getTop(), area.getLeft(), area.getBottom(), area.getRight(),
+                        (row, column, rangeCell) -> uniqueIds.add(CellCoordinate.toCellId(row, column)));
+            }
+        }
+
+        return new ArrayList<>(uniqueIds);
+    }
+
+    // Get the IDs of the cells that depend on the cell, including the cells that use a range containing it
+    public List<String> getDependentIds(String cellId) {
+        long key = CellCoordinate.parseKey(cellId);
+        Cell cell = key != CellCoordinate.INVALID_KEY ? cells.get(key) : null;
+        if (cell == null) {
+            return new ArrayList<>();
+        }
+
+        List<String> dependentIds = toCellIds(dependencies.getDependentKeys(key));
+        if (rangeConsumers.isEmpty()) {
+            return dependentIds;
+        }
+
+        Set<String> uniqueIds = new LinkedHashSet<>(dependentIds);
+        forEachRangeConsumer(CellCoordinate.row(key), CellCoordinate.column(key),
+                consumerKey -> uniqueIds.add(CellCoordinate.toCellId(consumerKey)));
+
+        return new ArrayList<>(uniqueIds);
+    }
+
+    // Get the vertices that come right after a vertex of the topological order: the cells that depend on a cell and the
+    // vertices of the ranges that contain it, or the cells that use a range
+    List<String> getOrderSuccessors(String vertex) {
+        List<String> successors = new ArrayList<>();
+
+        if (isRangeVertex(vertex)) {
+            forEachConsumer(vertex.substring(RANGE_VERTEX_PREFIX.length()),
+                    consumerKey -> successors.add(CellCoordinate.toCellId(consumerKey)));
+            return successors;
+        }
+
+        long key = CellCoordinate.parseKey(vertex);
+        Cell cell = key != CellCoordinate.INVALID_KEY ? cells.get(key) : null;
+        if (cell != null) {
+            dependencies.forEachDependent(key, dependentKey -> successors.add(CellCoordinate.toCellId(dependentKey)));
+        }
+        if (key != CellCoordinate.INVALID_KEY && ranges != null) {
+            ranges.getIndex().forEachRangeContaining(CellCoordinate.row(key), CellCoordinate.column(key), rangeKey -> {
+                if (topologicalOrder.containsCell(toRangeVertex(rangeKey))) {
+                    successors.add(toRangeVertex(rangeKey));
+                }
+            });
+        }
+
+        return successors;
+    }
+
+    // Get the vertices that come right before a vertex of the topological order: the cells a cell depends on and the
+    // vertices of the ranges it uses, or the existing cells of a range
+    List<String> getOrderPredecessors(String vertex) {
+        List<String> predecessors = new ArrayList<>();
+
+        if (isRangeVertex(vertex)) {
+            RangeIndex.Area area = getRangeArea(vertex.substring(RANGE_VERTEX_PREFIX.length()));
+
+            if (area != null) {
+                cells.forEachInArea(area.getTop(), area.getLeft(), area.getBottom(), area.getRight(),
+                        (row, column, rangeCell) -> predecessors.add(CellCoordinate.toCellId(row, column)));
+            }
+            return predecessors;
+        }
+
+        long key = CellCoordinate.parseKey(vertex);
+        Cell cell = key != CellCoordinate.INVALID_KEY ? cells.get(key) : null;
+        if (cell != null) {
+            dependencies.forEachDependency(key, dependencyKey -> predecessors.add(CellCoordinate.toCellId(dependencyKey)));
+
+            for (String rangeKey : cell.getDependsOnRanges()) {
+                if (topologicalOrder.containsCell(toRangeVertex(rangeKey))) {
+                    predecessors.add(toRangeVertex(rangeKey));
+                }
+            }
+        }
+
+        return predecessors;
+    }
+
+    // Visit the keys of the ranges that contain the cell and are used by at least one cell
+    private void forEachUsedRangeContaining(int row, int column, Consumer<String> action) {
+        if (rangeConsumers.isEmpty() || ranges == null) {
+            return;
+        }
+
+        ranges.getIndex().forEachRangeContaining(row, column, rangeKey -> {
+            if (rangeConsumers.containsKey(rangeKey)) {
+                action.accept(rangeKey);
+            }
+        });
+    }
+
+    // Visit the keys of the cells that use a range containing the cell
+    private void forEachRangeConsumer(int row, int column, LongConsumer action) {
+        forEachUsedRangeContaining(row, column, rangeKey -> forEachConsumer(rangeKey, action));
+    }
+
+    // Visit the keys of the cells that use the range, by row and then by column order
+    public void forEachConsumer(String rangeKey, LongConsumer action) {
+        DependencySet consumers = rangeConsumers.get(rangeKey);
+
+        for (int index = 0; consumers != null && index < consumers.size(); index++) {
+            action.accept(consumers.keyAt(index));
+        }
+    }
+
+    // Get the total of the numeric cells in a range from the indexes of its columns, O(log n) per column
+    // A column is indexed the first time a range over it is summed, and the index then follows the changes of the
+    // cells, so overlapping ranges over the same column share its index
+    // Returns null if the range isn't a rectangle of cells, such a range is summed by reading its cells
+    // Synchronized since the cells of a level may be evaluated in parallel
+    public synchronized RangeTotal getRangeTotal(Range range) {
+        if (!(range instanceof RangeImpl)) {
+            return null;
+        }
+
+        RangeImpl rectangle = (RangeImpl) range;
+        RangeTotal total = new RangeTotal();
+
+        if (!rectangle.isEmpty()) {
+            for (int column = rectangle.getLeft(); column <= rectangle.getRight(); column++) {
+                getColumnSums(column).addTo(total, rectangle.getTop(), rectangle.getBottom());
+            }
+        }
+
+        return total;
+    }
+
+    // Get the index of a column, building it from the cells of the column if it isn't indexed yet
+    private ColumnSums getColumnSums(int column) {
+        ColumnSums sums = columnSums != null ? columnSums.get(column) : null;
+
+        if (sums == null) {
+            ColumnSums[] built = {ColumnSums.empty()};
+            cells.forEachInColumn(column, (row, unused, cell) -> {
+                if (cell.isNumeric()) {
+                    built[0] = built[0].with(row, cell.getNumericValue(), 1);
+                }
+            });
+
+            sums = built[0];
+            getColumnSumsForUpdate().put(column, sums);
+        }
+
+        return sums;
+    }
+
+    private synchronized boolean hasColumnSums() {
+        return columnSums != null && !columnSums.isEmpty();
+    }
+
+    // Move the value of the cell at the key from its previous cell to its new cell in the index of its column,
+    // a missing cell counts as a cell without a number
+    private void updateColumnSums(long key, Cell previous, Cell cell) {
+        updateColumnSums(key, previous != null && previous.isNumeric(), previous != null ? previous.getNumericValue() : 0, cell);
+    }
+
+    private synchronized void updateColumnSums(long key, boolean wasNumeric, double previousValue, Cell cell) {
+        boolean isNumeric = cell != null && cell.isNumeric();
+
+        if (!hasColumnSums() || (!wasNumeric && !isNumeric)
+                || (wasNumeric && isNumeric && previousValue == cell.getNumericValue())) {
+            return;
+        }
+
+        int row = CellCoordinate.row(key);
+        int column = CellCoordinate.column(key);
+        ColumnSums sums = columnSums.get(column);
+
+        if (sums != null) {
+            if (wasNumeric) {
+                sums = sums.with(row, previousValue, -1);
+            }
+            if (isNumeric) {
+                sums = sums.with(row, cell.getNumericValue(), 1);
+            }
+            getColumnSumsForUpdate().put(column, sums);
+        }
+    }
+
+    // Get column indexes that can be changed, the map shared with other spreadsheets is copied first
+    // The indexes themselves are immutable, so the copy shares them
+    private Map<Integer, ColumnSums> getColumnSumsForUpdate() {
+        releaseOwnershipIfCopied();
+        if (columnSums == null) {
+            columnSums = new HashMap<>();
+            ownsColumnSums = true;
+        } else if (!ownsColumnSums) {
+            columnSums = new HashMap<>(columnSums);
+            ownsColumnSums = true;
+        }
+
+        return columnSums;
+    }
+
+    private RangeIndex.Area getRangeArea(String rangeKey) {
+        return ranges != null ? ranges.getIndex().getArea(rangeKey) : null;
+    }
+
+    // Record the cell at the key as a user of the ranges it depends on
+    private void addRangeConsumer(Cell cell, long key) {
+        for (String rangeKey : cell.getDependsOnRanges()) {
+            addRangeConsumer(rangeKey, key);
+        }
+    }
+
+    // A range without a vertex in the topological order gets one at the end of the order
+    private void addRangeConsumer(String rangeKey, long key) {
+        getRangeConsumersForUpdate().computeIfAbsent(rangeKey, unused -> new DependencySet()).add(key);
+
+        if (!topologicalOrder.containsCell(toRangeVertex(rangeKey))) {
+            getTopologicalOrderForUpdate().addCell(toRangeVertex(rangeKey));
+        }
+    }
+
+    // Forget the cell at the key as a user of the ranges it depends on, a range without users is dropped, together
+    // with its vertex in the topological order
+    private void removeRangeConsumer(Cell cell, long key) {
+        for (String rangeKey : cell.getDependsOnRanges()) {
+            DependencySet consumers = rangeConsumers.get(rangeKey);
+
+            if (consumers != null && consumers.contains(key)) {
+                consumers = getRangeConsumersForUpdate().get(rangeKey);
+                consumers.remove(key);
+
+                if (consumers.isEmpty()) {
+                    rangeConsumers.remove(rangeKey);
+                    getTopologicalOrderForUpdate().removeCell(toRangeVertex(rangeKey));
+                }
+            }
+        }
+    }
+
+    // Get range consumers that can be changed, consumers shared with other spreadsheets are copied first
+    // The copy shares the key arrays of the consumers until they are changed
+    private Map<String, DependencySet> getRangeConsumersForUpdate() {
+        releaseOwnershipIfCopied();
+        if (!ownsRangeConsumers) {
+            Map<String, DependencySet> copy = new HashMap<>();
+
+            for (Map.Entry<String, DependencySet> entry : rangeConsumers.entrySet()) {
+                copy.put(entry.getKey(), new DependencySet(entry.getValue()));
+            }
+
+            rangeConsumers = copy;
+            ownsRangeConsumers = true;
+        }
+
+        return rangeConsumers;
+    }
+
+    // Get a dependency graph that can be changed, a graph shared with other spreadsheets is copied first
+    // The copy shares the lists of the graph until they are changed
+    private DependencyGraph getDependenciesForUpdate() {
+        releaseOwnershipIfCopied();
+        if (!ownsDependencies) {
+            dependencies = new DependencyGraph(dependencies);
+            ownsDependencies = true;
+        }
+
+        return dependencies;
+    }
+
+    // Get a topological order that can be changed, an order shared with other spreadsheets is copied first
+    private TopologicalOrder getTopologicalOrderForUpdate() {
+        releaseOwnershipIfCopied();
+        if (!ownsTopologicalOrder) {
+            topologicalOrder = new TopologicalOrder(topologicalOrder);
+            ownsTopologicalOrder = true;
+        }
+
+        return topologicalOrder;
+    }
+
+    // Build the topological order from scratch in a single sort, for a spreadsheet whose cells were added
+    // together with their dependencies instead of one dependency at a time
+    // The vertex of a used range is placed as soon as all the cells it contains are placed
+    public void rebuildTopologicalOrder() throws CircularReferenceException {
+        TopologicalOrder order = new TopologicalOrder();
+
+        topologicalSort(getCells().keySet(), order::addCell);
+
+        topologicalOrder = order;
+        ownsTopologicalOrder = true;
+    }
 
     // Get a cell from the spreadsheet by its ID
     public Cell getCellById(String cellId) {
         return cells.get(cellId);
     }
 
-    // Get the value of a cell in the spreadsheet by its ID
-    public Map<String, Cell> getCells() {
+    // Get a cell from the spreadsheet by its row (from 1) and column (from 0)
+    public Cell getCell(int row, int column) {
+        return cells.get(row, column);
+    }
+
+    // Apply the cell changes recorded by a version, a null cell means the cell was removed
+    // The cells are shared with the version that recorded them, so they are not owned by this spreadsheet
+    public void applyCellChanges(Map<String, Cell> cellChanges) {
+        for (Map.Entry<String, Cell> entry : cellChanges.entrySet()) {
+            if (entry.getValue() != null) {
+                addCell(entry.getKey(), entry.getValue());
+            } else {
+                removeCell(entry.getKey());
+            }
+        }
+    }
+
+    // Remove a cell from the spreadsheet and from the topological order, the removed cell depends on nothing anymore
+    private void removeCell(String cellId) {
+        long key = toKey(cellId);
+        Cell cell = cells.get(CellCoordinate.row(key), CellCoordinate.column(key));
+
+        if (cell != null) {
+            ownedCells.remove(cell);
+            removeRangeConsumer(cell, key);
+            updateColumnSums(key, cell, null);
+            getDependenciesForUpdate().removeDependencies(key);
+        }
+        cells = cells.without(CellCoordinate.row(key), CellCoordinate.column(key));
+        getTopologicalOrderForUpdate().removeCell(cellId);
+    }
+
+    // Get the persistent grid of the cells, used to compare versions of the spreadsheet
+    public CellGrid getCellGrid() {
         return cells;
     }
 
+    // Get the dependencies between the cells, used to compare versions of the spreadsheet
+    // The graph must not be changed, it may be shared with other spreadsheets
+    public DependencyGraph getDependencyGraph() {
+        return dependencies;
+    }
+
+    // Get the keys of the cells that the cell depends on directly, without the ranges it uses
+    public long[] getDependencyKeys(String cellId) {
+        return dependencies.getDependencyKeys(toKey(cellId));
+    }
+
+    // Check if a cell depends directly on another cell
+    public boolean dependsOn(String cellId, String dependencyId) {
+        return dependencies.dependsOn(toKey(cellId), toKey(dependencyId));
+    }
+
+    // Replace the dependencies of a cell on other cells, for cells that are added together with their dependencies
+    // The topological order isn't updated, it is rebuilt once all the cells are added
+    public void setDependencies(String cellId, long[] dependencyKeys) {
+        getDependenciesForUpdate().setDependencies(toKey(cellId), dependencyKeys);
+    }
+
+    // Apply the dependency changes recorded by a version, after its cell changes
+    public void applyDependencyChanges(Map<String, long[]> dependencyChanges) {
+        for (Map.Entry<String, long[]> entry : dependencyChanges.entrySet()) {
+            setDependencies(entry.getKey(), entry.getValue());
+        }
+    }
+
+    private static List<String> toCellIds(long[] keys) {
+        List<String> cellIds = new ArrayList<>(keys.length);
+
+        for (long key : keys) {
+            cellIds.add(CellCoordinate.toCellId(key));
+        }
+
+        return cellIds;
+    }
+
+    // Get a read-only view of the cells in the spreadsheet
+    public Map<String, Cell> getCells() {
+        return cells.asMap();
+    }
+
     // Get the value of a cell in the spreadsheet by its ID
     public int getVersionNumber() {
         return versionNumber;
@@ -87,6 +709,16 @@ public class Spreadsheet implements Serializable {
         this.versionNumber = versionNumber;
     }
 
+    public CellValueStorage getCellValueStorage() {
+        return cellValueStorage;
+    }
+
+    // Cells that already exist keep their values where they are, a cell moves to the new storage when it is next
+    // created or copied for a change
+    public void setCellValueStorage(CellValueStorage cellValueStorage) {
+        this.cellValueStorage = cellValueStorage;
+    }
+
     // Get the value of a cell in the spreadsheet by its ID
     public void setName(String name) {
         this.name = name;
@@ -114,43 +746,254 @@ public class Spreadsheet implements Serializable {
 
     // Recalculate the effective value of each cell in the spreadsheet according to the topological sort and checks for circular references
     public void recalculateEffectiveCellValues(int currentVersion) throws CircularReferenceException {
-        List<String> sortedCells = topologicalSort();
+        Spreadsheet previous = SpreadsheetLink.bind(this);
+        try {
+            recalculateCells(topologicalSort(), currentVersion);
+        } finally {
+            SpreadsheetLink.restore(previous);
+        }
+    }
+
+    // Recalculate only the changed cell and the cells that depend on it (directly or indirectly)
+    // The cells are evaluated in the maintained topological order, circular references are already rejected
+    // when dependencies are added
+    // A dependent cell is evaluated only if at least one of the cells it depends on got a new value,
+    // so the propagation stops at cells whose value stayed the same
+    public void recalculateEffectiveCellValues(String changedCellId, Object previousValue, int currentVersion) throws CircularReferenceException {
+        List<String> sortedCells = topologicalOrder.sort(collectDependentCells(changedCellId));
+        Set<String> changedCells = new HashSet<>();
+        Set<String> rangeChangedCells = new HashSet<>(); // Cells that use a range with a changed cell
+
+        Spreadsheet previous = SpreadsheetLink.bind(this);
+        try {
+            for (String cellId : sortedCells) {
+                // Skip cells whose inputs all kept their values
+                if (needsRecalculation(cellId, changedCellId, changedCells, rangeChangedCells)) {
+                    applyAndTrackChange(cellId, evaluateCell(cellId), changedCellId, previousValue, currentVersion, changedCells, rangeChangedCells);
+                }
+            }
+        } finally {
+            SpreadsheetLink.restore(previous);
+        }
+    }
+
+    // Recalculate the changed cell and its dependents level by level, like the incremental recalculation
+    // The cells of a level don't depend on each other, so wide levels are evaluated in parallel
+    // The new values are stored once the whole level is evaluated, since storing a value may copy the cell
+    public void recalculateEffectiveCellValuesInParallel(String changedCellId, Object previousValue, int currentVersion) throws CircularReferenceException {
+        List<String> sortedCells = topologicalOrder.sort(collectDependentCells(changedCellId));
+        Set<String> changedCells = new HashSet<>();
+        Set<String> rangeChangedCells = new HashSet<>(); // Cells that use a range with a changed cell
+
+        Spreadsheet previous = SpreadsheetLink.bind(this);
+        try {
+            for (List<String> level : splitIntoLevels(sortedCells)) {
+                List<String> cellsToRecalculate = new ArrayList<>();
+                Map<String, Object> newValues = new ConcurrentHashMap<>();
+
+                // Skip cells whose inputs all kept their values, the previous levels are already done
+                for (String cellId : level) {
+                    if (needsRecalculation(cellId, changedCellId, changedCells, rangeChangedCells)) {
+                        cellsToRecalculate.add(cellId);
+                    }
+                }
+
+                recalculateLevel(cellsToRecalculate, cellId -> newValues.put(cellId, evaluateCell(cellId)));
+
+                for (String cellId : cellsToRecalculate) {
+                    applyAndTrackChange(cellId, newValues.get(cellId), changedCellId, previousValue, currentVersion, changedCells, rangeChangedCells);
+                }
+            }
+        } finally {
+            SpreadsheetLink.restore(previous);
+        }
+    }
+
+    // Check if a cell has to be evaluated again: it is the changed cell, one of the cells it depends on got a new
+    // value or it uses a range with a cell that got a new value
+    private boolean needsRecalculation(String cellId, String changedCellId, Set<String> changedCells, Set<String> rangeChangedCells) {
+        return cellId.equals(changedCellId) || rangeChangedCells.contains(cellId) || isDependentOnAny(cellId, changedCells);
+    }
+
+    // Store the new value of a cell and add it to the changed cells if its value changed
+    // The changed cell is compared to its value from before the update
+    // The cells that use a range containing a changed cell are found through the range index and marked as well
+    private void applyAndTrackChange(String cellId, Object newValue, String changedCellId, Object previousValue,
+                                     int currentVersion, Set<String> changedCells, Set<String> rangeChangedCells) {
+        boolean changed = cellId.equals(changedCellId) ? !Objects.equals(newValue, previousValue) : !cells.get(cellId).hasEffectiveValue(newValue);
+
+        applyCellValue(cellId, newValue, currentVersion);
+
+        if (changed) {
+            changedCells.add(cellId);
+
+            long key = toKey(cellId);
+            forEachRangeConsumer(CellCoordinate.row(key), CellCoordinate.column(key),
+                    consumerKey -> rangeChangedCells.add(CellCoordinate.toCellId(consumerKey)));
+        }
+    }
+
+    // Split topologically sorted cells into dependency levels, a cell's level is one more than the highest level
+    // of the cells it depends on, so the cells of a level don't depend on each other
+    // The levels are pushed from every cell to its dependents, the cells that use a range containing it included,
+    // so a range is never expanded into its cells
+    private List<List<String>> splitIntoLevels(List<String> sortedCells) {
+        Map<String, Integer> levels = new HashMap<>();
+        List<List<String>> cellsByLevel = new ArrayList<>();
 
         for (String cellId : sortedCells) {
-            Cell cell = cells.get(cellId);
+            // All the cells this cell depends on come before it, so its level is final
+            int level = levels.getOrDefault(cellId, 0);
+            long key = toKey(cellId);
 
-            Object oldValue = cell.getEffectiveValue();  // Store the old value
+            dependencies.forEachDependent(key, dependentKey -> levels.merge(CellCoordinate.toCellId(dependentKey), level + 1, Math::max));
+            forEachRangeConsumer(CellCoordinate.row(key), CellCoordinate.column(key),
+                    consumerKey -> levels.merge(CellCoordinate.toCellId(consumerKey), level + 1, Math::max));
 
-            try {
-                cell.setEffectiveValue();
-                // If the value has changed, update the last updated version
-                if (!cell.getEffectiveValue().equals(oldValue)) {
-                    cell.setLastUpdatedVersion(currentVersion);
+            if (level == cellsByLevel.size()) {
+                cellsByLevel.add(new ArrayList<>());
+            }
+            cellsByLevel.get(level).add(cellId);
+        }
+
+        return cellsByLevel;
+    }
+
+    // Recalculate the cells of a single level, on the fork/join pool if the level is wide enough
+    private void recalculateLevel(List<String> cellIds, LevelRecalculationTask.CellRecalculation recalculation) throws CircularReferenceException {
+        if (cellIds.size() < PARALLEL_THRESHOLD) {
+            for (String cellId : cellIds) {
+                recalculation.recalculate(cellId);
+            }
+            return;
+        }
+
+        AtomicReference<CircularReferenceException> failure = new AtomicReference<>();
+        ForkJoinPool.commonPool().invoke(new LevelRecalculationTask(this, cellIds, 0, cellIds.size(), recalculation, failure));
+
+        if (failure.get() != null) {
+            throw failure.get();
+        }
+    }
+
+    // Check if the cell depends on at least one of the given cells
+    private boolean isDependentOnAny(String cellId, Set<String> cellIds) {
+        if (cellIds.isEmpty()) {
+            return false;
+        }
+
+        for (long dependencyKey : dependencies.getDependencyKeys(toKey(cellId))) {
+            if (cellIds.contains(CellCoordinate.toCellId(dependencyKey))) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    // Evaluate the given cells in order and update the last updated version of the cells whose value changed
+    private void recalculateCells(List<String> sortedCells, int currentVersion) throws CircularReferenceException {
+        for (String cellId : sortedCells) {
+            applyCellValue(cellId, evaluateCell(cellId), currentVersion);
+        }
+    }
+
+    // Evaluate a single cell without changing it
+    private Object evaluateCell(String cellId) throws CircularReferenceException {
+        try {
+            return cells.get(cellId).calculateEffectiveValue();
+        } catch (Exception e) {
+            throw new CircularReferenceException("Error when recalculating spreadsheet: " + e.getMessage());
+        }
+    }
+
+    // Store the new value of a cell and update its last updated version, only if the value changed
+    // A cell that keeps its value is never copied, so it stays shared with the previous versions
+    private void applyCellValue(String cellId, Object newValue, int currentVersion) {
+        if (cells.get(cellId).hasEffectiveValue(newValue)) {
+            return;
+        }
+
+        Cell cell = getCellForUpdate(cellId);
+        boolean wasNumeric = cell.isNumeric();
+        double previousValue = cell.getNumericValue();
+        cell.setEffectiveValue(newValue);
+        cell.setLastUpdatedVersion(currentVersion);
+        updateColumnSums(toKey(cellId), wasNumeric, previousValue, cell);
+    }
+
+    // Collect the given cell and every cell that depends on it, following the dependents in the graph
+    public Set<String> collectDependentCells(String cellId) {
+        Set<String> visited = new HashSet<>();
+        Deque<String> stack = new ArrayDeque<>();
+
+        if (cells.get(cellId) != null) {
+            stack.push(cellId);
+            visited.add(cellId);
+        }
+
+        // The dependent cell is looked up by its key, its ID is built only when it exists
+        LongConsumer visit = dependentKey -> {
+            if (cells.get(dependentKey) != null) {
+                String dependentCellId = CellCoordinate.toCellId(dependentKey);
+
+                if (visited.add(dependentCellId)) {
+                    stack.push(dependentCellId);
                 }
-            } catch (Exception e) {
-                throw new CircularReferenceException("Error when recalculating spreadsheet: " + e.getMessage());
             }
+        };
+
+        while (!stack.isEmpty()) {
+            long key = toKey(stack.pop());
+
+            dependencies.forEachDependent(key, visit);
+            forEachRangeConsumer(CellCoordinate.row(key), CellCoordinate.column(key), visit);
         }
+
+        return visited;
     }
 
     // Perform a topological sort on the cells to determine the order in which they should be recalculated
+    // Unlike the maintained topological order, this sort is built from scratch and is used to verify the sheet
     public List<String> topologicalSort() throws CircularReferenceException {
+        return topologicalSort(getCells().keySet(), vertex -> { });
+    }
+
+    // Perform a topological sort on a subset of the cells, only edges between cells of the subset are considered
+    // A used range is a vertex between the cells it contains and the cells that use it: it is released once all its
+    // cells are sorted, and then counts as a single sorted dependency of each of its users
+    // The sorted cells and the vertices of the released ranges are reported in order, a range without cells to sort is
+    // released first
+    private List<String> topologicalSort(Set<String> cellIds, Consumer<String> sortedVertices) throws CircularReferenceException {
         Map<String, Integer> inDegree = new HashMap<>();
+        Map<String, Integer> rangeInDegree = new HashMap<>(); // Unsorted cells of each used range
         Queue<String> queue = new LinkedList<>();
         List<String> sortedCells = new ArrayList<>();
 
-        // Initialize in-degree of each cell based on "DependsOnThem"
-        for (String cellId : cells.keySet()) {
+        // Initialize in-degree of each cell
+        for (String cellId : cellIds) {
             inDegree.put(cellId, 0);
         }
 
-        // Calculate in-degrees based on "DependsOnMe"
-        for (Map.Entry<String, Cell> entry : cells.entrySet()) {
-            String cellId = entry.getKey();
-            Cell cell = entry.getValue();
+        // Calculate in-degrees based on the dependents of each cell
+        for (String cellId : cellIds) {
+            long key = toKey(cellId);
+
+            dependencies.forEachDependent(key, dependentKey ->
+                    inDegree.computeIfPresent(CellCoordinate.toCellId(dependentKey), (dependentId, degree) -> degree + 1));
 
-            for (String dependency : cell.getDependsOnMe().keySet()) {
-                inDegree.put(dependency, inDegree.get(dependency) + 1);
+            forEachUsedRangeContaining(CellCoordinate.row(key), CellCoordinate.column(key),
+                    rangeKey -> rangeInDegree.merge(rangeKey, 1, Integer::sum));
+        }
+
+        // Every range with cells to sort is one more dependency of each of its users
+        for (String rangeKey : rangeInDegree.keySet()) {
+            forEachConsumer(rangeKey, consumerKey -> inDegree.computeIfPresent(CellCoordinate.toCellId(consumerKey), (consumerId, degree) -> degree + 1));
+        }
+
+        for (String rangeKey : rangeConsumers.keySet()) {
+            if (!rangeInDegree.containsKey(rangeKey)) {
+                sortedVertices.accept(toRangeVertex(rangeKey));
             }
         }
 
@@ -165,31 +1008,59 @@ public class Spreadsheet implements Serializable {
         while (!queue.isEmpty()) {
             String cellId = queue.poll();
             sortedCells.add(cellId);
+            sortedVertices.accept(cellId);
+
+            long key = toKey(cellId);
 
-            Cell cell = cells.get(cellId);
+            dependencies.forEachDependent(key, dependentKey -> releaseDependency(CellCoordinate.toCellId(dependentKey), inDegree, queue));
 
-            for (String dependentCellId : cell.getDependsOnMe().keySet()) {
-                inDegree.put(dependentCellId, inDegree.get(dependentCellId) - 1);
-                if (inDegree.get(dependentCellId) == 0) {
-                    queue.add(dependentCellId);
+            // Release the users of the ranges whose cells are now all sorted
+            forEachUsedRangeContaining(CellCoordinate.row(key), CellCoordinate.column(key), rangeKey -> {
+                if (rangeInDegree.merge(rangeKey, -1, Integer::sum) == 0) {
+                    sortedVertices.accept(toRangeVertex(rangeKey));
+                    forEachConsumer(rangeKey, consumerKey -> releaseDependency(CellCoordinate.toCellId(consumerKey), inDegree, queue));
                 }
-            }
+            });
         }
 
         // If the number of sorted cells does not match the number of cells, a circular reference exists
-        if (sortedCells.size() != cells.size()) {
+        if (sortedCells.size() != cellIds.size()) {
             throw new CircularReferenceException("Circular reference detected in the spreadsheet.");
         }
 
         return sortedCells;
     }
 
+    // Count one sorted dependency of a cell, the cell is queued once all its dependencies are sorted
+    private static void releaseDependency(String cellId, Map<String, Integer> inDegree, Queue<String> queue) {
+        Integer degree = inDegree.get(cellId);
+
+        if (degree != null) {
+            inDegree.put(cellId, degree - 1);
+            if (degree == 1) {
+                queue.add(cellId);
+            }
+        }
+    }
+
     // Clear the expression of a cell, effectively resetting it
     public void clearCellValue(String cellId) {
-        Cell cell = cells.get(cellId);
+        setCellExpression(cellId, null);  // Clear the expression, effectively resetting the cell
+    }
+
+    // Set the expression of a cell and evaluate it in this spreadsheet, the totals of the ranges that contain the cell follow its value
+    public void setCellExpression(String cellId, Expression expression) {
+        Cell cell = getCellForUpdate(cellId);
         if (cell != null) {
-            cell.setExpression(null);  // Clear the expression, effectively resetting the cell
-            cells.put(cellId, cell);   // Update the map with the cleared cell
+            boolean wasNumeric = cell.isNumeric();
+            double previousValue = cell.getNumericValue();
+            Spreadsheet previous = SpreadsheetLink.bind(this);
+            try {
+                cell.setExpression(expression);
+            } finally {
+                SpreadsheetLink.restore(previous);
+            }
+            updateColumnSums(toKey(cellId), wasNumeric, previousValue, cell);
         }
     }
 
@@ -197,13 +1068,17 @@ public class Spreadsheet implements Serializable {
     // It throws an InvalidColumnException if any of the specified columns contain non-numerical data
     public  Map<String,String> sort(String range, List<String> columnsToSortBy) throws InvalidColumnException {
         // Extract columns and rows from the specified range
-        int[] rows = extractRows(range);
+        CellCoordinate[] area = CellCoordinate.parseArea(range);
+        if (area == null) {
+            throw new IllegalArgumentException("Invalid range format: " + range + ". Use <top-left-cell>..<bottom-right-cell> format.");
+        }
+        int[] rows = {area[0].getRow(), area[1].getRow()};
 
         // Extract rows within the specified range
         List<SpreadsheetRow> rowsToSort = getRowsInRange(rows[0], rows[1]);
 
         // Validate that all columns to sort by are numerical
-        validateNumericalColumns(rowsToSort, columnsToSortBy, range);
+        validateNumericalColumns(columnsToSortBy, area);
 
         // Sort rows based on the specified columns
         rowsToSort.sort((row1, row2) -> {
@@ -222,47 +1097,31 @@ public class Spreadsheet implements Serializable {
     }
 
     // Validate that specified columns contain only numerical data within the specified range
-    private void validateNumericalColumns(List<SpreadsheetRow> rowsToSort, List<String> columnsToSortBy, String range) throws InvalidColumnException {
-        // Extract start and end columns from the range
-        String[] columnsRange = extractStartAndEndColumns(range);
-        String startColumn = columnsRange[0];
-        String endColumn = columnsRange[1];
-
-        startColumn = startColumn.toUpperCase();
-        endColumn = endColumn.toUpperCase();
-
-        // Convert column letters to indices for comparison
-        int startColumnIndex = convertColumnLetterToIndex(startColumn);
-        int endColumnIndex = convertColumnLetterToIndex(endColumn);
-
-        // Extract start and end rows from the range
-        int startRow = extractStartRow(range);
-        int endRow = extractEndRow(range);
+    private void validateNumericalColumns(List<String> columnsToSortBy, CellCoordinate[] area) throws InvalidColumnException {
+        // Start and end columns and rows of the range
+        int startColumnIndex = area[0].getColumn();
+        int endColumnIndex = area[1].getColumn();
+        int startRow = area[0].getRow();
+        int endRow = area[1].getRow();
 
         // Iterate through the specified columns
         for (String column : columnsToSortBy) {
-            String cleanColumn = stripColumnPrefix(column);             // Strip "Column" prefix
-            int columnIndex = convertColumnLetterToIndex(cleanColumn); // Convert column letter to index
+            String cleanColumn = stripColumnPrefix(column);                // Strip "Column" prefix
+            int columnIndex = CellCoordinate.parseColumn(cleanColumn); // Convert column letter to index
 
             // Ensure the column is within the specified range
             if (columnIndex < startColumnIndex || columnIndex > endColumnIndex) {
                 continue; // Skip columns outside the range
             }
 
-            // Check each row in the specified range
+            // Check each row in the specified range, the cells are read straight from the grid
             for (int rowIndex = startRow; rowIndex <= endRow; rowIndex++) {
-                SpreadsheetRow row = getRow(rowIndex); // Method to get the row by index
-                if (row == null) {
-                    continue; // Skip if row is not present
-                }
-
-                Cell cell = row.getCell(cleanColumn, rowIndex); // Method to get the cell by column and row
+                Cell cell = cells.get(rowIndex, columnIndex);
                 if (cell == null) {
                     throw new InvalidColumnException(cleanColumn);
                 }
 
-                Object effectiveValue = cell.getEffectiveValue(); // Get the effective value of the cell
-                if (!(effectiveValue instanceof Number)) {
+                if (!cell.isNumeric()) { // The type of the effective value is checked without boxing it
                     throw new InvalidColumnException(cleanColumn);
                 }
 
@@ -270,15 +1129,6 @@ public class Spreadsheet implements Serializable {
         }
     }
 
-    // Helper method to convert column letter to index
-    private int convertColumnLetterToIndex(String columnLetter) {
-        int columnIndex = 0;
-        for (char ch : columnLetter.toCharArray()) {
-            columnIndex = columnIndex * 26 + (ch - 'A' + 1);
-        }
-        return columnIndex;
-    }
-
     // Helper method to strip "Column" prefix and extract column letter
     private String stripColumnPrefix(String column) {
         if (column.startsWith("Column")) {
@@ -287,44 +1137,6 @@ public class Spreadsheet implements Serializable {
         return column.trim(); // Return as is if no prefix
     }
 
-    // Extract the starting and ending columns from the given range
-    private String[] extractStartAndEndColumns(String tableArea) {
-        String[] areaParts = tableArea.split("\\.\\.");
-        String topLeftCell = areaParts[0].trim();
-        String bottomRightCell = areaParts[1].trim();
-        String startColumn = topLeftCell.replaceAll("\\d", "");
-        String endColumn = bottomRightCell.replaceAll("\\d", "");
-
-        return new String[]{startColumn, endColumn};
-    }
-
-    // Helper method to extract start row from the range (assuming format is like "A3..V9")
-    private int extractStartRow(String range) {
-        String[] rangeParts = range.split("\\.\\.");
-        String topLeftCell = rangeParts[0].trim();
-        return Integer.parseInt(topLeftCell.replaceAll("\\D", "")); // Extract row number
-    }
-
-    // Helper method to extract end row from the range
-    private int extractEndRow(String range) {
-        String[] rangeParts = range.split("\\.\\.");
-        String bottomRightCell = rangeParts[1].trim();
-        return Integer.parseInt(bottomRightCell.replaceAll("\\D", "")); // Extract row number
-    }
-
-    // Extract the rows from the given range
-    private int[] extractRows(String tableArea) {
-        String[] areaParts = tableArea.split("\\.\\.");
-        String topLeftCell = areaParts[0].trim();
-        String bottomRightCell = areaParts[1].trim();
-
-        // Extract row numbers
-        int startRow = Integer.parseInt(topLeftCell.replaceAll("\\D", ""));
-        int endRow = Integer.parseInt(bottomRightCell.replaceAll("\\D", ""));
-
-        return new int[]{startRow, endRow};
-    }
-
     // Get the rows within the specified range
     private List<SpreadsheetRow> getRowsInRange(int startRow, int endRow) {
         List<SpreadsheetRow> rowsInRange = new ArrayList<>();
@@ -342,6 +1154,16 @@ public class Spreadsheet implements Serializable {
 
     // Update the spreadsheet with the sorted rows
     private  Map<String, String> updateSpreadsheetWithSortedRows(List<SpreadsheetRow> sortedRows, int startRow, int endRow) {
+        // Keep the dependencies of the cells to move, removing the old rows drops them
+        Map<String, long[]> movedDependencies = new HashMap<>();
+        Map<String, long[]> movedDependents = new HashMap<>();
+        for (SpreadsheetRow row : sortedRows) {
+            for (String cellId : row.getCells().keySet()) {
+                movedDependencies.put(cellId, dependencies.getDependencyKeys(toKey(cellId)));
+                movedDependents.put(cellId, dependencies.getDependentKeys(toKey(cellId)));
+            }
+        }
+
         // Remove old rows from the spreadsheet
         removeOldRows(startRow, endRow);
         Map<String, String> cellIdMapping = new HashMap<>();
@@ -355,24 +1177,52 @@ public class Spreadsheet implements Serializable {
             // Merge the row-level ID mappings into the overall mapping
             cellIdMapping.putAll(rowIdMapping);
         }
+
+        moveDependencies(movedDependencies, movedDependents, cellIdMapping);
         return cellIdMapping;
     }
 
+    // Give the moved cells their dependencies back under their new IDs, on both sides of every dependency
+    private void moveDependencies(Map<String, long[]> movedDependencies, Map<String, long[]> movedDependents, Map<String, String> cellIdMapping) {
+        DependencyGraph graph = getDependenciesForUpdate();
+
+        for (Map.Entry<String, long[]> entry : movedDependents.entrySet()) {
+            for (long dependentKey : entry.getValue()) {
+                graph.removeDependency(dependentKey, toKey(entry.getKey()));
+            }
+        }
+
+        for (Map.Entry<String, long[]> entry : movedDependencies.entrySet()) {
+            long key = toKey(cellIdMapping.get(entry.getKey()));
+
+            for (long dependencyKey : entry.getValue()) {
+                graph.addDependency(key, movedKey(dependencyKey, cellIdMapping));
+            }
+            for (long dependentKey : movedDependents.get(entry.getKey())) {
+                graph.addDependency(movedKey(dependentKey, cellIdMapping), key);
+            }
+        }
+    }
+
+    // Get the key of a cell after the sort, the cells outside the sorted rows keep their keys
+    private static long movedKey(long key, Map<String, String> cellIdMapping) {
+        String movedCellId = cellIdMapping.get(CellCoordinate.toCellId(key));
+
+        return movedCellId != null ? toKey(movedCellId) : key;
+    }
+
     // Remove old rows to be changed after sort from the spreadsheet
     private void removeOldRows(int startRow, int endRow) {
         // Remove all cells that belong to the rows in the specified range
         List<String> cellsToRemove = new ArrayList<>();
 
-        for (String cellId : cells.keySet()) { // Iterate through all cells in the spreadsheet
-            int rowIndex = extractRowNumberFromCellId(cellId);
-            if (rowIndex >= startRow && rowIndex <= endRow) {
-                cellsToRemove.add(cellId);  // Mark cells for removal
-            }
+        for (int rowIndex = startRow; rowIndex <= endRow; rowIndex++) { // Only the rows in the range are visited
+            cells.forEachInRow(rowIndex, (row, column, cell) -> cellsToRemove.add(CellCoordinate.toCellId(row, column)));
         }
 
         // Remove the old cells
         for (String cellId : cellsToRemove) {
-            cells.remove(cellId);
+            removeCell(cellId);
         }
     }
 
@@ -404,7 +1254,7 @@ public class Spreadsheet implements Serializable {
 
         // Update the spreadsheet's internal cell map with the new cell IDs
         for (Map.Entry<String, Cell> updatedEntry : updatedCells.entrySet()) {
-            this.cells.put(updatedEntry.getKey(), updatedEntry.getValue());
+            addCell(updatedEntry.getKey(), updatedEntry.getValue());
         }
         return idMapping;
     }
@@ -413,17 +1263,8 @@ public class Spreadsheet implements Serializable {
     public SpreadsheetRow getRow(int rowIndex) {
         SpreadsheetRow row = new SpreadsheetRow(rowIndex); // Create a new SpreadsheetRow object for the specified row index
 
-        // Iterate through all cells in the spreadsheet
-        for (Map.Entry<String, Cell> entry : cells.entrySet()) {
-            String cellId = entry.getKey();
-            Cell cell = entry.getValue();
-
-            // Extract row number from cell ID
-            int cellRowIndex = extractRowNumberFromCellId(cellId);
-            if (cellRowIndex == rowIndex) {
-                row.addCell(cellId, cell); // Add cell to the row
-            }
-        }
+        // Iterate through the cells of the row in the grid
+        cells.forEachInRow(rowIndex, (cellRow, column, cell) -> row.addCell(CellCoordinate.toCellId(cellRow, column), cell));
 
         return row;
     }
@@ -444,11 +1285,8 @@ public class Spreadsheet implements Serializable {
         return column.toString(); // Return the column portion (e.g., "C" from "C3")
     }
 
-    // Extract the row number from the cell ID
-    private int extractRowNumberFromCellId(String cellId) {
-        // Extract digits from the cellId
-        String rowNumberStr = cellId.replaceAll("[^0-9]", "");
-        return Integer.parseInt(rowNumberStr);
+    public TopologicalOrder getTopologicalOrder() {
+        return topologicalOrder;
     }
 
     public String getName() {   return name; }
@@ -470,12 +1308,12 @@ public class Spreadsheet implements Serializable {
         if (this == o) return true;
         if (o == null || getClass() != o.getClass()) return false;
         Spreadsheet that = (Spreadsheet) o;
-        return rows == that.rows && columns == that.columns && columnWidth == that.columnWidth && versionNumber == that.versionNumber && Objects.equals(cells, that.cells) && Objects.equals(name, that.name);
+        return rows == that.rows && columns == that.columns && columnWidth == that.columnWidth && versionNumber == that.versionNumber && Objects.equals(getCells(), that.getCells()) && Objects.equals(name, that.name);
     }
 
     @Override
     public int hashCode() {
-        return Objects.hash(cells, rows, columns, columnWidth, name, versionNumber);
+        return Objects.hash(getCells(), rows, columns, columnWidth, name, versionNumber);
     }
 
 }
@@ -0,0 +1,42 @@
+package spreadsheet;
+
+import java.util.function.Supplier;
+
+// Link of the formulas of a versions manager to the spreadsheet they are evaluated in
+// A spreadsheet binds itself to the evaluating thread for the duration of an evaluation (the fork of a new version
+// included) and restores the previous binding after it, so a nested evaluation doesn't end the outer one and the
+// evaluations of other threads don't see it; the fork/join workers of a parallel recalculation bind it for their part
+// A formula only references cells of its own spreadsheet, so one binding per thread serves the links of all managers
+// While nothing is bound, like when a formula is only parsed, the link falls back to the given supplier
+// Resolving the spreadsheet is a thread-local read on every evaluation of a reference or a range, not a field read
+public final class SpreadsheetLink implements Supplier<Spreadsheet> {
+    private static final ThreadLocal<Spreadsheet> EVALUATED = new ThreadLocal<>(); // Null while nothing is evaluated
+    private final Supplier<Spreadsheet> fallback;
+
+    public SpreadsheetLink(Supplier<Spreadsheet> fallback) {
+        this.fallback = fallback;
+    }
+
+    @Override
+    public Spreadsheet get() {
+        Spreadsheet bound = EVALUATED.get();
+
+        return bound != null ? bound : fallback.get();
+    }
+
+    // Bind the spreadsheet to the current thread, returns the previous binding to restore when the evaluation ends
+    static Spreadsheet bind(Spreadsheet spreadsheet) {
+        Spreadsheet previous = EVALUATED.get();
+        EVALUATED.set(spreadsheet);
+
+        return previous;
+    }
+
+    static void restore(Spreadsheet previous) {
+        if (previous == null) {
+            EVALUATED.remove();
+        } else {
+            EVALUATED.set(previous);
+        }
+    }
+}
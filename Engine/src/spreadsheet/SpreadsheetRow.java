@@ -1,6 +1,7 @@
 package spreadsheet;
 
 import cells.Cell;
+import enums.ErrorValue;
 
 import java.util.HashMap;
 import java.util.Map;
@@ -23,8 +24,12 @@ public class SpreadsheetRow {
 
     // Method to get a cell using a combined column-row key (key= cellId)
     public Cell getCell(String column, int row) {
-        String key = column + row;  // Example: "C3"
-        return cells.get(key);
+        int columnIndex = CellCoordinate.parseColumn(column);
+        if (columnIndex < 0) {
+            return null;
+        }
+
+        return cells.get(CellCoordinate.toCellId(row, columnIndex));  // Example: "C3", built once and cached
     }
 
     public boolean hasCell(String column) {
@@ -52,9 +57,16 @@ public class SpreadsheetRow {
             throw new IllegalArgumentException("Column " + column + " does not exist in one of the rows.");
         }
 
-        // Extract effective values from cells
+        // Compare numbers as primitives, without boxing the effective values
+        if (thisCell.isNumeric() && otherCell.isNumeric()) {
+            return Double.compare(thisCell.getNumericValue(), otherCell.getNumericValue());
+        }
+
+        // Extract effective values from cells, errors are compared by their text like strings
         Object value1 = thisCell.getEffectiveValue();
         Object value2 = otherCell.getEffectiveValue();
+        if (value1 instanceof ErrorValue) value1 = value1.toString();
+        if (value2 instanceof ErrorValue) value2 = value2.toString();
 
         // Handle null values
         if (value1 == "" && value2 == "") return 0;
@@ -0,0 +1,191 @@
+package spreadsheet;
+
+import exceptions.CircularReferenceException;
+
+import java.io.Serializable;
+import java.util.*;
+
+// Keeps the cells of a spreadsheet in a dependency order that survives between edits
+// Every cell comes after all the cells it depends on, new edges are inserted with the Pearce-Kelly algorithm,
+// which only reorders the cells between the two ends of an edge that breaks the order
+// A used named range is a vertex of the order as well, placed after the cells it contains and before its users
+public class TopologicalOrder implements Serializable {
+    private final Map<String, Integer> positions;   // Position of every cell in the order
+    private final List<String> cellsByPosition;      // The cells in order, removed cells leave a null hole
+    private int holes;                               // Number of null holes in cellsByPosition
+
+    public TopologicalOrder() {
+        this.positions = new HashMap<>();
+        this.cellsByPosition = new ArrayList<>();
+        this.holes = 0;
+    }
+
+    // Copy constructor
+    public TopologicalOrder(TopologicalOrder original) {
+        this.positions = new HashMap<>(original.positions);
+        this.cellsByPosition = new ArrayList<>(original.cellsByPosition);
+        this.holes = original.holes;
+    }
+
+    // Add a cell without edges at the end of the order, if it isn't already part of it
+    public void addCell(String cellId) {
+        if (!positions.containsKey(cellId)) {
+            positions.put(cellId, cellsByPosition.size());
+            cellsByPosition.add(cellId);
+        }
+    }
+
+    // Remove a cell from the order, removing a cell never breaks the order of the other cells
+    public void removeCell(String cellId) {
+        Integer position = positions.remove(cellId);
+
+        if (position != null) {
+            cellsByPosition.set(position, null);
+            holes++;
+
+            // Compact the order once most of it is holes
+            if (holes > cellsByPosition.size() / 2) {
+                compact();
+            }
+        }
+    }
+
+    // Update the order for a new edge where the dependent cell depends on the dependency cell
+    // Throws a CircularReferenceException (and leaves the order untouched) if the edge closes a cycle
+    // The edges of the cells are read from the spreadsheet, the edges to and from the range vertices included
+    public void addEdge(String dependencyId, String dependentId, Spreadsheet spreadsheet) throws CircularReferenceException {
+        addCell(dependencyId);
+        addCell(dependentId);
+
+        if (dependencyId.equals(dependentId)) {
+            throw new CircularReferenceException("Circular reference detected: " + dependentId + " depends on itself");
+        }
+
+        int upperBound = positions.get(dependencyId);
+        int lowerBound = positions.get(dependentId);
+
+        // The dependency already comes before the dependent cell, nothing to reorder
+        if (upperBound < lowerBound) {
+            return;
+        }
+
+        // Cells reachable from the dependent cell that are placed before the dependency cell
+        List<String> forward = collectAffected(dependentId, dependencyId, lowerBound, upperBound, true, spreadsheet);
+        // Cells that reach the dependency cell that are placed after the dependent cell
+        List<String> backward = collectAffected(dependencyId, null, lowerBound, upperBound, false, spreadsheet);
+
+        reorder(backward, forward);
+    }
+
+    // Collect the cells reachable from the start cell that are placed within the bounds, following the dependents
+    // (forward) or the dependencies (backward) of each cell
+    private List<String> collectAffected(String startCellId, String cycleCellId, int lowerBound, int upperBound,
+                                         boolean forward, Spreadsheet spreadsheet) throws CircularReferenceException {
+        List<String> affected = new ArrayList<>();
+        Set<String> visited = new HashSet<>();
+        Deque<String> stack = new ArrayDeque<>();
+
+        stack.push(startCellId);
+        visited.add(startCellId);
+
+        while (!stack.isEmpty()) {
+            String cellId = stack.pop();
+            affected.add(cellId);
+
+            List<String> neighbours = forward ? spreadsheet.getOrderSuccessors(cellId) : spreadsheet.getOrderPredecessors(cellId);
+            for (String neighbourId : neighbours) {
+                Integer position = positions.get(neighbourId);
+
+                // Reaching the dependency cell from the dependent cell means the new edge closes a cycle
+                if (neighbourId.equals(cycleCellId)) {
+                    throw new CircularReferenceException("Circular reference detected: " + cycleCellId + " depends on " + startCellId);
+                }
+
+                if (position != null && position > lowerBound && position < upperBound && visited.add(neighbourId)) {
+                    stack.push(neighbourId);
+                }
+            }
+        }
+
+        return affected;
+    }
+
+    // Give the affected cells the positions they already occupy, placing the backward cells before the forward cells
+    private void reorder(List<String> backward, List<String> forward) {
+        Comparator<String> byPosition = Comparator.comparingInt(positions::get);
+        backward.sort(byPosition);
+        forward.sort(byPosition);
+
+        List<Integer> freePositions = new ArrayList<>(backward.size() + forward.size());
+        for (String cellId : backward) {
+            freePositions.add(positions.get(cellId));
+        }
+        for (String cellId : forward) {
+            freePositions.add(positions.get(cellId));
+        }
+        Collections.sort(freePositions);
+
+        int index = 0;
+        for (String cellId : backward) {
+            place(cellId, freePositions.get(index++));
+        }
+        for (String cellId : forward) {
+            place(cellId, freePositions.get(index++));
+        }
+    }
+
+    private void place(String cellId, int position) {
+        positions.put(cellId, position);
+        cellsByPosition.set(position, cellId);
+    }
+
+    // Remove the holes from the order
+    private void compact() {
+        List<String> ordered = getOrderedCells();
+
+        cellsByPosition.clear();
+        positions.clear();
+        holes = 0;
+
+        for (String cellId : ordered) {
+            addCell(cellId);
+        }
+    }
+
+    // Get all the cells in dependency order, the range vertices included
+    public List<String> getOrderedCells() {
+        List<String> ordered = new ArrayList<>(positions.size());
+
+        for (String cellId : cellsByPosition) {
+            if (cellId != null) {
+                ordered.add(cellId);
+            }
+        }
+
+        return ordered;
+    }
+
+    // Sort the given cells by their place in the order
+    public List<String> sort(Collection<String> cellIds) {
+        List<String> sorted = new ArrayList<>(cellIds);
+        sorted.sort(Comparator.comparingInt(positions::get));
+
+        return sorted;
+    }
+
+    // Check if both cells are part of the order and the first cell comes before the second cell
+    public boolean comesBefore(String firstCellId, String secondCellId) {
+        Integer firstPosition = positions.get(firstCellId);
+        Integer secondPosition = positions.get(secondCellId);
+
+        return firstPosition != null && secondPosition != null && firstPosition < secondPosition;
+    }
+
+    public boolean containsCell(String cellId) {
+        return positions.containsKey(cellId);
+    }
+
+    public int size() {
+        return positions.size();
+    }
+}
@@ -1,15 +1,26 @@
 package versions;
 
+import cells.Cell;
+import spreadsheet.CellGrid;
+import spreadsheet.DependencyGraph;
 import spreadsheet.Spreadsheet;
 
 import java.io.Serializable;
+import java.util.Collections;
+import java.util.Map;
 import java.util.Objects;
 
 // This class manages and keeps track of the spreadsheet changes
 public class Version implements Serializable {
     private int versionNumber;
     private int changedCellsCount;
-    private Spreadsheet spreadsheet;
+    private Spreadsheet spreadsheet;              // The full spreadsheet, null once the version is delta-encoded
+    private Map<String, Cell> cellChanges;        // Cells changed since the previous version, null for removed cells
+    private Map<String, long[]> dependencyChanges; // Keys of the cells each changed cell now depends on, when they changed
+    private CellGrid previousCells;      // Cells of the previous version, kept until the changes are recorded
+    private DependencyGraph previousDependencies; // Dependencies of the previous version, kept with its cells
+    private boolean deltaEncoded;                 // Whether only the cell changes are kept
+    private boolean spilled;                      // Whether the version was moved to the version store
 
     // Default constructor
     public Version() {
@@ -26,12 +37,30 @@ public class Version implements Serializable {
         spreadsheet.setVersionNumber(this.versionNumber);
     }
 
+    // Constructor for a version read back from the version store or for a new version of a forked spreadsheet, the
+    // spreadsheet is used as is
+    Version(int versionNumber, int changedCellsCount, Spreadsheet spreadsheet, Map<String, Cell> cellChanges,
+            Map<String, long[]> dependencyChanges) {
+        this.versionNumber = versionNumber;
+        this.changedCellsCount = changedCellsCount;
+        this.spreadsheet = spreadsheet;
+        this.cellChanges = cellChanges;
+        this.dependencyChanges = dependencyChanges;
+        this.deltaEncoded = spreadsheet == null;
+    }
+
     // Copy constructor
     public Version(Version other) {
         if (other != null) {
             this.versionNumber = other.versionNumber;
             this.changedCellsCount = other.changedCellsCount;
-            this.spreadsheet = new Spreadsheet(other.spreadsheet);
+            this.spreadsheet = other.spreadsheet != null ? new Spreadsheet(other.spreadsheet) : null;
+            this.cellChanges = other.cellChanges;
+            this.dependencyChanges = other.dependencyChanges;
+            this.previousCells = other.previousCells;
+            this.previousDependencies = other.previousDependencies;
+            this.deltaEncoded = other.deltaEncoded;
+            this.spilled = other.spilled;
         }
     }
 
@@ -40,7 +69,13 @@ public class Version implements Serializable {
         Version copy = new Version();
         copy.versionNumber = this.versionNumber;
         copy.changedCellsCount = this.changedCellsCount;
-        copy.spreadsheet = new Spreadsheet(this.spreadsheet);
+        copy.spreadsheet = this.spreadsheet != null ? new Spreadsheet(this.spreadsheet) : null;
+        copy.cellChanges = this.cellChanges;
+        copy.dependencyChanges = this.dependencyChanges;
+        copy.previousCells = this.previousCells;
+        copy.previousDependencies = this.previousDependencies;
+        copy.deltaEncoded = this.deltaEncoded;
+        copy.spilled = this.spilled;
         return copy;
     }
 
@@ -60,6 +95,96 @@ public class Version implements Serializable {
         changedCellsCount = size;
     }
 
+    public Map<String, Cell> getCellChanges() {
+        return cellChanges;
+    }
+
+    // Get the cells that changed since the previous version, the changes of the current version are calculated
+    // without being recorded since it may still change
+    public Map<String, Cell> getChangesSincePreviousVersion() {
+        if (cellChanges == null && previousCells != null && spreadsheet != null) {
+            return CellGrid.diff(previousCells, spreadsheet.getCellGrid());
+        }
+
+        return cellChanges != null ? cellChanges : Collections.emptyMap();
+    }
+
+    public Map<String, long[]> getDependencyChanges() {
+        return dependencyChanges;
+    }
+
+    // Get the new dependencies of the cells that changed since the previous version, only the cells whose dependencies
+    // changed are included, the changes of the current version are calculated like its cell changes
+    public Map<String, long[]> getDependencyChangesSincePreviousVersion() {
+        if (dependencyChanges == null && previousDependencies != null && spreadsheet != null) {
+            return DependencyGraph.diff(previousDependencies, spreadsheet.getDependencyGraph(), getChangesSincePreviousVersion().keySet());
+        }
+
+        return dependencyChanges != null ? dependencyChanges : Collections.emptyMap();
+    }
+
+    // Replace the spreadsheet of a full version, like the current version after a dynamic analysis
+    void setSpreadsheet(Spreadsheet spreadsheet) {
+        this.spreadsheet = spreadsheet;
+    }
+
+    // Keep the cells and the dependencies of the previous version, until the changes are recorded
+    public void setPreviousVersion(Spreadsheet previous) {
+        this.previousCells = previous.getCellGrid();
+        this.previousDependencies = previous.getDependencyGraph();
+    }
+
+    // Record the cells that changed since the previous version, once the version won't change anymore
+    // A cell's dependencies change only with its formula, so only the dependencies of the changed cells are compared
+    public void recordCellChanges() {
+        if (previousCells != null && spreadsheet != null) {
+            cellChanges = CellGrid.diff(previousCells, spreadsheet.getCellGrid());
+            dependencyChanges = DependencyGraph.diff(previousDependencies, spreadsheet.getDependencyGraph(), cellChanges.keySet());
+            previousCells = null;
+            previousDependencies = null;
+        }
+    }
+
+    // Drop the full spreadsheet, the version can then be rebuilt from an earlier version and the cell changes
+    public void encodeAsDelta() {
+        if (cellChanges != null && !spilled) {
+            spreadsheet = null;
+            deltaEncoded = true;
+        }
+    }
+
+    public boolean isDeltaEncoded() {
+        return deltaEncoded;
+    }
+
+    // Drop everything the version keeps in memory, after it was written to the version store
+    public void spill() {
+        spreadsheet = null;
+        cellChanges = null;
+        dependencyChanges = null;
+        previousCells = null;
+        previousDependencies = null;
+        spilled = true;
+    }
+
+    public boolean isSpilled() {
+        return spilled;
+    }
+
+    // Estimate how many cells the version keeps in memory, cells shared with other versions are counted too
+    public int getRetainedCellCount() {
+        int count = 0;
+
+        if (spreadsheet != null) {
+            count += spreadsheet.getCellGrid().size();
+        }
+        if (cellChanges != null) {
+            count += cellChanges.size();
+        }
+
+        return count;
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
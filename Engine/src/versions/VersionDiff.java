@@ -0,0 +1,28 @@
+package versions;
+
+import java.util.Set;
+
+// The cells whose original or effective value differ between two versions, with a view of each version to read them
+public final class VersionDiff {
+    private final VersionView fromVersion;
+    private final VersionView toVersion;
+    private final Set<String> changedCellIds;
+
+    VersionDiff(VersionView fromVersion, VersionView toVersion, Set<String> changedCellIds) {
+        this.fromVersion = fromVersion;
+        this.toVersion = toVersion;
+        this.changedCellIds = changedCellIds;
+    }
+
+    public VersionView getFromVersion() {
+        return fromVersion;
+    }
+
+    public VersionView getToVersion() {
+        return toVersion;
+    }
+
+    public Set<String> getChangedCellIds() {
+        return changedCellIds;
+    }
+}
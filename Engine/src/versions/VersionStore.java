@@ -0,0 +1,437 @@
+package versions;
+
+import cells.Cell;
+import enums.CellValueStorage;
+import enums.ErrorValue;
+import enums.VersionSpillTarget;
+import spreadsheet.Spreadsheet;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+// Store for versions that were spilled out of the heap
+// Every version is written in a compact binary form, holding only what the version keeps in memory: the full
+// spreadsheet of a checkpoint version and the changed cells of a delta-encoded version, each with the dependencies
+// of its cells
+// A version is written either to its own file or to its own direct buffer in native memory, so the heap doesn't
+// grow with the spilled versions in both cases, the native memory of a buffer is freed once the buffer is dropped
+public class VersionStore implements Serializable {
+    private static final String FILE_PREFIX = "shticell-versions-";
+    private static final String FILE_SUFFIX = ".ver";
+    private static final int ESTIMATED_BYTES_PER_CELL = 48; // Rough size of a written cell, sizes the first direct buffer
+    private static final int MIN_BUFFER_SIZE = 1024;
+
+    // Tags of the effective value types
+    private static final byte STRING_VALUE = 0;
+    private static final byte INTEGER_VALUE = 1;
+    private static final byte DOUBLE_VALUE = 2;
+    private static final byte BOOLEAN_VALUE = 3;
+    private static final byte NULL_VALUE = 4;
+    private static final byte ERROR_VALUE = 5;
+
+    private String directory; // Created on the first write to disk
+    private transient Map<Integer, ByteBuffer> offHeapVersions = new HashMap<>(); // Read-only buffers by version number
+    private VersionSpillTarget spillTarget = VersionSpillTarget.DISK;
+
+    public VersionSpillTarget getSpillTarget() {
+        return spillTarget;
+    }
+
+    // Versions that were already written stay where they are, only the next writes go to the new target
+    public void setSpillTarget(VersionSpillTarget spillTarget) {
+        this.spillTarget = spillTarget;
+    }
+
+    // Write a version to the store, replacing a previously written version with the same number
+    public void write(Version version) throws IOException {
+        int versionNumber = version.getVersionNumber();
+
+        if (spillTarget == VersionSpillTarget.OFF_HEAP) {
+            // The version is written straight into native memory, it never passes through a heap array
+            DirectBufferOutputStream bytes = new DirectBufferOutputStream(
+                    version.getRetainedCellCount() * ESTIMATED_BYTES_PER_CELL + MIN_BUFFER_SIZE);
+            try (DataOutputStream out = new DataOutputStream(bytes)) {
+                writeVersion(out, version);
+            }
+
+            delete(versionNumber);
+            getOffHeapVersions().put(versionNumber, bytes.toReadOnlyBuffer());
+            return;
+        }
+
+        Path file = getFile(versionNumber);
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file)))) {
+            writeVersion(out, version);
+        }
+        getOffHeapVersions().remove(versionNumber);
+
+        file.toFile().deleteOnExit();
+    }
+
+    private void writeVersion(DataOutputStream out, Version version) throws IOException {
+        out.writeInt(version.getVersionNumber());
+        out.writeInt(version.getChangedCellsCount());
+
+        Spreadsheet spreadsheet = version.getSpreadsheet();
+        out.writeBoolean(spreadsheet != null);
+        if (spreadsheet != null) {
+            writeSpreadsheet(out, spreadsheet);
+        }
+
+        Map<String, Cell> cellChanges = version.getCellChanges();
+        out.writeBoolean(cellChanges != null);
+        if (cellChanges != null) {
+            writeCells(out, cellChanges);
+            writeDependencies(out, version.getDependencyChanges() != null ? version.getDependencyChanges() : Map.of());
+        }
+    }
+
+    // Read a version back from the store, the returned version isn't part of any versions map
+    public Version read(int versionNumber) throws IOException {
+        ByteBuffer buffer = getOffHeapVersions().get(versionNumber);
+
+        if (buffer != null) {
+            // Every read gets its own position in the shared buffer
+            try (DataInputStream in = new DataInputStream(new ByteBufferInputStream(buffer.duplicate()))) {
+                return readVersion(in);
+            }
+        }
+
+        Path file = getFile(versionNumber);
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            return readVersion(in);
+        }
+    }
+
+    private Version readVersion(DataInputStream in) throws IOException {
+        int storedVersionNumber = in.readInt();
+        int changedCellsCount = in.readInt();
+        Spreadsheet spreadsheet = in.readBoolean() ? readSpreadsheet(in, storedVersionNumber) : null;
+        Map<String, Cell> cellChanges = null;
+        Map<String, long[]> dependencyChanges = null;
+
+        if (in.readBoolean()) {
+            cellChanges = readCells(in);
+            dependencyChanges = readDependencies(in);
+        }
+
+        return new Version(storedVersionNumber, changedCellsCount, spreadsheet, cellChanges, dependencyChanges);
+    }
+
+    // Get the native memory taken by the versions that are kept off the heap
+    public long getOffHeapBytes() {
+        long bytes = 0;
+
+        for (ByteBuffer buffer : getOffHeapVersions().values()) {
+            bytes += buffer.capacity();
+        }
+
+        return bytes;
+    }
+
+    // Delete a version from the store, if it was written
+    public void delete(int versionNumber) throws IOException {
+        getOffHeapVersions().remove(versionNumber);
+
+        if (directory != null) {
+            Files.deleteIfExists(getFile(versionNumber));
+        }
+    }
+
+    private Path getFile(int versionNumber) throws IOException {
+        if (directory == null) {
+            Path created = Files.createTempDirectory(FILE_PREFIX);
+            created.toFile().deleteOnExit();
+            directory = created.toString();
+        }
+
+        return Paths.get(directory, versionNumber + FILE_SUFFIX);
+    }
+
+    // The buffers aren't serialized, so the map is created again for a deserialized store
+    private Map<Integer, ByteBuffer> getOffHeapVersions() {
+        if (offHeapVersions == null) {
+            offHeapVersions = new HashMap<>();
+        }
+
+        return offHeapVersions;
+    }
+
+    private void writeSpreadsheet(DataOutputStream out, Spreadsheet spreadsheet) throws IOException {
+        writeString(out, spreadsheet.getName());
+        out.writeInt(spreadsheet.getRows());
+        out.writeInt(spreadsheet.getColumns());
+        out.writeInt(spreadsheet.getColumnWidth());
+        out.writeInt(spreadsheet.getRowHeight());
+        writeCells(out, spreadsheet.getCells());
+
+        // The dependencies of the cells that have any
+        Map<String, long[]> dependencies = new HashMap<>();
+        for (String cellId : spreadsheet.getCells().keySet()) {
+            long[] dependencyKeys = spreadsheet.getDependencyKeys(cellId);
+
+            if (dependencyKeys.length > 0) {
+                dependencies.put(cellId, dependencyKeys);
+            }
+        }
+        writeDependencies(out, dependencies);
+    }
+
+    private Spreadsheet readSpreadsheet(DataInputStream in, int versionNumber) throws IOException {
+        String name = readString(in);
+        int rows = in.readInt();
+        int columns = in.readInt();
+        int columnWidth = in.readInt();
+        int rowHeight = in.readInt();
+        Spreadsheet spreadsheet = new Spreadsheet(name, rows, columns, columnWidth, rowHeight, versionNumber);
+
+        for (Map.Entry<String, Cell> entry : readCells(in).entrySet()) {
+            spreadsheet.addCell(entry.getKey(), entry.getValue());
+        }
+        spreadsheet.applyDependencyChanges(readDependencies(in));
+
+        return spreadsheet;
+    }
+
+    // Write cells by ID, a null cell marks a removed cell
+    private void writeCells(DataOutputStream out, Map<String, Cell> cells) throws IOException {
+        out.writeInt(cells.size());
+
+        for (Map.Entry<String, Cell> entry : cells.entrySet()) {
+            Cell cell = entry.getValue();
+
+            writeString(out, entry.getKey());
+            out.writeBoolean(cell != null);
+            if (cell != null) {
+                writeCell(out, cell);
+            }
+        }
+    }
+
+    private Map<String, Cell> readCells(DataInputStream in) throws IOException {
+        int count = in.readInt();
+        Map<String, Cell> cells = new HashMap<>();
+
+        for (int i = 0; i < count; i++) {
+            String cellId = readString(in);
+            cells.put(cellId, in.readBoolean() ? readCell(in) : null);
+        }
+
+        return cells;
+    }
+
+    // The expression isn't written, a spilled version is only read back for viewing
+    private void writeCell(DataOutputStream out, Cell cell) throws IOException {
+        writeString(out, cell.getOriginalValue());
+        writeValue(out, cell);
+        out.writeInt(cell.getLastUpdatedVersion());
+        writeString(out, cell.getLastUpdatedBy() != null ? cell.getLastUpdatedBy() : "");
+        writeIds(out, cell.getDependsOnRanges());
+    }
+
+    private Cell readCell(DataInputStream in) throws IOException {
+        String originalValue = readString(in);
+        Object effectiveValue = readValue(in);
+        int lastUpdatedVersion = in.readInt();
+        String lastUpdatedBy = readString(in);
+        Cell cell = Cell.create(CellValueStorage.HEAP, originalValue, effectiveValue, null, lastUpdatedVersion, lastUpdatedBy); // Read back only to be viewed
+
+        int dependsOnRangesCount = in.readInt();
+        for (int i = 0; i < dependsOnRangesCount; i++) {
+            cell.addDependsOnRange(readString(in));
+        }
+
+        return cell;
+    }
+
+    // Write the keys of the cells each cell depends on, by cell ID, the other side of the dependencies follows from them
+    private void writeDependencies(DataOutputStream out, Map<String, long[]> dependencies) throws IOException {
+        out.writeInt(dependencies.size());
+
+        for (Map.Entry<String, long[]> entry : dependencies.entrySet()) {
+            writeString(out, entry.getKey());
+            out.writeInt(entry.getValue().length);
+            for (long dependencyKey : entry.getValue()) {
+                out.writeLong(dependencyKey);
+            }
+        }
+    }
+
+    private Map<String, long[]> readDependencies(DataInputStream in) throws IOException {
+        int count = in.readInt();
+        Map<String, long[]> dependencies = new HashMap<>();
+
+        for (int i = 0; i < count; i++) {
+            String cellId = readString(in);
+            long[] dependencyKeys = new long[in.readInt()];
+
+            for (int j = 0; j < dependencyKeys.length; j++) {
+                dependencyKeys[j] = in.readLong();
+            }
+            dependencies.put(cellId, dependencyKeys);
+        }
+
+        return dependencies;
+    }
+
+    private void writeIds(DataOutputStream out, Collection<String> cellIds) throws IOException {
+        out.writeInt(cellIds.size());
+        for (String cellId : cellIds) {
+            writeString(out, cellId);
+        }
+    }
+
+    // Numbers are written straight from the primitive value of the cell
+    private void writeValue(DataOutputStream out, Cell cell) throws IOException {
+        if (cell.isIntegerValue()) {
+            out.writeByte(INTEGER_VALUE);
+            out.writeInt((int) cell.getNumericValue());
+        } else if (cell.isNumeric()) {
+            out.writeByte(DOUBLE_VALUE);
+            out.writeDouble(cell.getNumericValue());
+        } else {
+            writeValue(out, cell.getEffectiveValue());
+        }
+    }
+
+    private void writeValue(DataOutputStream out, Object value) throws IOException {
+        if (value == null) {
+            out.writeByte(NULL_VALUE);
+        } else if (value instanceof Integer) {
+            out.writeByte(INTEGER_VALUE);
+            out.writeInt((Integer) value);
+        } else if (value instanceof Double) {
+            out.writeByte(DOUBLE_VALUE);
+            out.writeDouble((Double) value);
+        } else if (value instanceof Boolean) {
+            out.writeByte(BOOLEAN_VALUE);
+            out.writeBoolean((Boolean) value);
+        } else if (value instanceof ErrorValue) {
+            out.writeByte(ERROR_VALUE);
+            out.writeByte(((ErrorValue) value).ordinal());
+        } else {
+            out.writeByte(STRING_VALUE);
+            writeString(out, value.toString());
+        }
+    }
+
+    private Object readValue(DataInputStream in) throws IOException {
+        byte tag = in.readByte();
+
+        if (tag == INTEGER_VALUE) {
+            return in.readInt();
+        } else if (tag == DOUBLE_VALUE) {
+            return in.readDouble();
+        } else if (tag == BOOLEAN_VALUE) {
+            return in.readBoolean();
+        } else if (tag == NULL_VALUE) {
+            return null;
+        } else if (tag == ERROR_VALUE) {
+            return ErrorValue.values()[in.readByte()];
+        }
+
+        return readString(in);
+    }
+
+    // Strings are written as the length and the UTF-8 bytes, since writeUTF is limited to 65535 encoded bytes
+    private void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private String readString(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    // Output stream into a direct buffer, a full buffer is replaced by a twice larger one and the bytes written so far
+    // are copied between the native buffers
+    private static class DirectBufferOutputStream extends OutputStream {
+        private ByteBuffer buffer;
+
+        private DirectBufferOutputStream(int capacity) {
+            this.buffer = ByteBuffer.allocateDirect(Math.max(capacity, MIN_BUFFER_SIZE));
+        }
+
+        @Override
+        public void write(int value) {
+            ensureRemaining(1);
+            buffer.put((byte) value);
+        }
+
+        @Override
+        public void write(byte[] bytes, int offset, int length) {
+            ensureRemaining(length);
+            buffer.put(bytes, offset, length);
+        }
+
+        private void ensureRemaining(int length) {
+            if (buffer.remaining() >= length) {
+                return;
+            }
+
+            long needed = (long) buffer.position() + length;
+            if (needed > Integer.MAX_VALUE) {
+                throw new OutOfMemoryError("The version is too large for a direct buffer");
+            }
+
+            ByteBuffer larger = ByteBuffer.allocateDirect((int) Math.min(Integer.MAX_VALUE, Math.max(needed, 2L * buffer.capacity())));
+            buffer.flip();
+            larger.put(buffer);
+            buffer = larger;
+        }
+
+        // Get the written bytes in a read-only buffer of their exact size, so the store keeps no unused native memory
+        private ByteBuffer toReadOnlyBuffer() {
+            buffer.flip();
+
+            if (buffer.limit() < buffer.capacity()) {
+                ByteBuffer exact = ByteBuffer.allocateDirect(buffer.limit());
+                exact.put(buffer).flip();
+                buffer = exact;
+            }
+
+            return buffer.asReadOnlyBuffer();
+        }
+    }
+
+    // Input stream over the remaining bytes of a buffer
+    private static class ByteBufferInputStream extends InputStream {
+        private final ByteBuffer buffer;
+
+        private ByteBufferInputStream(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int length) {
+            if (length == 0) {
+                return 0;
+            }
+            if (!buffer.hasRemaining()) {
+                return -1;
+            }
+
+            int count = Math.min(length, buffer.remaining());
+            buffer.get(bytes, offset, count);
+
+            return count;
+        }
+    }
+}
@@ -0,0 +1,155 @@
+package versions;
+
+import cells.Cell;
+import ranges.RangeIndex;
+import ranges.RangesManager;
+import spreadsheet.CellCoordinate;
+import spreadsheet.Spreadsheet;
+
+import java.util.*;
+
+// The cells and the dependencies of a version, read from the nearest earlier spreadsheet that is kept in full and the
+// changes of the versions after it, without rebuilding the spreadsheet of the version
+// A view is taken under the lock of the versions manager and only reads what it was given, so it stays consistent
+// while the versions manager moves on
+public final class VersionView {
+    private final int versionNumber;
+    private final Spreadsheet base;                        // The nearest spreadsheet kept in full, not changed by the view
+    private final Map<String, Cell> cellChanges;          // Cells changed since the base, null for removed cells
+    private final Map<String, long[]> dependencyChanges;  // Dependencies of the cells whose dependencies changed since the base
+    private final RangesManager ranges;
+
+    VersionView(int versionNumber, Spreadsheet base, Map<String, Cell> cellChanges, Map<String, long[]> dependencyChanges,
+                RangesManager ranges) {
+        this.versionNumber = versionNumber;
+        this.base = base;
+        this.cellChanges = cellChanges;
+        this.dependencyChanges = dependencyChanges;
+        this.ranges = ranges;
+    }
+
+    public int getVersionNumber() {
+        return versionNumber;
+    }
+
+    // Get a cell as it is in the version, null if it doesn't exist
+    public Cell getCell(String cellId) {
+        if (cellChanges.containsKey(cellId)) {
+            return cellChanges.get(cellId);
+        }
+
+        return base.getCellById(cellId);
+    }
+
+    // Get the IDs of the cells that the cell depends on in the version, including the existing cells of the ranges it
+    // uses, like Spreadsheet.getDependencyIds
+    public List<String> getDependencyIds(String cellId) {
+        Cell cell = getCell(cellId);
+        if (cell == null) {
+            return new ArrayList<>();
+        }
+
+        Set<String> uniqueIds = new LinkedHashSet<>();
+        for (long dependencyKey : getDependencyKeys(cellId)) {
+            uniqueIds.add(CellCoordinate.toCellId(dependencyKey));
+        }
+
+        for (String rangeKey : cell.getDependsOnRanges()) {
+            RangeIndex.Area area = ranges.getIndex().getArea(rangeKey);
+
+            if (area != null) {
+                for (long key : getCellKeysInArea(area)) {
+                    uniqueIds.add(CellCoordinate.toCellId(key));
+                }
+            }
+        }
+
+        return new ArrayList<>(uniqueIds);
+    }
+
+    // Get the IDs of the cells that depend on the cell in the version, including the cells that use a range containing
+    // it, like Spreadsheet.getDependentIds
+    public List<String> getDependentIds(String cellId) {
+        long key = CellCoordinate.parseKey(cellId);
+        if (key == CellCoordinate.INVALID_KEY || getCell(cellId) == null) {
+            return new ArrayList<>();
+        }
+
+        // The dependents of the base, with the cells whose dependencies changed since moved in or out
+        Set<Long> dependentKeys = new TreeSet<>();
+        for (long dependentKey : base.getDependencyGraph().getDependentKeys(key)) {
+            dependentKeys.add(dependentKey);
+        }
+        for (Map.Entry<String, long[]> entry : dependencyChanges.entrySet()) {
+            long dependentKey = CellCoordinate.parseKey(entry.getKey());
+
+            dependentKeys.remove(dependentKey);
+            if (Arrays.binarySearch(entry.getValue(), key) >= 0) {
+                dependentKeys.add(dependentKey);
+            }
+        }
+
+        Set<String> uniqueIds = new LinkedHashSet<>();
+        for (long dependentKey : dependentKeys) {
+            uniqueIds.add(CellCoordinate.toCellId(dependentKey));
+        }
+
+        ranges.getIndex().forEachRangeContaining(CellCoordinate.row(key), CellCoordinate.column(key), rangeKey -> {
+            for (long consumerKey : getRangeConsumerKeys(rangeKey)) {
+                uniqueIds.add(CellCoordinate.toCellId(consumerKey));
+            }
+        });
+
+        return new ArrayList<>(uniqueIds);
+    }
+
+    // Get the keys of the cells a cell depends on in the version, by row and then by column order
+    private long[] getDependencyKeys(String cellId) {
+        long[] dependencyKeys = dependencyChanges.get(cellId);
+
+        return dependencyKeys != null ? dependencyKeys : base.getDependencyKeys(cellId);
+    }
+
+    // Get the keys of the cells that exist in an area in the version, by row and then by column order
+    private Set<Long> getCellKeysInArea(RangeIndex.Area area) {
+        Set<Long> keys = new TreeSet<>();
+
+        base.getCellGrid().forEachInArea(area.getTop(), area.getLeft(), area.getBottom(), area.getRight(),
+                (row, column, cell) -> keys.add(CellCoordinate.key(row, column)));
+
+        for (Map.Entry<String, Cell> entry : cellChanges.entrySet()) {
+            long key = CellCoordinate.parseKey(entry.getKey());
+            int row = CellCoordinate.row(key);
+            int column = CellCoordinate.column(key);
+
+            if (row >= area.getTop() && row <= area.getBottom() && column >= area.getLeft() && column <= area.getRight()) {
+                if (entry.getValue() != null) {
+                    keys.add(key);
+                } else {
+                    keys.remove(key);
+                }
+            }
+        }
+
+        return keys;
+    }
+
+    // Get the keys of the cells that use a range in the version, by row and then by column order
+    private Set<Long> getRangeConsumerKeys(String rangeKey) {
+        Set<Long> keys = new TreeSet<>();
+
+        base.forEachConsumer(rangeKey, keys::add);
+
+        for (Map.Entry<String, Cell> entry : cellChanges.entrySet()) {
+            long key = CellCoordinate.parseKey(entry.getKey());
+            Cell cell = entry.getValue();
+
+            keys.remove(key);
+            if (cell != null && cell.getDependsOnRanges().contains(rangeKey)) {
+                keys.add(key);
+            }
+        }
+
+        return keys;
+    }
+}
@@ -3,11 +3,18 @@ package versions;
 import api.Expression;
 import api.Range;
 import cells.Cell;
+import enums.CellValueStorage;
 import enums.PermissionStatus;
 import enums.PermissionType;
+import enums.RecalculationMode;
+import enums.VersionSpillTarget;
+import enums.VersionStorageMode;
 import exceptions.*;
+import expressionimpls.ExpressionCache;
 import expressionimpls.ExpressionParser;
+import expressionimpls.ExpressionPool;
 import expressionimpls.FunctionExpression;
+import expressionimpls.LiteralExpression;
 import expressionimpls.RangeExpression;
 import expressionimpls.ReferenceExpression;
 import filter.SpreadsheetFilter;
@@ -16,11 +23,15 @@ import jakarta.xml.bind.JAXBContext;
 import jakarta.xml.bind.JAXBException;
 import jakarta.xml.bind.Unmarshaller;
 import ranges.RangesManager;
+import spreadsheet.CellCoordinate;
 import spreadsheet.Spreadsheet;
+import spreadsheet.SpreadsheetLink;
 import versions.permissions.PermissionsManager;
 
 import java.io.File;
+import java.io.IOException;
 import java.io.Serializable;
+import java.io.UncheckedIOException;
 import java.util.*;
 import java.util.function.Supplier;
 
@@ -29,21 +40,42 @@ public class VersionsManager implements Serializable {
     private final RangesManager rangesManager;
     private final SpreadsheetFilter spreadsheetFilterer;
     private final PermissionsManager permissionsManager;
-    private static final int MAX_ROWS = 50;
-    private static final int MAX_COLS = 20;
-    private Supplier<Spreadsheet> spreadsheetSupplier = this::getCurrentSpreadsheet;
+    private static final int MAX_ROWS = 1024 * 1024; // Cells are stored sparsely, so only populated cells take memory
+    private static final int MAX_COLS = 16 * 1024;
+    private static final int CHECKPOINT_INTERVAL = 16;       // Every this many versions the full spreadsheet is kept
+    private static final int REBUILT_VERSIONS_CACHE_SIZE = 8; // Number of rebuilt delta-encoded versions to cache
+    private static final int EXPRESSION_CACHE_SIZE = 4096;    // Number of parsed formulas to cache
+    private static final int ESTIMATED_BYTES_PER_CELL = 256;  // Rough heap size of a cell with its map entry
+    private static final long DEFAULT_VERSION_MEMORY_BUDGET = 64L * 1024 * 1024;
+    private Supplier<Spreadsheet> spreadsheetSupplier = new SpreadsheetLink(this::getCurrentSpreadsheet); // Spreadsheet the formulas are evaluated in
+    private final ExpressionPool expressionPool = new ExpressionPool(); // Formulas shared by the cells of all the versions
+    private final ExpressionCache expressionCache = new ExpressionCache(EXPRESSION_CACHE_SIZE); // Recently parsed formulas by their text
+    private RecalculationMode recalculationMode = RecalculationMode.INCREMENTAL;
+    private VersionStorageMode versionStorageMode = VersionStorageMode.DELTA;
+    private CellValueStorage cellValueStorage = CellValueStorage.HEAP; // Where the cells of the current spreadsheet keep their values
+    private final Map<Integer, Spreadsheet> rebuiltVersions; // Recently rebuilt delta-encoded versions, least recently used first
+    private final VersionStore versionStore;                  // Versions spilled off the heap to keep within the memory budget
+    private long versionMemoryBudget = DEFAULT_VERSION_MEMORY_BUDGET;
     private int currentVersionNumber;
 
     public VersionsManager(String username) {
-        this.permissionsManager = new PermissionsManager(username);
+        this(new PermissionsManager(username));
+    }
+
+    // Constructor for a versions manager restored from a snapshot, the versions are added after it is created
+    VersionsManager(PermissionsManager permissionsManager) {
+        this.permissionsManager = permissionsManager;
         this.rangesManager = new RangesManager();
         this.spreadsheetFilterer = new SpreadsheetFilter(this);
         this.versions = new HashMap<>();
+        this.rebuiltVersions = new LinkedHashMap<>(16, 0.75f, true);
+        this.versionStore = new VersionStore();
         this.currentVersionNumber = 0;
     }
 
     public void clearVersions() {
         versions.clear();
+        rebuiltVersions.clear();
         currentVersionNumber = 0;
     }
 
@@ -55,11 +87,324 @@ public class VersionsManager implements Serializable {
         return versions.get(currentVersionNumber).getSpreadsheet();
     }
 
-    public Spreadsheet getSpreadsheetByVersion(int versionNumber) throws IndexOutOfBoundsException {
+    // Copy the current spreadsheet, the copy shares the cells until either spreadsheet changes them
+    public Spreadsheet copyCurrentSpreadsheet() {
+        Spreadsheet spreadsheet = getCurrentSpreadsheet();
+
+        return spreadsheet != null ? new Spreadsheet(spreadsheet) : null;
+    }
+
+    // Get the spreadsheet of a version, delta-encoded versions are rebuilt and spilled versions are read back
+    public synchronized Spreadsheet getSpreadsheetByVersion(int versionNumber) throws IndexOutOfBoundsException {
         if (versionNumber <= 0 || versionNumber > currentVersionNumber) {
             throw new IndexOutOfBoundsException("The version number is invalid");
         }
-        return versions.get(versionNumber).getSpreadsheet();
+        Version version = versions.get(versionNumber);
+        if (!version.isDeltaEncoded() && !version.isSpilled()) {
+            return version.getSpreadsheet();
+        }
+
+        Spreadsheet spreadsheet = rebuiltVersions.get(versionNumber);
+        if (spreadsheet == null) {
+            if (version.isDeltaEncoded()) {
+                spreadsheet = rebuildVersion(versionNumber);
+            } else {
+                spreadsheet = readSpilledVersion(versionNumber).getSpreadsheet();
+            }
+
+            // Cache the rebuilt version, evicting the least recently used one
+            rebuiltVersions.put(versionNumber, spreadsheet);
+            if (rebuiltVersions.size() > REBUILT_VERSIONS_CACHE_SIZE) {
+                rebuiltVersions.remove(rebuiltVersions.keySet().iterator().next());
+            }
+        }
+
+        return spreadsheet;
+    }
+
+    // Rebuild a delta-encoded version from the nearest earlier version that is kept in full or was already rebuilt,
+    // by applying the cell and dependency changes of every version after it
+    private Spreadsheet rebuildVersion(int versionNumber) {
+        int baseVersionNumber = versionNumber - 1;
+        Spreadsheet baseSpreadsheet = getStoredSpreadsheet(baseVersionNumber);
+
+        // The first version is always a checkpoint, so the search ends there at the latest
+        while (baseSpreadsheet == null) {
+            baseVersionNumber--;
+            baseSpreadsheet = getStoredSpreadsheet(baseVersionNumber);
+        }
+
+        Spreadsheet spreadsheet = new Spreadsheet(baseSpreadsheet);
+        for (int number = baseVersionNumber + 1; number <= versionNumber; number++) {
+            Version changes = getStoredVersion(number); // A spilled version is read back once for both kinds of changes
+
+            spreadsheet.applyCellChanges(changes.getChangesSincePreviousVersion());
+            spreadsheet.applyDependencyChanges(changes.getDependencyChangesSincePreviousVersion());
+        }
+        spreadsheet.setVersionNumber(versionNumber);
+
+        return spreadsheet;
+    }
+
+    // Get the spreadsheet of a version if it is kept in full or cached, without rebuilding it
+    private Spreadsheet getStoredSpreadsheet(int versionNumber) {
+        Version version = versions.get(versionNumber);
+
+        if (!version.isDeltaEncoded()) {
+            return getSpreadsheetByVersion(versionNumber);
+        }
+
+        return rebuiltVersions.get(versionNumber);
+    }
+
+    // Get the cells that changed in a version, reading them back if the version was spilled
+    private Map<String, Cell> getCellChanges(int versionNumber) {
+        Version version = versions.get(versionNumber);
+
+        if (version.isSpilled()) {
+            return readSpilledVersion(versionNumber).getChangesSincePreviousVersion();
+        }
+
+        return version.getChangesSincePreviousVersion();
+    }
+
+    // Get the IDs of the cells whose original or effective value differ between two versions
+    // Only the cells in the change sets of the versions between the two versions are compared
+    public synchronized Set<String> getCellIdsChangedBetween(int fromVersion, int toVersion) throws IndexOutOfBoundsException {
+        return getCellIdsChangedBetween(getVersionView(fromVersion), getVersionView(toVersion));
+    }
+
+    private Set<String> getCellIdsChangedBetween(VersionView fromView, VersionView toView) {
+        int fromVersion = fromView.getVersionNumber();
+        int toVersion = toView.getVersionNumber();
+        Set<String> candidateCellIds = new HashSet<>();
+        Set<String> changedCellIds = new HashSet<>();
+
+        for (int number = Math.min(fromVersion, toVersion) + 1; number <= Math.max(fromVersion, toVersion); number++) {
+            candidateCellIds.addAll(getCellChanges(number).keySet());
+        }
+
+        for (String cellId : candidateCellIds) {
+            if (isCellValueDifferent(fromView.getCell(cellId), toView.getCell(cellId))) {
+                changedCellIds.add(cellId);
+            }
+        }
+
+        return changedCellIds;
+    }
+
+    // Get the changed cells between two versions with a view of each version, all taken in one call so they agree
+    // with each other even while new versions are added
+    // The versions are read through their change sets, neither spreadsheet is rebuilt
+    public synchronized VersionDiff getVersionDiff(int fromVersion, int toVersion) throws IndexOutOfBoundsException {
+        VersionView fromView = getVersionView(fromVersion);
+        VersionView toView = getVersionView(toVersion);
+
+        return new VersionDiff(fromView, toView, getCellIdsChangedBetween(fromView, toView));
+    }
+
+    // Get a view of a version from the nearest earlier spreadsheet that is kept in full or was already rebuilt, and the
+    // cell and dependency changes of every version after it
+    private VersionView getVersionView(int versionNumber) throws IndexOutOfBoundsException {
+        if (versionNumber <= 0 || versionNumber > currentVersionNumber) {
+            throw new IndexOutOfBoundsException("The version number is invalid");
+        }
+
+        int baseVersionNumber = versionNumber;
+        Spreadsheet baseSpreadsheet = getStoredSpreadsheet(baseVersionNumber);
+
+        // The first version is always a checkpoint, so the search ends there at the latest
+        while (baseSpreadsheet == null) {
+            baseVersionNumber--;
+            baseSpreadsheet = getStoredSpreadsheet(baseVersionNumber);
+        }
+
+        Map<String, Cell> cellChanges = new HashMap<>();
+        Map<String, long[]> dependencyChanges = new HashMap<>();
+        for (int number = baseVersionNumber + 1; number <= versionNumber; number++) {
+            Version changes = getStoredVersion(number); // A spilled version is read back once for both kinds of changes
+
+            cellChanges.putAll(changes.getChangesSincePreviousVersion());
+            dependencyChanges.putAll(changes.getDependencyChangesSincePreviousVersion());
+        }
+
+        return new VersionView(versionNumber, baseSpreadsheet, cellChanges, dependencyChanges, rangesManager);
+    }
+
+    // Check if the original or effective value of a cell differs between two versions, a missing cell counts as different
+    private boolean isCellValueDifferent(Cell fromCell, Cell toCell) {
+        if (fromCell == null || toCell == null) {
+            return fromCell != toCell;
+        }
+
+        return !Objects.equals(fromCell.getOriginalValue(), toCell.getOriginalValue())
+                || !fromCell.hasSameEffectiveValue(toCell);
+    }
+
+    // Read a spilled version back from the version store, without keeping it in memory
+    private Version readSpilledVersion(int versionNumber) {
+        try {
+            Version version = versionStore.read(versionNumber);
+
+            if (version.getSpreadsheet() != null) {
+                version.getSpreadsheet().setRangesManager(rangesManager);
+            }
+
+            return version;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to read spilled version " + versionNumber, e);
+        }
+    }
+
+    // Get a version as it is stored, a spilled version is read back without keeping it in memory
+    synchronized Version getStoredVersion(int versionNumber) {
+        Version version = versions.get(versionNumber);
+
+        return version.isSpilled() ? readSpilledVersion(versionNumber) : version;
+    }
+
+    // Give a cell restored from a snapshot its expression, without parsing formulas up front
+    // A literal evaluates to the effective value that was restored with it, a formula is parsed on first use
+    void restoreExpression(Cell cell) {
+        String originalValue = cell.getOriginalValue();
+
+        if (originalValue.isEmpty()) {
+            return;
+        }
+
+        if (originalValue.startsWith("{")) {
+            cell.setExpressionParser(this::parseRestoredExpression);
+        } else {
+            Object effectiveValue = cell.getEffectiveValue();
+            cell.setExpressionParser(value -> new LiteralExpression(effectiveValue));
+        }
+    }
+
+    // Find the ranges used by the formula of a cell restored from a snapshot that didn't keep them
+    void restoreRangeDependencies(Cell cell) {
+        if (!cell.getOriginalValue().startsWith("{")) {
+            return;
+        }
+
+        try {
+            addRangeDependencies(ExpressionParser.parse(cell.getOriginalValue(), spreadsheetSupplier, rangesManager), cell);
+        } catch (InvalidExpressionException e) {
+            // The formula fails again when the cell is recalculated, it uses no range until then
+        }
+    }
+
+    private static void addRangeDependencies(Expression expression, Cell cell) {
+        if (expression instanceof RangeExpression) {
+            cell.addDependsOnRange(((RangeExpression) expression).getRangeName());
+        } else if (expression instanceof FunctionExpression) {
+            for (Expression argument : ((FunctionExpression) expression).getArguments()) {
+                addRangeDependencies(argument, cell);
+            }
+        }
+    }
+
+    // Parse the value of a cell, a formula that was parsed before is taken from the cache instead of parsed again
+    private Expression parseCellValue(String value) throws InvalidExpressionException {
+        if (!ExpressionCache.isFormula(value)) {
+            return ExpressionParser.parse(value, spreadsheetSupplier, rangesManager, expressionPool);
+        }
+
+        int rangesGeneration = rangesManager.getGeneration();
+        Expression expression = expressionCache.get(value, rangesGeneration);
+
+        if (expression == null) {
+            expression = ExpressionParser.parse(value, spreadsheetSupplier, rangesManager, expressionPool);
+            expressionCache.put(value, rangesGeneration, expression);
+        }
+
+        return expression;
+    }
+
+    private Expression parseRestoredExpression(String originalValue) {
+        try {
+            return parseCellValue(originalValue);
+        } catch (InvalidExpressionException e) {
+            throw new IllegalStateException("Failed to parse the restored expression " + originalValue + ": " + e.getMessage(), e);
+        }
+    }
+
+    // Finish restoring the versions from a snapshot, the current version tracks its changes from the previous version
+    // like a version that was just saved
+    synchronized void completeRestore() {
+        if (currentVersionNumber > 1) {
+            versions.get(currentVersionNumber).setPreviousVersion(getSpreadsheetByVersion(currentVersionNumber - 1));
+        }
+
+        enforceVersionMemoryBudget();
+    }
+
+    // Estimate how much memory the versions of the spreadsheet keep, cells shared between versions are counted
+    // once per version, so the estimate is an upper bound
+    public synchronized long getEstimatedVersionMemory() {
+        long cellCount = 0;
+
+        for (Version version : versions.values()) {
+            cellCount += version.getRetainedCellCount();
+        }
+
+        return cellCount * ESTIMATED_BYTES_PER_CELL;
+    }
+
+    // Spill the oldest version that is still in memory off the heap, the current version is never spilled
+    // Returns the estimated memory that was freed, 0 if there was nothing to spill
+    public synchronized long spillOldestVersion() {
+        for (int versionNumber = 1; versionNumber < currentVersionNumber; versionNumber++) {
+            Version version = versions.get(versionNumber);
+
+            if (!version.isSpilled()) {
+                long freedMemory = (long) version.getRetainedCellCount() * ESTIMATED_BYTES_PER_CELL;
+
+                try {
+                    versionStore.write(version);
+                } catch (IOException e) {
+                    return 0; // Keep the version in memory if it can't be written
+                }
+                version.spill();
+
+                return freedMemory;
+            }
+        }
+
+        return 0;
+    }
+
+    // Spill the oldest versions until the versions of the spreadsheet fit in its memory budget
+    private void enforceVersionMemoryBudget() {
+        long estimatedMemory = getEstimatedVersionMemory();
+
+        while (estimatedMemory > versionMemoryBudget) {
+            long freedMemory = spillOldestVersion();
+
+            if (freedMemory == 0) {
+                break;
+            }
+            estimatedMemory -= freedMemory;
+        }
+    }
+
+    // Check if the full spreadsheet of the version is kept even in delta storage mode
+    private boolean isCheckpoint(int versionNumber) {
+        return (versionNumber - 1) % CHECKPOINT_INTERVAL == 0;
+    }
+
+    // Record the cell changes of the previous version now that a newer version exists,
+    // and keep only the changes unless the previous version is a checkpoint
+    private void encodePreviousVersion() {
+        Version previousVersion = versions.get(currentVersionNumber - 1);
+
+        if (previousVersion == null) {
+            return;
+        }
+
+        previousVersion.recordCellChanges();
+        if (versionStorageMode == VersionStorageMode.DELTA && !isCheckpoint(currentVersionNumber - 1)) {
+            previousVersion.encodeAsDelta();
+        }
     }
 
     public void deleteLatestVersion() {
@@ -69,6 +414,7 @@ public class VersionsManager implements Serializable {
 
         // Remove the latest version from the map
         versions.remove(currentVersionNumber);
+        rebuiltVersions.remove(currentVersionNumber);
 
         // Decrement the currentVersion to point to the previous version
         currentVersionNumber--;
@@ -79,9 +425,13 @@ public class VersionsManager implements Serializable {
         }
     }
 
+    // The given spreadsheet is a copy of the current spreadsheet that belongs to no version yet, the new version takes it
+    // as is instead of copying it again
     public void saveNewVersion(String cellId, Spreadsheet spreadsheet) {
         int numOfCellsChanged = getNumOfCellsChanged(spreadsheet, cellId);
-        Version newVersion = new Version(currentVersionNumber + 1, numOfCellsChanged, spreadsheet);
+        spreadsheet.setVersionNumber(currentVersionNumber + 1);
+        Version newVersion = new Version(currentVersionNumber + 1, numOfCellsChanged, spreadsheet, null, null);
+        newVersion.setPreviousVersion(getCurrentSpreadsheet());
 
         versions.put(currentVersionNumber + 1, newVersion);
         currentVersionNumber++;
@@ -99,34 +449,10 @@ public class VersionsManager implements Serializable {
         this.currentVersionNumber = currentVersionNumber;
     }
 
-    // Helper method to get the number of cells that depend on a cell
+    // Helper method to get the number of cells that depend on a cell, the cell itself included
+    // The cells that use a range containing the cell are found through the range
     private int getNumOfCellsChanged(Spreadsheet currentSpreadsheet, String cellId) {
-        Stack<String> stack = new Stack<>();    // Create a stack for the calculations
-        Set<String> visited = new HashSet<>();  // Create a list for those already visited
-
-        stack.push(cellId);    // Add first cell to stack
-        visited.add(cellId);   // Add first cell to visited
-
-        int totalNumOfDependants  = 1;     // Including the cell we change
-
-        while (!stack.isEmpty()) {
-            String currentCellId = stack.pop();
-            Cell currentCell = currentSpreadsheet.getCells().get(currentCellId);
-            if (currentCell == null) {
-                continue;
-            }
-
-            // Iterate over the cells that depend on the current cell
-            for (String dependantId : currentCell.getDependsOnMe().keySet()) {
-                if (!visited.contains(dependantId)) {   // If we haven't visited this cell yet
-                    stack.push(dependantId);            // Add it to the stack for processing
-                    visited.add(dependantId);           // Mark it as visited
-                    totalNumOfDependants++;             // Increment the count
-                }
-            }
-        }
-
-        return totalNumOfDependants;
+        return Math.max(1, currentSpreadsheet.collectDependentCells(cellId).size());
     }
 
     // Method to load a spreadsheet from an XML file
@@ -166,8 +492,7 @@ public class VersionsManager implements Serializable {
             versions.clear();
             this.setCurrentVersionNumber(prevCurrVersion);
             versions.putAll(originalVersions);
-            rangesManager.clearRanges();
-            rangesManager.getAllRanges().putAll(originalRanges);
+            restoreRanges(originalRanges);
 
             throw new SpreadsheetLoadingException("Failed to parse XML file: " + e.getMessage(), e);
         } catch (SpreadsheetLoadingException | CellUpdateException | CircularReferenceException | RangeProcessException e) {
@@ -175,8 +500,7 @@ public class VersionsManager implements Serializable {
             versions.clear();
             this.setCurrentVersionNumber(prevCurrVersion);
             versions.putAll(originalVersions);
-            rangesManager.clearRanges();
-            rangesManager.getAllRanges().putAll(originalRanges);
+            restoreRanges(originalRanges);
 
             throw e; // Re-throw the original exception
         }
@@ -215,6 +539,8 @@ public class VersionsManager implements Serializable {
     private Spreadsheet initializeSpreadsheet(STLSheet stlSheet) {
         int newVersionNumber = 0;
         Spreadsheet spreadsheet = new Spreadsheet();
+        spreadsheet.setRangesManager(rangesManager);
+        spreadsheet.setCellValueStorage(cellValueStorage);
         spreadsheet.setName(stlSheet.getName());
         spreadsheet.setRows(stlSheet.getSTLLayout().getRows());
         spreadsheet.setColumns(stlSheet.getSTLLayout().getColumns());
@@ -304,31 +630,22 @@ public class VersionsManager implements Serializable {
         // Convert the cell ID to uppercase to handle case insensitivity
         cellId = cellId.toUpperCase();
 
-        // Validate the cell ID format using uppercase
-        if (!cellId.matches("^[A-Z]+[0-9]+$")) {
+        // Validate the cell ID format using uppercase and extract its column and row
+        long key = CellCoordinate.parseKey(cellId);
+        if (key == CellCoordinate.INVALID_KEY) {
             throw new InvalidCellIdFormatException(cellId);
         }
 
-        // Extract column letters and row number from the cell ID
-        String columnPart = cellId.replaceAll("[0-9]", "");
-        String rowPart = cellId.replaceAll("[A-Z]", "");
-
-        // Check if there's at least one letter and one digit
-        if (columnPart.isEmpty() || rowPart.isEmpty()) {
-            throw new InvalidCellIdFormatException(cellId);
-        }
-
-        char column = columnPart.charAt(0);
-        int row = Integer.parseInt(rowPart);
+        int column = CellCoordinate.column(key);
+        int row = CellCoordinate.row(key);
 
         // Determine the maximum valid column and row based on the spreadsheet size
         int maxColumnIndex = sheet.getSTLLayout().getColumns() - 1; // 0-indexed
-        char maxColumn = (char) ('A' + maxColumnIndex);
         int maxRow = sheet.getSTLLayout().getRows();
 
         // Validate the column part
-        if (column < 'A' || column > maxColumn) {
-            throw new InvalidColumnException(cellId, column, maxColumn);
+        if (column > maxColumnIndex) {
+            throw new InvalidColumnException(cellId, CellCoordinate.columnName(column), CellCoordinate.columnName(maxColumnIndex));
         }
 
         // Validate the row part
@@ -348,17 +665,19 @@ public class VersionsManager implements Serializable {
         // Strip new value of white spaces
         newValue = newValue.strip();
 
-        // We want to create a new version if it's not DynamicAnalysis, so create a new spreadsheet
-        if (!isDynamicAnalysis) {
-            currentSpreadsheet = new Spreadsheet(currentSpreadsheet);
-        }
-
         // Ensure that a spreadsheet is loaded, otherwise throw an exception
         validateSpreadsheetLoaded(currentSpreadsheet);
 
+        // The update is made on a copy of the spreadsheet, so a failed update leaves the current spreadsheet untouched
+        // The copy becomes a new version, or replaces the spreadsheet of the current version in a dynamic analysis
+        currentSpreadsheet = new Spreadsheet(currentSpreadsheet);
+
         // Retrieve the cell by its ID, or create a new one if it doesn't exist
         Cell cell = getOrCreateCell(cellId, currentSpreadsheet);
 
+        // Store the current effective value, so the recalculation can tell whether the cell's value really changed
+        Object previousEffectiveValue = cell.getEffectiveValue();
+
         // Store the current original value
         String currentOriginalValue = cell.getOriginalValue();
 
@@ -378,19 +697,39 @@ public class VersionsManager implements Serializable {
 
         // If the cell was new or its value changed, create a new version of the spreadsheet
         if (isNewCellOrValueChanged(cell, valueChanged)) {
-            if(!isDynamicAnalysis) {
-                // Update the cell's last updated version
-                cell.setLastUpdatedVersion(getCurrentVersion() + 1);
-                cell.setLastUpdatedBy(userName);
-                saveNewVersion(cellId, currentSpreadsheet);
+            if (isDynamicAnalysis) {
+                // Recalculate the copy and only then let it replace the spreadsheet of the current version
+                recalculateAfterUpdate(currentSpreadsheet, cellId, previousEffectiveValue);
+                versions.get(currentVersionNumber).setSpreadsheet(currentSpreadsheet);
+                return;
             }
+
+            // Update the cell's last updated version
+            cell.setLastUpdatedVersion(getCurrentVersion() + 1);
+            cell.setLastUpdatedBy(userName);
+            saveNewVersion(cellId, currentSpreadsheet);
             try {
-                // Recalculate the entire spreadsheet to update the effective values of all dependent cells
-                getCurrentSpreadsheet().recalculateEffectiveCellValues(getCurrentVersion());
+                // Recalculate the spreadsheet to update the effective values of all dependent cells
+                recalculateAfterUpdate(currentSpreadsheet, cellId, previousEffectiveValue);
             } catch (Exception e) {
                 this.deleteLatestVersion();
                 throw e;
             }
+
+            // The new version is complete, so the previous version can be stored as its changes only
+            encodePreviousVersion();
+            enforceVersionMemoryBudget();
+        }
+    }
+
+    // Recalculate the spreadsheet after a cell was updated, according to the recalculation mode
+    private void recalculateAfterUpdate(Spreadsheet spreadsheet, String cellId, Object previousEffectiveValue) throws CircularReferenceException {
+        if (recalculationMode == RecalculationMode.FULL) {
+            spreadsheet.recalculateEffectiveCellValues(getCurrentVersion());
+        } else if (recalculationMode == RecalculationMode.PARALLEL) {
+            spreadsheet.recalculateEffectiveCellValuesInParallel(cellId, previousEffectiveValue, getCurrentVersion());
+        } else {
+            spreadsheet.recalculateEffectiveCellValues(cellId, previousEffectiveValue, getCurrentVersion());
         }
     }
 
@@ -402,16 +741,9 @@ public class VersionsManager implements Serializable {
     }
 
     // Get an existing cell or create a new one if it doesn't exist
+    // A cell shared with other versions is copied first, so the other versions keep their cell
     protected Cell getOrCreateCell(String cellId, Spreadsheet spreadsheet) {
-        cellId = cellId.toUpperCase();
-        Cell cell = spreadsheet.getCellById(cellId);
-
-        if (cell == null) {
-            cell = new Cell();
-            spreadsheet.addCell(cellId, cell);
-        }
-
-        return cell;
+        return spreadsheet.getOrCreateCell(cellId.toUpperCase());
     }
 
     // Check if the new value is empty
@@ -430,13 +762,14 @@ public class VersionsManager implements Serializable {
         try {
             // Parse the new value into an Expression, which could be a function or a literal
             //Supplier<Spreadsheet> spreadsheetSupplier = this::getCurrentSpreadsheet;
-            Expression newExpression = ExpressionParser.parse(newValue, spreadsheetSupplier, rangesManager);
+            Expression newExpression = parseCellValue(newValue);
 
             // Check for any circular references that might be introduced by the new expression
             checkForCircularReferences(cellId, newExpression);
 
-            // Update the cell's expression with the newly parsed expression
-            cell.setExpression(newExpression);
+            // Update the cell's expression with the newly parsed expression, it is evaluated in the given spreadsheet,
+            // which is the fork of the new version and not the current version yet
+            spreadsheet.setCellExpression(cellId, newExpression);
 
             // Update the dependencies of the cell based on the new expression
             // This ensures that the cell correctly tracks which other cells it depends on and which cells depend on it
@@ -474,20 +807,20 @@ public class VersionsManager implements Serializable {
 
     // Method to check if a cell depends on another cell (directly or indirectly)
     private boolean isDependentOn(String cellId, String potentialDependencyId) {
-        Cell potentialDependency = getCurrentSpreadsheet().getCellById(potentialDependencyId);
+        Spreadsheet spreadsheet = getCurrentSpreadsheet();
 
-        if (potentialDependency == null) {
+        if (spreadsheet.getCellById(potentialDependencyId) == null) {
             return false;
         }
 
         // Direct dependency check
-        if (potentialDependency.getDependsOnThem().containsKey(cellId)) {
+        if (spreadsheet.dependsOn(potentialDependencyId, cellId)) {
             return true;
         }
 
         // Indirect dependency check (recursive)
-        for (String dependentCellId : potentialDependency.getDependsOnThem().keySet()) {
-            if (isDependentOn(cellId, dependentCellId)) {
+        for (long dependencyKey : spreadsheet.getDependencyKeys(potentialDependencyId)) {
+            if (isDependentOn(cellId, CellCoordinate.toCellId(dependencyKey))) {
                 return true;
             }
         }
@@ -495,22 +828,15 @@ public class VersionsManager implements Serializable {
         return false;
     }
 
-    private void updateDependencies(String cellId, Cell cell, Expression newExpression, Spreadsheet spreadsheet) {
-        // Clear current dependencies
-        for (String dependencyId : cell.getDependsOnThem().keySet()) {
-            Cell dependency = spreadsheet.getCellById(dependencyId);
-
-            if (dependency != null) {
-                dependency.removeDependsOnMe(cellId);
-            }
-        }
-        cell.getDependsOnThem().clear();
+    private void updateDependencies(String cellId, Cell cell, Expression newExpression, Spreadsheet spreadsheet) throws CircularReferenceException {
+        // Clear current dependencies, on cells and on ranges
+        spreadsheet.removeDependencies(cellId);
 
         // Recursively add new dependencies
-        addDependencies(cellId, cell, newExpression, spreadsheet);
+        addDependencies(cellId, newExpression, spreadsheet);
     }
 
-    private void addDependencies(String cellId, Cell cell, Expression expression, Spreadsheet spreadsheet) {
+    private void addDependencies(String cellId, Expression expression, Spreadsheet spreadsheet) throws CircularReferenceException {
         if (expression instanceof ReferenceExpression) {
             String dependencyId = ((ReferenceExpression) expression).getCellId();
 
@@ -521,23 +847,14 @@ public class VersionsManager implements Serializable {
                 throw new RuntimeException("Invalid cell ID: " + dependencyId + ". " + e.getMessage());
             }
 
-            // Check if the dependency cell exists
-            Cell dependency = spreadsheet.getCellById(dependencyId);
-
-            // If the dependency doesn't exist, create it
-            if (dependency == null) {
-                dependency = spreadsheet.getOrCreateCell(dependencyId);
-            }
-
-            // Add the new dependency
-            cell.addDependsOnThem(dependencyId, dependency);
-            dependency.addDependsOnMe(cellId, cell);
+            // Add the new dependency, creating the dependency cell if it doesn't exist
+            spreadsheet.addDependency(cellId, dependencyId);
 
         } else if (expression instanceof FunctionExpression) {
             List<Expression> args = ((FunctionExpression) expression).getArguments();
             for (Expression arg : args) {
                 // Recursively add dependencies for each argument
-                addDependencies(cellId, cell, arg, spreadsheet);
+                addDependencies(cellId, arg, spreadsheet);
             }
         } else if (expression instanceof RangeExpression) {
             // Handle RangeExpression
@@ -546,47 +863,37 @@ public class VersionsManager implements Serializable {
 
             // Check if the range exists
             if (range != null) {
-                for (String rangeCellId : range.getCells()) {
-                    // Validate the cell ID before creating a new cell or adding the dependency
+                // The range lies in the sheet if both of its corners do
+                for (String rangeCellId : List.of(range.getStartCell(), range.getEndCell())) {
                     try {
                         validateCellId(rangeCellId, spreadsheet);
                     } catch (Exception e) {
                         throw new RuntimeException("Invalid cell ID in range: " + rangeCellId + ". " + e.getMessage());
                     }
-
-                    // Check if the range cell exists
-                    Cell rangeCell = spreadsheet.getCellById(rangeCellId);
-
-                    // If the range cell doesn't exist, create it
-                    if (rangeCell == null) {
-                        rangeCell = spreadsheet.getOrCreateCell(rangeCellId);
-                    }
-
-                    // Add the new dependency for each cell in the range
-                    cell.addDependsOnThem(rangeCellId, rangeCell);
-                    rangeCell.addDependsOnMe(cellId, cell);
                 }
+
+                // The range is a single dependency, its cells are neither created nor linked one by one
+                spreadsheet.addRangeDependency(cellId, rangeExpression.getRangeName());
             }
         }
     }
 
     // Ensure that the cell ID is valid and corresponds to an existing cell within the spreadsheet
     private void validateCellId(String cellId, Spreadsheet spreadsheet) throws InvalidCellIdFormatException, InvalidRowException, InvalidColumnException {
-        if (cellId == null || !cellId.matches("^[A-Z]+[0-9]+$")) {
+        long key = CellCoordinate.parseKey(cellId);
+        if (key == CellCoordinate.INVALID_KEY) {
             throw new InvalidCellIdFormatException(cellId);
         }
 
-        int row = Integer.parseInt(cellId.replaceAll("[^0-9]", ""));
-        String col = cellId.replaceAll("[^A-Z]", "");
-
-        int colIndex = col.charAt(0) - 'A' + 1;
+        int row = CellCoordinate.row(key);
+        int colIndex = CellCoordinate.column(key);
 
         if (row < 1 || row > spreadsheet.getRows()) {
             throw new InvalidRowException(cellId, row, spreadsheet.getRows());
         }
 
-        if (colIndex < 1 || colIndex > spreadsheet.getColumns()) {
-            throw new InvalidColumnException(cellId, col.charAt(0), (char) ('A' + spreadsheet.getColumns() - 1));
+        if (colIndex >= spreadsheet.getColumns()) {
+            throw new InvalidColumnException(cellId, CellCoordinate.columnName(colIndex), CellCoordinate.columnName(spreadsheet.getColumns() - 1));
         }
     }
 
@@ -598,6 +905,59 @@ public class VersionsManager implements Serializable {
         this.spreadsheetSupplier = spreadsheetSupplier;
     }
 
+    public RecalculationMode getRecalculationMode() {
+        return recalculationMode;
+    }
+
+    public void setRecalculationMode(RecalculationMode recalculationMode) {
+        this.recalculationMode = recalculationMode;
+    }
+
+    public VersionStorageMode getVersionStorageMode() {
+        return versionStorageMode;
+    }
+
+    public void setVersionStorageMode(VersionStorageMode versionStorageMode) {
+        this.versionStorageMode = versionStorageMode;
+    }
+
+    public CellValueStorage getCellValueStorage() {
+        return cellValueStorage;
+    }
+
+    // Keep the values of the cells created or changed from now on in the heap or in native memory, the new versions
+    // copy the storage from the current spreadsheet
+    public synchronized void setCellValueStorage(CellValueStorage cellValueStorage) {
+        this.cellValueStorage = cellValueStorage;
+
+        Spreadsheet spreadsheet = getCurrentSpreadsheet();
+        if (spreadsheet != null) {
+            spreadsheet.setCellValueStorage(cellValueStorage);
+        }
+    }
+
+    public VersionSpillTarget getVersionSpillTarget() {
+        return versionStore.getSpillTarget();
+    }
+
+    // Spill versions to disk or to native memory, the versions that were already spilled stay where they are
+    public synchronized void setVersionSpillTarget(VersionSpillTarget versionSpillTarget) {
+        versionStore.setSpillTarget(versionSpillTarget);
+    }
+
+    // Get the native memory taken by the versions that were spilled off the heap
+    public synchronized long getOffHeapVersionBytes() {
+        return versionStore.getOffHeapBytes();
+    }
+
+    public long getVersionMemoryBudget() {
+        return versionMemoryBudget;
+    }
+
+    public void setVersionMemoryBudget(long versionMemoryBudget) {
+        this.versionMemoryBudget = versionMemoryBudget;
+    }
+
     public void addRange(String rangeName, String firstCell, String lastCell) throws Exception {
         // Turn cell id's to uppercase
         firstCell = firstCell.toUpperCase();
@@ -618,21 +978,8 @@ public class VersionsManager implements Serializable {
 
     // Helper method to check if the first cell is greater than the last cell
     private boolean isFirstCellGreater(String firstCell, String lastCell) {
-        // Extract column letters and row numbers
-        String firstColumn = firstCell.replaceAll("[^A-Z]", "");
-        String lastColumn = lastCell.replaceAll("[^A-Z]", "");
-        int firstRow = Integer.parseInt(firstCell.replaceAll("[^0-9]", ""));
-        int lastRow = Integer.parseInt(lastCell.replaceAll("[^0-9]", ""));
-
-        // Compare column letters
-        if (firstColumn.compareTo(lastColumn) > 0) {
-            return true; // First cell's column is greater
-        } else if (firstColumn.equals(lastColumn)) {
-            // If columns are the same, compare row numbers
-            return firstRow > lastRow;
-        }
-
-        return false; // First cell is not greater
+        // Coordinates compare by column and then, for the same column, by row
+        return CellCoordinate.parse(firstCell).compareTo(CellCoordinate.parse(lastCell)) > 0;
     }
 
     public Range getRange(String rangeName) {
@@ -655,6 +1002,19 @@ public class VersionsManager implements Serializable {
         return rangesManager.getAllRanges();
     }
 
+    RangesManager getRangesManager() {
+        return rangesManager;
+    }
+
+    // Put back the ranges from before a failed load
+    private void restoreRanges(Map<String, Range> originalRanges) {
+        rangesManager.clearRanges();
+
+        for (Map.Entry<String, Range> entry : originalRanges.entrySet()) {
+            rangesManager.putRange(entry.getKey(), entry.getValue());
+        }
+    }
+
     public List<String> getRangeValues(String rangeName) {
         Range range = getRange(rangeName);
         List<String> values = new ArrayList<>();
@@ -664,16 +1024,18 @@ public class VersionsManager implements Serializable {
         String endCell = range.getEndCell();
 
         // Determine the starting and ending rows and columns
-        int startRow = Integer.parseInt(startCell.replaceAll("\\D", ""));
-        int endRow = Integer.parseInt(endCell.replaceAll("\\D", ""));
-        int startColumnIndex = getColumnIndex(startCell.replaceAll("\\d", ""));
-        int endColumnIndex = getColumnIndex(endCell.replaceAll("\\d", ""));
-
-        // Loop through each cell in the range and extract values
+        CellCoordinate start = CellCoordinate.parse(startCell);
+        CellCoordinate end = CellCoordinate.parse(endCell);
+        int startRow = start.getRow();
+        int endRow = end.getRow();
+        int startColumnIndex = start.getColumn();
+        int endColumnIndex = end.getColumn();
+
+        // Loop through each cell in the range and extract values, the cells are read straight from the grid
+        Spreadsheet spreadsheet = getCurrentSpreadsheet();
         for (int row = startRow; row <= endRow; row++) {
             for (int col = startColumnIndex; col <= endColumnIndex; col++) {
-                String cellId = getColumnName(col) + row;
-                Cell cell = getCurrentSpreadsheet().getCellById(cellId);
+                Cell cell = spreadsheet.getCell(row, col);
 
                 if (cell != null && cell.getEffectiveValue() != null) {
                     // Add all values (numeric or non-numeric) to the list
@@ -685,6 +1047,7 @@ public class VersionsManager implements Serializable {
         return values;
     }
 
+    // A range is in use if any cell of the current version depends on it, nested in a function or not
     public boolean isRangeInUse(String rangeName) {
         // Retrieve the current spreadsheet
         Spreadsheet currentSpreadsheet = getCurrentSpreadsheet();
@@ -693,24 +1056,7 @@ public class VersionsManager implements Serializable {
             return false;
         }
 
-        // Iterate through all cells in the spreadsheet
-        for (Cell cell : currentSpreadsheet.getCells().values()) {
-            // Check if the cell's expression uses the specified range
-            if (cell.getExpression() instanceof FunctionExpression) {
-                FunctionExpression functionExpression = (FunctionExpression) cell.getExpression();
-
-                for (Expression argument : functionExpression.getArguments()) {
-                    if (argument instanceof RangeExpression) {
-                        RangeExpression rangeExpression = (RangeExpression) argument;
-
-                        if (rangeName.equalsIgnoreCase(rangeExpression.getRangeName())) {
-                            return true; // Range is in use
-                        }
-                    }
-                }
-            }
-        }
-        return false; // Range is not in use
+        return currentSpreadsheet.isRangeInUse(rangeName);
     }
 
     public  Map<String, String> sortSpreadsheet(Spreadsheet spreadsheet, String range, List<String> columnsToSortBy) throws InvalidColumnException {
@@ -729,30 +1075,22 @@ public class VersionsManager implements Serializable {
 
     // Helper method to convert a column letter (e.g., "A") to a zero-based index
     public int getColumnIndex(String columnName) {
-        int index = 0;
-        for (char c : columnName.toCharArray()) {
-            index = index * 26 + (c - 'A' + 1);
-        }
-        return index - 1; // Zero-based index
+        return CellCoordinate.parseColumn(columnName); // Zero-based index
     }
 
 
     // Helper method to convert a zero-based column index to an Excel-style column name (A, B, C, ..., Z, AA, AB, ...)
     public String getColumnName(int index) {
-        StringBuilder columnName = new StringBuilder();
-        while (index >= 0) {
-            columnName.insert(0, (char) ('A' + (index % 26)));
-            index = (index / 26) - 1;
-        }
-        return columnName.toString();
+        return CellCoordinate.columnName(index);
     }
 
     public List<String[][]> filterTableMultipleColumns(String tableArea, Map<String, List<String>> selectedColumnValues) {
         return this.spreadsheetFilterer.filterTableMultipleColumns(tableArea, selectedColumnValues);
     }
 
+    // Parsed like a cell value, so the same formula shares the cached and pooled expression
     public Expression parseExpression (String input) throws InvalidExpressionException {
-        return ExpressionParser.parse(input, spreadsheetSupplier, rangesManager);
+        return parseCellValue(input);
     }
 
     public PermissionsManager getPermissionsManager() {
@@ -801,11 +1139,12 @@ public class VersionsManager implements Serializable {
         VersionsManager that = (VersionsManager) o;
         return currentVersionNumber == that.currentVersionNumber && Objects.equals(versions, that.versions)
                 && Objects.equals(rangesManager, that.rangesManager) && Objects.equals(spreadsheetFilterer, that.spreadsheetFilterer)
-                && Objects.equals(permissionsManager, that.permissionsManager) && Objects.equals(spreadsheetSupplier, that.spreadsheetSupplier);
+                && Objects.equals(permissionsManager, that.permissionsManager) && Objects.equals(spreadsheetSupplier, that.spreadsheetSupplier)
+                && recalculationMode == that.recalculationMode && versionStorageMode == that.versionStorageMode;
     }
 
     @Override
     public int hashCode() {
-        return Objects.hash(versions, rangesManager, spreadsheetFilterer, permissionsManager, spreadsheetSupplier, currentVersionNumber);
+        return Objects.hash(versions, rangesManager, spreadsheetFilterer, permissionsManager, spreadsheetSupplier, recalculationMode, versionStorageMode, currentVersionNumber);
     }
 }
@@ -0,0 +1,505 @@
+package versions;
+
+import api.Range;
+import cells.Cell;
+import dto.PermissionRequestDTO;
+import enums.ErrorValue;
+import enums.PermissionStatus;
+import enums.PermissionType;
+import enums.RecalculationMode;
+import enums.VersionStorageMode;
+import exceptions.CircularReferenceException;
+import ranges.RangeImpl;
+import ranges.RangesManager;
+import spreadsheet.CellCoordinate;
+import spreadsheet.Spreadsheet;
+import versions.permissions.PermissionsManager;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+// Compact binary form of a versions manager: its permissions, ranges, versions and cells
+// Cell IDs and user names are written once in a dictionary and referred to by index, and every cell object is
+// written once even if it is shared by several versions, so the versions share their cells again once read back
+// Reading skips the XML parsing and the parsing of the formulas, a formula is parsed only when its cell is first
+// recalculated, and the dependency order of every spreadsheet is built in a single sort
+public class VersionsManagerSnapshot {
+    private static final int INITIAL_BUFFER_SIZE = 64 * 1024;
+    private static final int NO_CELL = -1;
+
+    // Tags of the effective value types
+    private static final byte STRING_VALUE = 0;
+    private static final byte INTEGER_VALUE = 1;
+    private static final byte DOUBLE_VALUE = 2;
+    private static final byte BOOLEAN_VALUE = 3;
+    private static final byte NULL_VALUE = 4;
+    private static final byte ERROR_VALUE = 5;
+
+    public static final int RANGE_DEPENDENCIES_FORMAT = 2; // First format that writes the ranges every cell uses
+    public static final int ERROR_VALUES_FORMAT = 3;       // First format that writes the errors apart from the strings
+    public static final int DEPENDENCY_GRAPH_FORMAT = 4;   // First format that writes the dependencies by spreadsheet instead of by cell
+
+    private final Map<String, Integer> dictionary = new LinkedHashMap<>(); // String to its index
+    private final Map<Cell, Integer> cellIndexes = new IdentityHashMap<>(); // Cell to its index, by identity
+    private final List<Cell> cells = new ArrayList<>();
+    private final Map<Cell, long[]> cellDependencies = new IdentityHashMap<>(); // Dependencies read with the cells of older formats
+    private ByteBuffer buffer = ByteBuffer.allocate(INITIAL_BUFFER_SIZE);
+
+    private final int format;
+
+    private VersionsManagerSnapshot(int format) {
+        this.format = format;
+    }
+
+    // Write a versions manager, spilled versions are read back from disk and written like the other versions
+    public static ByteBuffer write(VersionsManager versionsManager) {
+        return new VersionsManagerSnapshot(DEPENDENCY_GRAPH_FORMAT).encode(versionsManager);
+    }
+
+    // Read a versions manager written by write in the given format, from the position of the buffer
+    public static VersionsManager read(ByteBuffer buffer, int format) throws IOException {
+        try {
+            return new VersionsManagerSnapshot(format).decode(buffer);
+        } catch (BufferUnderflowException | IndexOutOfBoundsException | NegativeArraySizeException | IllegalArgumentException
+                 | CircularReferenceException e) {
+            throw new IOException("The spreadsheet snapshot is corrupted", e);
+        }
+    }
+
+    private ByteBuffer encode(VersionsManager versionsManager) {
+        int currentVersionNumber = versionsManager.getCurrentVersion();
+        List<Version> versions = new ArrayList<>(currentVersionNumber);
+
+        // Collect the strings and the cells first, so they can be written before the versions that refer to them
+        for (int versionNumber = 1; versionNumber <= currentVersionNumber; versionNumber++) {
+            Version version = versionsManager.getStoredVersion(versionNumber);
+            versions.add(version);
+
+            if (version.getSpreadsheet() != null) {
+                collectCells(version.getSpreadsheet().getCells());
+            }
+            if (version.getCellChanges() != null) {
+                collectCells(version.getCellChanges());
+            }
+        }
+
+        writePermissions(versionsManager.getPermissionsManager());
+        writeRanges(versionsManager.getAllRanges());
+        putString(versionsManager.getRecalculationMode().name());
+        putString(versionsManager.getVersionStorageMode().name());
+        ensureCapacity(Long.BYTES);
+        buffer.putLong(versionsManager.getVersionMemoryBudget());
+
+        putInt(dictionary.size());
+        for (String value : dictionary.keySet()) {
+            putString(value);
+        }
+
+        putInt(cells.size());
+        for (Cell cell : cells) {
+            writeCell(cell);
+        }
+
+        putInt(currentVersionNumber);
+        for (Version version : versions) {
+            writeVersion(version);
+        }
+
+        buffer.flip();
+
+        return buffer;
+    }
+
+    private VersionsManager decode(ByteBuffer in) throws CircularReferenceException {
+        VersionsManager versionsManager = new VersionsManager(readPermissions(in));
+
+        readRanges(in, versionsManager.getRangesManager());
+        versionsManager.setRecalculationMode(RecalculationMode.valueOf(getString(in)));
+        versionsManager.setVersionStorageMode(VersionStorageMode.valueOf(getString(in)));
+        versionsManager.setVersionMemoryBudget(in.getLong());
+
+        String[] strings = new String[in.getInt()];
+        for (int i = 0; i < strings.length; i++) {
+            strings[i] = getString(in).intern();
+        }
+
+        Cell[] cellTable = new Cell[in.getInt()];
+        for (int i = 0; i < cellTable.length; i++) {
+            cellTable[i] = readCell(in, strings, versionsManager);
+        }
+
+        int currentVersionNumber = in.getInt();
+        for (int versionNumber = 1; versionNumber <= currentVersionNumber; versionNumber++) {
+            Version version = readVersion(in, strings, cellTable, versionsManager.getRangesManager());
+            versionsManager.getVersions().put(version.getVersionNumber(), version);
+        }
+        versionsManager.setCurrentVersionNumber(currentVersionNumber);
+        versionsManager.completeRestore();
+
+        return versionsManager;
+    }
+
+    private void collectCells(Map<String, Cell> cellsById) {
+        for (Map.Entry<String, Cell> entry : cellsById.entrySet()) {
+            addString(entry.getKey());
+
+            Cell cell = entry.getValue();
+            if (cell != null && !cellIndexes.containsKey(cell)) {
+                cellIndexes.put(cell, cells.size());
+                cells.add(cell);
+
+                addString(cell.getLastUpdatedBy() != null ? cell.getLastUpdatedBy() : "");
+                for (String rangeKey : cell.getDependsOnRanges()) {
+                    addString(rangeKey);
+                }
+            }
+        }
+    }
+
+    private void addString(String value) {
+        if (!dictionary.containsKey(value)) {
+            dictionary.put(value, dictionary.size());
+        }
+    }
+
+    private void writePermissions(PermissionsManager permissionsManager) {
+        putString(permissionsManager.getOwner());
+
+        Map<String, PermissionType> permissions = permissionsManager.getPermissions();
+        putInt(permissions.size());
+        for (Map.Entry<String, PermissionType> entry : permissions.entrySet()) {
+            putString(entry.getKey());
+            putString(entry.getValue().name());
+        }
+
+        List<PermissionRequestDTO> requestHistory = permissionsManager.getRequestHistory();
+        putInt(requestHistory.size());
+        for (PermissionRequestDTO request : requestHistory) {
+            putString(request.getUsername());
+            putString(request.getRequestedPermission().name());
+            putString(request.getStatus().name());
+        }
+    }
+
+    private PermissionsManager readPermissions(ByteBuffer in) {
+        String owner = getString(in);
+
+        Map<String, PermissionType> permissions = new HashMap<>();
+        int permissionsCount = in.getInt();
+        for (int i = 0; i < permissionsCount; i++) {
+            permissions.put(getString(in), PermissionType.valueOf(getString(in)));
+        }
+
+        List<PermissionRequestDTO> requestHistory = new ArrayList<>();
+        int requestsCount = in.getInt();
+        for (int i = 0; i < requestsCount; i++) {
+            requestHistory.add(new PermissionRequestDTO(getString(in), PermissionType.valueOf(getString(in)),
+                    PermissionStatus.valueOf(getString(in))));
+        }
+
+        return new PermissionsManager(owner, permissions, requestHistory);
+    }
+
+    // Ranges are written by their key in the ranges map, which is the upper case name
+    private void writeRanges(Map<String, Range> ranges) {
+        putInt(ranges.size());
+
+        for (Map.Entry<String, Range> entry : ranges.entrySet()) {
+            putString(entry.getKey());
+            putString(entry.getValue().getName());
+            putString(entry.getValue().getStartCell());
+            putString(entry.getValue().getEndCell());
+        }
+    }
+
+    private void readRanges(ByteBuffer in, RangesManager ranges) {
+        int count = in.getInt();
+
+        for (int i = 0; i < count; i++) {
+            String key = getString(in);
+            ranges.putRange(key, new RangeImpl(getString(in), getString(in), getString(in)));
+        }
+    }
+
+    // The expression isn't written, it is parsed again from the original value when it is needed
+    private void writeCell(Cell cell) {
+        putString(cell.getOriginalValue());
+        writeValue(cell);
+        putInt(cell.getLastUpdatedVersion());
+        putInt(dictionary.get(cell.getLastUpdatedBy() != null ? cell.getLastUpdatedBy() : ""));
+        writeIds(cell.getDependsOnRanges());
+    }
+
+    private Cell readCell(ByteBuffer in, String[] strings, VersionsManager versionsManager) {
+        String originalValue = getString(in);
+        Object effectiveValue = readValue(in);
+
+        // Older snapshots wrote the errors as their text, only a formula can result in an error
+        if (format < ERROR_VALUES_FORMAT && effectiveValue instanceof String && originalValue.startsWith("{")
+                && ErrorValue.fromText((String) effectiveValue) != null) {
+            effectiveValue = ErrorValue.fromText((String) effectiveValue);
+        }
+        int lastUpdatedVersion = in.getInt();
+        String lastUpdatedBy = strings[in.getInt()];
+        Cell cell = Cell.create(versionsManager.getCellValueStorage(), originalValue, effectiveValue, null, lastUpdatedVersion, lastUpdatedBy);
+        versionsManager.restoreExpression(cell);
+
+        // Older snapshots wrote both sides of the dependencies with every cell, the cells it depends on are kept until
+        // the spreadsheets that use the cell are read, the other side follows from them
+        if (format < DEPENDENCY_GRAPH_FORMAT) {
+            long[] dependencyKeys = new long[in.getInt()];
+            for (int i = 0; i < dependencyKeys.length; i++) {
+                dependencyKeys[i] = CellCoordinate.parseKey(strings[in.getInt()]);
+            }
+            cellDependencies.put(cell, dependencyKeys);
+
+            int dependsOnMeCount = in.getInt();
+            in.position(in.position() + dependsOnMeCount * Integer.BYTES);
+        }
+
+        // Older snapshots don't have the ranges, they are found again in the formula of the cell
+        if (format >= RANGE_DEPENDENCIES_FORMAT) {
+            int dependsOnRangesCount = in.getInt();
+            for (int i = 0; i < dependsOnRangesCount; i++) {
+                cell.addDependsOnRange(strings[in.getInt()]);
+            }
+        } else {
+            versionsManager.restoreRangeDependencies(cell);
+        }
+
+        return cell;
+    }
+
+    private void writeIds(Collection<String> cellIds) {
+        putInt(cellIds.size());
+        for (String cellId : cellIds) {
+            putInt(dictionary.get(cellId));
+        }
+    }
+
+    // A version keeps its full spreadsheet, its cell changes or both
+    private void writeVersion(Version version) {
+        putInt(version.getVersionNumber());
+        putInt(version.getChangedCellsCount());
+
+        Spreadsheet spreadsheet = version.getSpreadsheet();
+        putInt(spreadsheet != null ? 1 : 0);
+        if (spreadsheet != null) {
+            putString(spreadsheet.getName());
+            putInt(spreadsheet.getRows());
+            putInt(spreadsheet.getColumns());
+            putInt(spreadsheet.getColumnWidth());
+            putInt(spreadsheet.getRowHeight());
+            writeCellReferences(spreadsheet.getCells());
+
+            Map<String, long[]> dependencies = new HashMap<>();
+            for (String cellId : spreadsheet.getCells().keySet()) {
+                long[] dependencyKeys = spreadsheet.getDependencyKeys(cellId);
+
+                if (dependencyKeys.length > 0) {
+                    dependencies.put(cellId, dependencyKeys);
+                }
+            }
+            writeDependencies(dependencies);
+        }
+
+        Map<String, Cell> cellChanges = version.getCellChanges();
+        putInt(cellChanges != null ? 1 : 0);
+        if (cellChanges != null) {
+            writeCellReferences(cellChanges);
+            writeDependencies(version.getDependencyChanges() != null ? version.getDependencyChanges() : Map.of());
+        }
+    }
+
+    private Version readVersion(ByteBuffer in, String[] strings, Cell[] cellTable, RangesManager ranges)
+            throws CircularReferenceException {
+        int versionNumber = in.getInt();
+        int changedCellsCount = in.getInt();
+        Spreadsheet spreadsheet = null;
+        Map<String, Cell> cellChanges = null;
+        Map<String, long[]> dependencyChanges = null;
+
+        if (in.getInt() == 1) {
+            String name = getString(in);
+            int rows = in.getInt();
+            int columns = in.getInt();
+            int columnWidth = in.getInt();
+            int rowHeight = in.getInt();
+            spreadsheet = new Spreadsheet(name, rows, columns, columnWidth, rowHeight, versionNumber);
+            spreadsheet.setRangesManager(ranges);
+
+            Map<String, Cell> cellsById = readCellReferences(in, strings, cellTable);
+            for (Map.Entry<String, Cell> entry : cellsById.entrySet()) {
+                spreadsheet.addCell(entry.getKey(), entry.getValue());
+            }
+            spreadsheet.applyDependencyChanges(readDependencies(in, strings, cellsById));
+            spreadsheet.rebuildTopologicalOrder();
+        }
+        if (in.getInt() == 1) {
+            cellChanges = readCellReferences(in, strings, cellTable);
+            dependencyChanges = readDependencies(in, strings, cellChanges);
+        }
+
+        return new Version(versionNumber, changedCellsCount, spreadsheet, cellChanges, dependencyChanges);
+    }
+
+    // Write cells as pairs of the ID index and the cell index, a null cell marks a removed cell
+    private void writeCellReferences(Map<String, Cell> cellsById) {
+        putInt(cellsById.size());
+
+        for (Map.Entry<String, Cell> entry : cellsById.entrySet()) {
+            putInt(dictionary.get(entry.getKey()));
+            putInt(entry.getValue() != null ? cellIndexes.get(entry.getValue()) : NO_CELL);
+        }
+    }
+
+    private Map<String, Cell> readCellReferences(ByteBuffer in, String[] strings, Cell[] cellTable) {
+        int count = in.getInt();
+        Map<String, Cell> cellsById = new HashMap<>();
+
+        for (int i = 0; i < count; i++) {
+            String cellId = strings[in.getInt()];
+            int cellIndex = in.getInt();
+            cellsById.put(cellId, cellIndex != NO_CELL ? cellTable[cellIndex] : null);
+        }
+
+        return cellsById;
+    }
+
+    // Write the keys of the cells each cell depends on, by the index of the cell ID
+    private void writeDependencies(Map<String, long[]> dependencies) {
+        putInt(dependencies.size());
+
+        for (Map.Entry<String, long[]> entry : dependencies.entrySet()) {
+            putInt(dictionary.get(entry.getKey()));
+            putInt(entry.getValue().length);
+
+            ensureCapacity(entry.getValue().length * Long.BYTES);
+            for (long dependencyKey : entry.getValue()) {
+                buffer.putLong(dependencyKey);
+            }
+        }
+    }
+
+    // Read the dependencies of the given cells, older formats kept them with the cells, so the cells of a full
+    // spreadsheet or the changed cells of a version give them, a removed cell depends on nothing
+    private Map<String, long[]> readDependencies(ByteBuffer in, String[] strings, Map<String, Cell> cellsById) {
+        Map<String, long[]> dependencies = new HashMap<>();
+
+        if (format < DEPENDENCY_GRAPH_FORMAT) {
+            for (Map.Entry<String, Cell> entry : cellsById.entrySet()) {
+                long[] dependencyKeys = entry.getValue() != null ? cellDependencies.get(entry.getValue()) : null;
+                dependencies.put(entry.getKey(), dependencyKeys != null ? dependencyKeys : new long[0]);
+            }
+
+            return dependencies;
+        }
+
+        int count = in.getInt();
+        for (int i = 0; i < count; i++) {
+            String cellId = strings[in.getInt()];
+            long[] dependencyKeys = new long[in.getInt()];
+
+            for (int j = 0; j < dependencyKeys.length; j++) {
+                dependencyKeys[j] = in.getLong();
+            }
+            dependencies.put(cellId, dependencyKeys);
+        }
+
+        return dependencies;
+    }
+
+    // Numbers are written straight from the primitive value of the cell
+    private void writeValue(Cell cell) {
+        ensureCapacity(1 + Double.BYTES);
+
+        if (cell.isIntegerValue()) {
+            buffer.put(INTEGER_VALUE);
+            buffer.putInt((int) cell.getNumericValue());
+        } else if (cell.isNumeric()) {
+            buffer.put(DOUBLE_VALUE);
+            buffer.putDouble(cell.getNumericValue());
+        } else {
+            writeValue(cell.getEffectiveValue());
+        }
+    }
+
+    private void writeValue(Object value) {
+        ensureCapacity(1 + Double.BYTES);
+
+        if (value == null) {
+            buffer.put(NULL_VALUE);
+        } else if (value instanceof Integer) {
+            buffer.put(INTEGER_VALUE);
+            buffer.putInt((Integer) value);
+        } else if (value instanceof Double) {
+            buffer.put(DOUBLE_VALUE);
+            buffer.putDouble((Double) value);
+        } else if (value instanceof Boolean) {
+            buffer.put(BOOLEAN_VALUE);
+            buffer.put((byte) ((Boolean) value ? 1 : 0));
+        } else if (value instanceof ErrorValue) {
+            buffer.put(ERROR_VALUE);
+            buffer.put((byte) ((ErrorValue) value).ordinal());
+        } else {
+            buffer.put(STRING_VALUE);
+            putString(value.toString());
+        }
+    }
+
+    private Object readValue(ByteBuffer in) {
+        byte tag = in.get();
+
+        if (tag == INTEGER_VALUE) {
+            return in.getInt();
+        } else if (tag == DOUBLE_VALUE) {
+            return in.getDouble();
+        } else if (tag == BOOLEAN_VALUE) {
+            return in.get() == 1;
+        } else if (tag == NULL_VALUE) {
+            return null;
+        } else if (tag == ERROR_VALUE) {
+            return ErrorValue.values()[in.get()];
+        }
+
+        return getString(in);
+    }
+
+    private void putInt(int value) {
+        ensureCapacity(Integer.BYTES);
+        buffer.putInt(value);
+    }
+
+    private void putString(String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+
+        ensureCapacity(Integer.BYTES + bytes.length);
+        buffer.putInt(bytes.length);
+        buffer.put(bytes);
+    }
+
+    private static String getString(ByteBuffer in) {
+        byte[] bytes = new byte[in.getInt()];
+        in.get(bytes);
+
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    // Grow the buffer by doubling it until the given number of bytes fits
+    private void ensureCapacity(int bytes) {
+        if (buffer.remaining() < bytes) {
+            int capacity = buffer.capacity();
+            while (capacity - buffer.position() < bytes) {
+                capacity *= 2;
+            }
+
+            ByteBuffer grown = ByteBuffer.allocate(capacity);
+            buffer.flip();
+            grown.put(buffer);
+            buffer = grown;
+        }
+    }
+}
@@ -22,6 +22,13 @@ public class PermissionsManager {
         permissions.put(owner, PermissionType.OWNER);
     }
 
+    // Constructor for permissions restored from a snapshot
+    public PermissionsManager(String owner, Map<String, PermissionType> permissions, List<PermissionRequestDTO> requestHistory) {
+        this.owner = owner;
+        this.permissions = new HashMap<>(permissions);
+        this.requestHistory = new ArrayList<>(requestHistory);
+    }
+
     // Getter for owner
     public String getOwner() {
         return owner;
@@ -3,7 +3,6 @@ package servlets.getservlets;
 import api.Engine;
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
-import dto.EngineDTO;
 import dto.SpreadsheetDTO;
 import jakarta.servlet.ServletException;
 import jakarta.servlet.annotation.WebServlet;
@@ -46,9 +45,12 @@ public class GetSpreadsheetByVersionServlet extends HttpServlet {
         Engine engine = ServletUtils.getEngine(getServletContext());
 
         try {
-            EngineDTO engineDTO = engine.getEngineData(userName, spreadsheetName);
-            // Fetch the spreadsheet by version number
-            SpreadsheetDTO spreadsheetDTO = engineDTO.getSpreadsheetByVersion(versionNumber);
+            // Fetch only the requested version, older versions are rebuilt or read back from disk by the engine
+            SpreadsheetDTO spreadsheetDTO = null;
+            if (engine.isUserExist(userName)) {
+                Spreadsheet spreadsheet = engine.getSpreadsheetByVersion(userName, spreadsheetName, versionNumber);
+                spreadsheetDTO = engine.convertSpreadsheetToDTO(spreadsheet);
+            }
 
             if (spreadsheetDTO != null) {
                 // Serialize the spreadsheet to JSON and send it in the response
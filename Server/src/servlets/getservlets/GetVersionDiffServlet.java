@@ -0,0 +1,65 @@
+package servlets.getservlets;
+
+import api.Engine;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import dto.VersionDiffDTO;
+import exceptions.SpreadsheetNotFoundException;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.annotation.WebServlet;
+import jakarta.servlet.http.HttpServlet;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import utils.ServletUtils;
+
+import java.io.IOException;
+
+@WebServlet("/getVersionDiff")
+public class GetVersionDiffServlet extends HttpServlet {
+
+    Gson gson = new GsonBuilder()
+            .disableHtmlEscaping()
+            .serializeNulls()
+            .setPrettyPrinting()
+            .create();
+
+    @Override
+    protected void doGet(HttpServletRequest request, HttpServletResponse response) throws ServletException, IOException {
+        response.setContentType("application/json;charset=UTF-8");
+
+        String userName = request.getParameter("userName");
+        String spreadsheetName = request.getParameter("spreadsheetName");
+
+        // Parse version numbers
+        int fromVersion;
+        int toVersion;
+        try {
+            fromVersion = Integer.parseInt(request.getParameter("fromVersion"));
+            toVersion = Integer.parseInt(request.getParameter("toVersion"));
+        } catch (NumberFormatException e) {
+            response.setStatus(HttpServletResponse.SC_BAD_REQUEST); // 400 Bad Request
+            response.getWriter().write("Invalid version number.");
+            return;
+        }
+
+        Engine engine = ServletUtils.getEngine(getServletContext());
+
+        try {
+            // Only the cells that differ between the two versions are sent
+            VersionDiffDTO versionDiffDTO = engine.getVersionDiff(userName, spreadsheetName, fromVersion, toVersion);
+
+            response.setStatus(HttpServletResponse.SC_OK); // 200 OK
+            response.getWriter().write(gson.toJson(versionDiffDTO));
+        } catch (SpreadsheetNotFoundException e) {
+            response.setStatus(HttpServletResponse.SC_NOT_FOUND); // 404 Not Found
+            response.getWriter().write(e.getMessage());
+        } catch (IndexOutOfBoundsException e) {
+            response.setStatus(HttpServletResponse.SC_BAD_REQUEST); // 400 Bad Request
+            response.getWriter().write(e.getMessage());
+        } catch (Exception e) {
+            // Handle exceptions and send an error response
+            response.setStatus(HttpServletResponse.SC_INTERNAL_SERVER_ERROR); // 500 Internal Server Error
+            response.getWriter().write(e.getMessage());
+        }
+    }
+}
@@ -45,7 +45,7 @@ public class SortSpreadsheetServlet extends HttpServlet {
 
         try {
             // Call the engine method to sort the spreadsheet
-            Spreadsheet sortedSpreadsheet = new Spreadsheet(engine.getCurrentSpreadsheet(userName, spreadsheetName));
+            Spreadsheet sortedSpreadsheet = engine.copyCurrentSpreadsheet(userName, spreadsheetName);
             Map<String, String> idMapping = engine.sortSpreadsheet(userName, spreadsheetName, sortedSpreadsheet, range, List.of(columnsToSortBy));
 
             // Convert the sorted spreadsheet (domain model) to a SpreadsheetDTO
@@ -0,0 +1,21 @@
+package utils;
+
+import jakarta.servlet.ServletContextEvent;
+import jakarta.servlet.ServletContextListener;
+import jakarta.servlet.annotation.WebListener;
+
+import java.io.IOException;
+
+// Flushes the engine command log when the server shuts down
+@WebListener
+public class EngineLifecycleListener implements ServletContextListener {
+
+    @Override
+    public void contextDestroyed(ServletContextEvent sce) {
+        try {
+            ServletUtils.closeEngine(sce.getServletContext());
+        } catch (IOException e) {
+            sce.getServletContext().log("Failed to close the engine command log", e);
+        }
+    }
+}
@@ -6,10 +6,15 @@ import engineimpl.EngineImpl;
 import jakarta.servlet.ServletContext;
 import user.UserManager;
 
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
 public class ServletUtils {
     private static final String USER_MANAGER_ATTRIBUTE_NAME = "userManager";
     private static final String CHAT_MANAGER_ATTRIBUTE_NAME = "ChatManager";
     private static final String ENGINE_ATTRIBUTE_NAME = "engine";
+    private static final String COMMAND_LOG_PROPERTY_NAME = "shticell.commandLog";
     private static final Object userManagerLock = new Object();
     private static final Object chatManagerLock = new Object();
     private static final Object engineLock = new Object();
@@ -27,13 +32,37 @@ public class ServletUtils {
     public static Engine getEngine(ServletContext servletContext) {
         synchronized (engineLock) {
             if (servletContext.getAttribute(ENGINE_ATTRIBUTE_NAME) == null) {
-                servletContext.setAttribute(ENGINE_ATTRIBUTE_NAME, new EngineImpl());
+                // The engine is rebuilt from its command log, so the spreadsheets survive a server restart
+                try {
+                    servletContext.setAttribute(ENGINE_ATTRIBUTE_NAME, new EngineImpl(getCommandLogFile()));
+                } catch (IOException e) {
+                    throw new IllegalStateException("Failed to open the engine command log", e);
+                }
             }
         }
 
         return (EngineImpl) servletContext.getAttribute(ENGINE_ATTRIBUTE_NAME);
     }
 
+    // Closes the engine when the server shuts down, only if it was created
+    public static void closeEngine(ServletContext servletContext) throws IOException {
+        synchronized (engineLock) {
+            EngineImpl engine = (EngineImpl) servletContext.getAttribute(ENGINE_ATTRIBUTE_NAME);
+            if (engine != null) {
+                engine.close();
+            }
+        }
+    }
+
+    private static Path getCommandLogFile() {
+        String commandLogFile = System.getProperty(COMMAND_LOG_PROPERTY_NAME);
+        if (commandLogFile != null) {
+            return Paths.get(commandLogFile);
+        }
+
+        return Paths.get(System.getProperty("user.home"), ".shticell", "engine.log");
+    }
+
     public static ChatManager getChatManager(ServletContext servletContext) {
         synchronized (chatManagerLock) {
             if (servletContext.getAttribute(CHAT_MANAGER_ATTRIBUTE_NAME) == null) {
@@ -17,6 +17,7 @@ import cells.Cell;
 
 import javafx.scene.control.MenuItem;
 import gridwindow.GridWindowController;
+import utils.ColumnUtils;
 
 import java.text.NumberFormat;
 import java.util.HashMap;
@@ -385,7 +386,7 @@ public class MainGridAreaController implements SpreadsheetController {
 
     @Override
     public String getColumnName(int index) {
-        return String.valueOf((char) ('A' + index));
+        return ColumnUtils.getColumnName(index);
     }
 
     private void setColumnAlignment(int col, String alignment) {
@@ -505,12 +506,12 @@ public class MainGridAreaController implements SpreadsheetController {
     private void changeRangeBackground(String firstCell, String lastCell, String color) {
         int startRow = Integer.parseInt(firstCell.replaceAll("\\D", ""));
         int endRow = Integer.parseInt(lastCell.replaceAll("\\D", ""));
-        String startColumn = firstCell.replaceAll("\\d", "");
-        String endColumn = lastCell.replaceAll("\\d", "");
+        int startColumn = ColumnUtils.getColumnIndex(ColumnUtils.getColumnPart(firstCell));
+        int endColumn = ColumnUtils.getColumnIndex(ColumnUtils.getColumnPart(lastCell));
 
         for (int row = startRow; row <= endRow; row++) {
-            for (char col = startColumn.charAt(0); col <= endColumn.charAt(0); col++) {
-                String cellId = col + String.valueOf(row);
+            for (int col = startColumn; col <= endColumn; col++) {
+                String cellId = ColumnUtils.getColumnName(col) + row;
                 changeCellBackground(cellId, color);
             }
         }
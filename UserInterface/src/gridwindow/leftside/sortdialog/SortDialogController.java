@@ -24,6 +24,7 @@ import javafx.stage.Stage;
 import javafx.scene.control.Label;
 import gridwindow.grid.MainGridAreaController;
 import utils.AlertUtils;
+import utils.ColumnUtils;
 
 import java.awt.ScrollPane;
 import java.io.IOException;
@@ -172,18 +173,15 @@ public class SortDialogController {
 
         // Validate the user input (ensure cells are valid)
         if (isCellValid(firstCell, mainController.getCurrentSpreadsheetDTO()) && isCellValid(lastCell, mainController.getCurrentSpreadsheetDTO())) {
-            char firstColumn = firstCell.charAt(0);
-            char lastColumn = lastCell.charAt(0);
-
-            firstColumn = Character.toUpperCase(firstColumn);
-            lastColumn = Character.toUpperCase(lastColumn);
+            int firstColumn = ColumnUtils.getColumnIndex(ColumnUtils.getColumnPart(firstCell));
+            int lastColumn = ColumnUtils.getColumnIndex(ColumnUtils.getColumnPart(lastCell));
 
             if (firstColumn <= lastColumn) {
                 menuButton.getItems().clear();
 
                 // Populate the menu items with all columns between first and last
-                for (char column = firstColumn; column <= lastColumn; column++) {
-                    String columnName = "Column " + column;
+                for (int column = firstColumn; column <= lastColumn; column++) {
+                    String columnName = "Column " + ColumnUtils.getColumnName(column);
                     MenuItem menuItem = new MenuItem(columnName);
                     menuItem.setOnAction(event -> {
                         // On selection, check if the column is already selected in any other drop-down
@@ -233,16 +231,16 @@ public class SortDialogController {
         String firstCell = cells[0].trim();
         String lastCell = cells[1].trim();
 
-        char firstColumn = Character.toUpperCase(firstCell.charAt(0));
-        char lastColumn = Character.toUpperCase(lastCell.charAt(0));
+        int firstColumn = ColumnUtils.getColumnIndex(ColumnUtils.getColumnPart(firstCell));
+        int lastColumn = ColumnUtils.getColumnIndex(ColumnUtils.getColumnPart(lastCell));
 
         if (firstColumn > lastColumn) {
             throw new IllegalArgumentException("Invalid column range: first column cannot be greater than last column.");
         }
         // Determine the range of columns
         List<String> allPossibleColumns = new ArrayList<>();
-        for (char column = firstColumn; column <= lastColumn; column++) {
-            String columnName = "Column " + column;
+        for (int column = firstColumn; column <= lastColumn; column++) {
+            String columnName = "Column " + ColumnUtils.getColumnName(column);
             if (!sortColumns.contains(columnName)) {
                 allPossibleColumns.add(columnName);
             }
@@ -460,22 +458,16 @@ public class SortDialogController {
         String columnPart = cellId.replaceAll("[0-9]", "");
         String rowPart = cellId.replaceAll("[A-Z]", "");
 
-        // Check if the column part exceeds the allowed length (e.g., "AA" for more than 26 columns)
-        if (columnPart.length() > 1) {
-            throw new InvalidCellIdFormatException(tempCellId);
-        }
-
-        char column = columnPart.charAt(0);
+        int column = ColumnUtils.getColumnIndex(columnPart);
         int row = Integer.parseInt(rowPart);
 
         // Determine the maximum valid column and row based on the spreadsheet size
         int maxColumnIndex = spreadsheet.getColumns() - 1; // 0-indexed
-        char maxColumn = (char) ('A' + maxColumnIndex);
         int maxRow = spreadsheet.getRows();
 
         // Validate the column part
-        if (column < 'A' || column > maxColumn) {
-            throw new InvalidColumnException(cellId, column, maxColumn);
+        if (column > maxColumnIndex) {
+            throw new InvalidColumnException(cellId, columnPart, ColumnUtils.getColumnName(maxColumnIndex));
         }
 
         // Validate the row part
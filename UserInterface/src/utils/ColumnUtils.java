@@ -0,0 +1,42 @@
+package utils;
+
+// Conversions between column letters (A, B, ..., Z, AA, AB, ...) and zero-based column indexes
+public class ColumnUtils {
+    public static String getColumnName(int index) {
+        StringBuilder columnName = new StringBuilder();
+        while (index >= 0) {
+            columnName.insert(0, (char) ('A' + (index % 26)));
+            index = (index / 26) - 1;
+        }
+        return columnName.toString();
+    }
+
+    // Returns -1 if the column name isn't made of uppercase letters only
+    public static int getColumnIndex(String columnName) {
+        if (columnName.isEmpty()) {
+            return -1;
+        }
+
+        int index = 0;
+        for (char c : columnName.toCharArray()) {
+            if (c < 'A' || c > 'Z') {
+                return -1;
+            }
+            index = index * 26 + (c - 'A' + 1);
+        }
+        return index - 1;
+    }
+
+    // Get the leading column letters of a cell ID, like "AB" from "AB12"
+    public static String getColumnPart(String cellId) {
+        int end = 0;
+        while (end < cellId.length() && Character.isLetter(cellId.charAt(end))) {
+            end++;
+        }
+        return cellId.substring(0, end).toUpperCase();
+    }
+
+    private ColumnUtils() {
+        // Prevent instantiation
+    }
+}
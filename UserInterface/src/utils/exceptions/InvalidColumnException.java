@@ -1,7 +1,7 @@
 package utils.exceptions;
 
 public class InvalidColumnException extends Exception {
-    public InvalidColumnException(String cellId, char column, char maxColumn) {
+    public InvalidColumnException(String cellId, String column, String maxColumn) {
         super("Invalid column in cell ID: " + cellId + ". The column '" + column + "' is out of bounds. " +
                 "Valid columns are from 'A' to '" + maxColumn + "'. Please correct the column.");
     }